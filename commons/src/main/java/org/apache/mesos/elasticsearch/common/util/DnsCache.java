@@ -0,0 +1,177 @@
+package org.apache.mesos.elasticsearch.common.util;
+
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches forward and reverse DNS lookups. Successful lookups are kept for the positive TTL and failed lookups for the
+ * (shorter) negative TTL.
+ *
+ * Only the first lookup of a name blocks. Once an entry has expired, the cached answer is still returned and a refresh
+ * runs in the background, so a slow DNS server never stalls the caller twice for the same name.
+ */
+public class DnsCache {
+    private static final Logger LOG = Logger.getLogger(DnsCache.class);
+    public static final long DEFAULT_POSITIVE_TTL_MS = 60000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 10000L;
+    private static final DnsCache DEFAULT = new DnsCache(DEFAULT_POSITIVE_TTL_MS, DEFAULT_NEGATIVE_TTL_MS, InetAddress::getByName,
+            InetAddress::getHostName, Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "dns-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }), System::currentTimeMillis);
+
+    private final long positiveTtlMs;
+    private final long negativeTtlMs;
+    private final Lookup<String, InetAddress> forwardLookup;
+    private final Lookup<InetAddress, String> reverseLookup;
+    private final Executor refresher;
+    private final LongSupplier clock;
+    private final Map<String, Entry<InetAddress>> addresses = new ConcurrentHashMap<>();
+    private final Map<String, Entry<String>> hostNames = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public DnsCache(long positiveTtlMs, long negativeTtlMs, Lookup<String, InetAddress> forwardLookup, Lookup<InetAddress, String> reverseLookup, Executor refresher, LongSupplier clock) {
+        this.positiveTtlMs = positiveTtlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.forwardLookup = forwardLookup;
+        this.reverseLookup = reverseLookup;
+        this.refresher = refresher;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cache shared by the whole JVM
+     */
+    public static DnsCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param hostname a hostname or a literal IP address
+     * @return the address, or empty if the name does not resolve
+     */
+    public Optional<InetAddress> resolve(String hostname) {
+        return get(addresses, hostname, hostname, forwardLookup);
+    }
+
+    /**
+     * @return the name of the address. Like {@link InetAddress#getHostName()}, a name the address was created with is
+     * returned as is, and the IP address is returned if the reverse lookup fails.
+     */
+    public String hostName(InetAddress address) {
+        final String text = address.toString(); // "hostname/ip", with an empty hostname if it is not known yet.
+        final int slash = text.indexOf('/');
+        if (slash > 0) {
+            return text.substring(0, slash);
+        }
+        return get(hostNames, address.getHostAddress(), address, reverseLookup).orElse(address.getHostAddress());
+    }
+
+    /**
+     * @return the number of lookups answered from the cache, fresh or expired. Exposed at {@code /v1/dns/metrics}.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that blocked, because the name was not cached yet
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of expired entries that were refreshed in the background
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return the number of lookups that failed, including background refreshes
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DnsCache{hits=" + getHits() + ", misses=" + getMisses() + ", refreshes=" + getRefreshes() + ", failures=" + getFailures() + "}";
+    }
+
+    private <K, V> Optional<V> get(Map<String, Entry<V>> cache, String key, K query, Lookup<K, V> lookup) {
+        final Entry<V> entry = cache.get(key);
+        if (entry == null) {
+            misses.increment();
+            return load(cache, key, query, lookup, Optional.empty()).value;
+        }
+        hits.increment();
+        if (clock.getAsLong() >= entry.expiresAt && entry.refreshing.compareAndSet(false, true)) {
+            refreshes.increment();
+            try {
+                refresher.execute(() -> load(cache, key, query, lookup, entry.value));
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Unable to refresh " + key + " in the background", e);
+                entry.refreshing.set(false);
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * Looks up the key and caches the answer. If the lookup fails, the previous answer is kept for the negative TTL,
+     * so a DNS hiccup does not turn a known host into an unknown one.
+     */
+    private <K, V> Entry<V> load(Map<String, Entry<V>> cache, String key, K query, Lookup<K, V> lookup, Optional<V> previous) {
+        Entry<V> entry;
+        try {
+            entry = new Entry<>(Optional.ofNullable(lookup.apply(query)), clock.getAsLong() + positiveTtlMs);
+        } catch (UnknownHostException | SecurityException e) {
+            LOG.debug("Unable to resolve " + key, e);
+            failures.increment();
+            entry = new Entry<>(previous, clock.getAsLong() + negativeTtlMs);
+        }
+        cache.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * A DNS lookup, e.g. {@link InetAddress#getByName(String)}
+     * @param <K> what is looked up
+     * @param <V> the answer
+     */
+    @FunctionalInterface
+    public interface Lookup<K, V> {
+        V apply(K query) throws UnknownHostException;
+    }
+
+    /**
+     * A cached answer. Empty if the lookup failed.
+     */
+    private static class Entry<V> {
+        private final Optional<V> value;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Optional<V> value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.apache.mesos.elasticsearch.common.util;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class DnsCacheTest {
+    private static final long POSITIVE_TTL = 1000L;
+    private static final long NEGATIVE_TTL = 100L;
+    private final AtomicLong now = new AtomicLong();
+    private final Map<String, InetAddress> dns = new HashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final DnsCache cache = new DnsCache(POSITIVE_TTL, NEGATIVE_TTL, hostname -> {
+        lookups.incrementAndGet();
+        final InetAddress address = dns.get(hostname);
+        if (address == null) {
+            throw new UnknownHostException(hostname);
+        }
+        return address;
+    }, address -> "reverse-" + address.getHostAddress(), refreshes::add, now::get);
+
+    @Test
+    public void shouldLookUpOnlyOnceWithinTtl() throws UnknownHostException {
+        dns.put("host1", address("10.0.0.1"));
+        assertEquals(Optional.of(address("10.0.0.1")), cache.resolve("host1"));
+        now.set(POSITIVE_TTL - 1);
+        assertEquals(Optional.of(address("10.0.0.1")), cache.resolve("host1"));
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void shouldServeStaleAnswerWhileRefreshingInBackground() throws UnknownHostException {
+        dns.put("host1", address("10.0.0.1"));
+        cache.resolve("host1");
+        dns.put("host1", address("10.0.0.2"));
+        now.set(POSITIVE_TTL);
+
+        assertEquals(Optional.of(address("10.0.0.1")), cache.resolve("host1"));
+        assertEquals(Optional.of(address("10.0.0.1")), cache.resolve("host1"));
+        assertEquals(1, refreshes.size()); // Only one refresh in flight per entry.
+        assertEquals(1, lookups.get());
+
+        refreshes.get(0).run();
+        assertEquals(Optional.of(address("10.0.0.2")), cache.resolve("host1"));
+        assertEquals(1, cache.getRefreshes());
+    }
+
+    @Test
+    public void shouldCacheFailuresForNegativeTtl() throws UnknownHostException {
+        assertFalse(cache.resolve("unknown").isPresent());
+        assertFalse(cache.resolve("unknown").isPresent());
+        assertEquals(1, lookups.get());
+        assertEquals(1, cache.getFailures());
+
+        dns.put("unknown", address("10.0.0.3"));
+        now.set(NEGATIVE_TTL);
+        cache.resolve("unknown");
+        refreshes.forEach(Runnable::run);
+        assertEquals(Optional.of(address("10.0.0.3")), cache.resolve("unknown"));
+    }
+
+    @Test
+    public void shouldKeepKnownAddressWhenRefreshFails() throws UnknownHostException {
+        dns.put("host1", address("10.0.0.1"));
+        cache.resolve("host1");
+        dns.remove("host1");
+        now.set(POSITIVE_TTL);
+        cache.resolve("host1");
+        refreshes.forEach(Runnable::run);
+
+        assertEquals(Optional.of(address("10.0.0.1")), cache.resolve("host1"));
+        assertEquals(1, cache.getFailures());
+    }
+
+    @Test
+    public void shouldCacheReverseLookups() throws UnknownHostException {
+        assertEquals("reverse-10.0.0.1", cache.hostName(address("10.0.0.1")));
+        assertEquals("reverse-10.0.0.1", cache.hostName(address("10.0.0.1")));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void shouldNotLookUpKnownHostName() throws UnknownHostException {
+        assertEquals("host1", cache.hostName(InetAddress.getByAddress("host1", new byte[]{10, 0, 0, 1})));
+        assertEquals(0, cache.getMisses());
+    }
+
+    private InetAddress address(String ip) throws UnknownHostException {
+        return InetAddress.getByName(ip);
+    }
+}
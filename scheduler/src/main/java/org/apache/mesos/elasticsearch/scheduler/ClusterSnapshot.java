@@ -0,0 +1,103 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * An immutable view of the cluster, taken once per batch of offers, so that every offer rule sees the same tasks and
+ * no rule reads the {@link ClusterState} itself.
+ *
+ * Tasks planned during the batch are added with {@link #withTask(Protos.TaskInfo)}, which returns a new snapshot.
+ * Results of host checks are shared by all snapshots of a batch, so each host is checked once per batch.
+ */
+public final class ClusterSnapshot {
+    private final List<Protos.TaskInfo> tasks;
+    private final Map<String, Integer> tasksPerSlave;
+    private final Map<String, Boolean> hostChecks; // Shared by the snapshots of a batch, and written concurrently.
+
+    private ClusterSnapshot(List<Protos.TaskInfo> tasks, Map<String, Integer> tasksPerSlave, Map<String, Boolean> hostChecks) {
+        this.tasks = tasks;
+        this.tasksPerSlave = tasksPerSlave;
+        this.hostChecks = hostChecks;
+    }
+
+    /**
+     * Reads the task list of the cluster once.
+     */
+    public static ClusterSnapshot of(ClusterState clusterState) {
+        return of(clusterState.getTaskList());
+    }
+
+    public static ClusterSnapshot of(List<Protos.TaskInfo> tasks) {
+        final Map<String, Integer> tasksPerSlave = new HashMap<>();
+        tasks.forEach(task -> tasksPerSlave.merge(task.getSlaveId().getValue(), 1, Integer::sum));
+        return new ClusterSnapshot(Collections.unmodifiableList(new ArrayList<>(tasks)), Collections.unmodifiableMap(tasksPerSlave), new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @return a snapshot that also contains the given task
+     */
+    public ClusterSnapshot withTask(Protos.TaskInfo task) {
+        final List<Protos.TaskInfo> newTasks = new ArrayList<>(tasks);
+        newTasks.add(task);
+        final Map<String, Integer> newTasksPerSlave = new HashMap<>(tasksPerSlave);
+        newTasksPerSlave.merge(task.getSlaveId().getValue(), 1, Integer::sum);
+        return new ClusterSnapshot(Collections.unmodifiableList(newTasks), Collections.unmodifiableMap(newTasksPerSlave), hostChecks);
+    }
+
+    public List<Protos.TaskInfo> getTasks() {
+        return tasks;
+    }
+
+    public int getTaskCount() {
+        return tasks.size();
+    }
+
+    public int countTasksOnSlave(Protos.SlaveID slaveId) {
+        return tasksPerSlave.getOrDefault(slaveId.getValue(), 0);
+    }
+
+    /**
+     * @return the number of tasks that carry the label
+     */
+    public int countTasksWithLabel(String key, String value) {
+        return (int) tasks.stream()
+                .filter(task -> task.getLabels().getLabelsList().stream().anyMatch(label -> label.getKey().equals(key) && label.getValue().equals(value)))
+                .count();
+    }
+
+    /**
+     * @return the oldest task, which the other nodes use to discover the cluster
+     */
+    public Optional<Protos.TaskInfo> getFirstTask() {
+        return tasks.stream().findFirst();
+    }
+
+    /**
+     * Runs a check that only depends on the host once per batch, and returns the cached result afterwards. The check
+     * runs outside any lock, so offers of other hosts are not held up; two offers of the same host evaluated at the same
+     * time may both run it.
+     *
+     * @param check names the check
+     * @param hostname the host the check is about
+     */
+    public boolean checkHost(String check, String hostname, BooleanSupplier supplier) {
+        final String key = check + "@" + hostname;
+        final Boolean cached = hostChecks.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final boolean result = supplier.getAsBoolean();
+        hostChecks.putIfAbsent(key, result);
+        return result;
+    }
+}
@@ -1,7 +1,9 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.common.Discovery;
@@ -17,6 +19,7 @@ import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -57,6 +60,7 @@ public class Configuration {
     public static final String JAVA_HOME = "--javaHome";
     public static final String USE_IP_ADDRESS = "--useIpAddress";
     public static final String ELASTICSEARCH_PORTS = "--elasticsearchPorts";
+    public static final String ELASTICSEARCH_AWARENESS_ATTRIBUTES = "--elasticsearchAwarenessAttributes";
     public static final String CONTAINER_PATH_DATA = "/usr/share/elasticsearch/data";
     public static final String CONTAINER_PATH_CONF = "/usr/share/elasticsearch/config";
     public static final String CONTAINER_PATH_CONF_YML = CONTAINER_PATH_CONF + "/elasticsearch.yml";
@@ -72,7 +76,27 @@ public class Configuration {
     public static final String MESOS_TASK_NETWORK_NAME = "--mesosTaskNetworkInfoName";
     public static final String MESOS_OFFER_WAIT_FOR_RUNNING = "--mesosOfferWaitForRunning";
     public static final String MESOS_MULTIPLE_TASKS_PER_HOST = "--mesosMultipleTasksPerHost";
+    public static final String MESOS_OFFER_REFUSE_SECONDS = "--mesosOfferRefuseSeconds";
+    public static final String MESOS_OFFER_WEIGHT_MEM = "--mesosOfferWeightMem";
+    public static final String MESOS_OFFER_WEIGHT_DISK = "--mesosOfferWeightDisk";
+    public static final String MESOS_OFFER_WEIGHT_CPUS = "--mesosOfferWeightCpus";
+    public static final String MESOS_OFFER_WEIGHT_LOAD = "--mesosOfferWeightLoad";
+    public static final String FRAMEWORK_HEALTH_CHECK_INTERVAL = "--frameworkHealthCheckInterval";
+    public static final String FRAMEWORK_HEALTH_CHECK_TIMEOUT = "--frameworkHealthCheckTimeout";
+    public static final String FRAMEWORK_OFFER_EVALUATION_THREADS = "--frameworkOfferEvaluationThreads";
     public static final String DISCOVERY_ZEN_PING_UNICAST_HOSTS = "--discoveryZenPingUnicastHosts";
+    public static final String FRAMEWORK_STATE_MIRROR = "--frameworkStateMirror";
+    public static final String FRAMEWORK_STATE_BACKEND = "--frameworkStateBackend";
+    public static final String FRAMEWORK_STATE_DIR = "--frameworkStateDir";
+    public static final String FRAMEWORK_STATE_COMPACTION_INTERVAL = "--frameworkStateCompactionInterval";
+    public static final String FRAMEWORK_LEADER_ELECTION = "--frameworkLeaderElection";
+    public static final String FRAMEWORK_LEADER_LEASE = "--frameworkLeaderLease";
+    public static final String FRAMEWORK_PERSISTENT_VOLUMES = "--frameworkPersistentVolumes";
+    public static final String PERSISTENT_VOLUME_PATH = "es_data"; // Relative to the sandbox of the task.
+    public static final String CONTAINER_PATH_SANDBOX = "/mnt/mesos/sandbox";
+    public static final String STATE_BACKEND_ZOOKEEPER = "zookeeper";
+    public static final String STATE_BACKEND_FILE = "file";
+    public static final String STATE_BACKEND_MEMORY = "memory";
     // **** ZOOKEEPER
     private final ZookeeperCLIParameter zookeeperCLI = new ZookeeperCLIParameter();
     private final ElasticsearchCLIParameter elasticsearchCLI = new ElasticsearchCLIParameter();
@@ -88,6 +112,10 @@ public class Configuration {
     private int webUiPort = 31100; // Default is more likely to work on a default Mesos installation
     @Parameter(names = {ELASTICSEARCH_PORTS}, description = "Override Mesos provided ES HTTP and transport ports. Format `HTTP_PORT,TRANSPORT_PORT` (comma delimited, both required).", validateWith = CLIValidators.NumericListOfSizeTwo.class)
     private String elasticsearchPorts = ""; // Defaults to Mesos specified ports.
+    @Parameter(names = {ELASTICSEARCH_AWARENESS_ATTRIBUTES}, description = "Mesos agent attributes that name failure domains, e.g. `zone,rack` (comma delimited). " +
+            "Nodes are spread evenly across the values of each attribute, and Elasticsearch keeps the copies of a shard in different domains. " +
+            "Agents without all of the attributes are not used.")
+    private String elasticsearchAwarenessAttributes = ""; // Defaults to no awareness.
 
     // **** FRAMEWORK
     private String version = "1.0.1";
@@ -99,7 +127,8 @@ public class Configuration {
     private String dataDir = DEFAULT_HOST_DATA_DIR;
     @Parameter(names = {FRAMEWORK_FAILOVER_TIMEOUT}, description = "The time before Mesos kills a scheduler and tasks if it has not recovered (ms).", validateValueWith = CLIValidators.PositiveDouble.class)
     private double frameworkFailoverTimeout = 2592000; // Mesos will kill framework after 1 month if marathon does not restart.
-    @Parameter(names = {FRAMEWORK_ROLE}, description = "Used to group frameworks for allocation decisions, depending on the allocation policy being used.", validateWith = CLIValidators.NotEmptyString.class)
+    @Parameter(names = {FRAMEWORK_ROLE}, description = "Used to group frameworks for allocation decisions, depending on the allocation policy being used. " +
+            "Resources reserved for this role by " + FRAMEWORK_PERSISTENT_VOLUMES + " are not released by the framework.", validateWith = CLIValidators.NotEmptyString.class)
     private String frameworkRole = "*"; // This is the default if none is passed to Mesos
     @Parameter(names = {EXECUTOR_IMAGE}, description = "The elasticsearch docker image to use. E.g. 'elasticsearch:latest' [DOCKER MODE ONLY]", validateWith = CLIValidators.NotEmptyString.class)
     private String executorImage = DEFAULT_EXECUTOR_IMAGE;
@@ -137,8 +166,49 @@ public class Configuration {
     private Boolean mesosOfferWaitForRunning = true;
     @Parameter(names = {MESOS_MULTIPLE_TASKS_PER_HOST}, arity = 1, description = "If true, allows multiple tasks (executors) to be run on a single host. Default is false.")
     private Boolean mesosMultipleTasksPerHost = false;
+    @Parameter(names = {MESOS_OFFER_REFUSE_SECONDS}, description = "How long Mesos holds back the resources of an offer declined because the cluster is full or the host is taken (s). " +
+            "Offers declined for lack of resources are held back a tenth of this, and offers declined for transient reasons a sixtieth. " +
+            "Offers are revived whenever a task is lost or the cluster size changes.", validateValueWith = CLIValidators.PositiveLong.class)
+    private Long mesosOfferRefuseSeconds = 300L;
+    @Parameter(names = {MESOS_OFFER_WEIGHT_MEM}, description = "How much spare RAM, left to the page cache, counts when ranking the offers of a batch. A negative weight packs tasks onto the fullest hosts instead.")
+    private Double mesosOfferWeightMem = 1.0;
+    @Parameter(names = {MESOS_OFFER_WEIGHT_DISK}, description = "How much spare disk counts when ranking the offers of a batch.")
+    private Double mesosOfferWeightDisk = 0.5;
+    @Parameter(names = {MESOS_OFFER_WEIGHT_CPUS}, description = "How much spare CPU counts when ranking the offers of a batch.")
+    private Double mesosOfferWeightCpus = 0.5;
+    @Parameter(names = {MESOS_OFFER_WEIGHT_LOAD}, description = "How much the elasticsearch tasks already on a host count against it when ranking the offers of a batch.")
+    private Double mesosOfferWeightLoad = 1.0;
+    @Parameter(names = {FRAMEWORK_HEALTH_CHECK_INTERVAL}, description = "How often the scheduler checks that each elasticsearch node answers on its HTTP port (ms). " +
+            "Each round is delayed by up to a fifth more at random.", validateValueWith = CLIValidators.PositiveLong.class)
+    private Long frameworkHealthCheckInterval = 10000L;
+    @Parameter(names = {FRAMEWORK_HEALTH_CHECK_TIMEOUT}, description = "How long a health check waits to connect to, and then to hear from, an elasticsearch node (ms).", validateValueWith = CLIValidators.PositiveInteger.class)
+    private Integer frameworkHealthCheckTimeout = 2000;
+    @Parameter(names = {FRAMEWORK_OFFER_EVALUATION_THREADS}, description = "How many offers of one batch the scheduler evaluates at the same time. Defaults to the number of cores.", validateValueWith = CLIValidators.PositiveInteger.class)
+    private Integer frameworkOfferEvaluationThreads = Runtime.getRuntime().availableProcessors();
     @Parameter(names = {DISCOVERY_ZEN_PING_UNICAST_HOSTS}, arity = 1, description = "A comma separated list of hosts to do the zen unicast discovery.")
     private String discoveryZenPingUnicastHosts = "";
+    @Parameter(names = {FRAMEWORK_STATE_MIRROR}, arity = 1, description = "If true, mirrors framework state into a journal in the scheduler sandbox, so a restart can warm up before zookeeper answers. Zookeeper stays authoritative. Default is false.")
+    private Boolean frameworkStateMirror = false;
+    @Parameter(names = {FRAMEWORK_STATE_BACKEND}, description = "Where framework state is stored: 'zookeeper', 'file' (a local directory, for single node deployments) or " +
+            "'memory' (lost on restart, for tests and simulations). Default is 'zookeeper'.", validateWith = StateBackendValidator.class)
+    private String frameworkStateBackend = STATE_BACKEND_ZOOKEEPER;
+    @Parameter(names = {FRAMEWORK_STATE_DIR}, description = "The directory used by the 'file' state backend. Defaults to 'state' in the scheduler sandbox.")
+    private String frameworkStateDir = "";
+    @Parameter(names = {FRAMEWORK_STATE_COMPACTION_INTERVAL}, description = "How often to look for task statuses left behind by removed tasks (ms). " +
+            "An orphaned status is deleted on its second sighting.", validateValueWith = CLIValidators.PositiveLong.class)
+    private Long frameworkStateCompactionInterval = 600000L;
+    @Parameter(names = {FRAMEWORK_LEADER_ELECTION}, arity = 1, description = "If true, several schedulers may run at once. One is elected leader through the framework state. " +
+            "The others stand by, re-reading the task list on every poll so that their web UI stays current, and refuse to resize the cluster. " +
+            "Stopping the leader hands over to a standby instead of killing the tasks. Default is false.")
+    private Boolean frameworkLeaderElection = false;
+    @Parameter(names = {FRAMEWORK_LEADER_LEASE}, description = "How long the leader holds its lease without renewing it (ms). " +
+            "A standby takes over this long after the leader dies. Must be much longer than the clock skew between hosts.", validateValueWith = CLIValidators.PositiveLong.class)
+    private Long frameworkLeaderLease = 15000L;
+    @Parameter(names = {FRAMEWORK_PERSISTENT_VOLUMES}, arity = 1, description = "If true, the scheduler dynamically reserves the resources of each elasticsearch node and keeps its data on a persistent volume, " +
+            "so a replacement node starts on the same agent and recovers its shards locally. Requires a framework role other than '*' and no external volume driver. " +
+            "The reservations and volumes outlive the cluster: neither scaling down nor tearing down the framework releases them, " +
+            "so an operator must destroy and unreserve them through the Mesos operator API. Default is false.")
+    private Boolean frameworkPersistentVolumes = false;
 
 
     // ****************** Runtime configuration **********************
@@ -155,6 +225,9 @@ public class Configuration {
             jCommander.usage();
             throw ex;
         }
+        if (frameworkPersistentVolumes && ("*".equals(frameworkRole) || !externalVolumeDriver.isEmpty())) {
+            throw new ParameterException(FRAMEWORK_PERSISTENT_VOLUMES + " requires a " + FRAMEWORK_ROLE + " other than '*' and no " + EXTERNAL_VOLUME_DRIVER);
+        }
     }
 
     public double getCpus() {
@@ -237,10 +310,70 @@ public class Configuration {
         return mesosOfferWaitForRunning;
     }
 
+    public Boolean getFrameworkStateMirror() {
+        return frameworkStateMirror;
+    }
+
+    public String getFrameworkStateBackend() {
+        return frameworkStateBackend;
+    }
+
+    public String getFrameworkStateDir() {
+        return frameworkStateDir;
+    }
+
+    public Long getFrameworkStateCompactionInterval() {
+        return frameworkStateCompactionInterval;
+    }
+
+    public Boolean getFrameworkLeaderElection() {
+        return frameworkLeaderElection;
+    }
+
+    public Long getFrameworkLeaderLease() {
+        return frameworkLeaderLease;
+    }
+
+    public Boolean getFrameworkPersistentVolumes() {
+        return frameworkPersistentVolumes;
+    }
+
     public Boolean getMesosMultipleTasksPerHost() {
         return mesosMultipleTasksPerHost;
     }
 
+    public Long getMesosOfferRefuseSeconds() {
+        return mesosOfferRefuseSeconds;
+    }
+
+    public Double getMesosOfferWeightMem() {
+        return mesosOfferWeightMem;
+    }
+
+    public Double getMesosOfferWeightDisk() {
+        return mesosOfferWeightDisk;
+    }
+
+    public Double getMesosOfferWeightCpus() {
+        return mesosOfferWeightCpus;
+    }
+
+    public Double getMesosOfferWeightLoad() {
+        return mesosOfferWeightLoad;
+    }
+
+    public Long getFrameworkHealthCheckInterval() {
+        return frameworkHealthCheckInterval;
+    }
+
+    public Integer getFrameworkHealthCheckTimeout() {
+        return frameworkHealthCheckTimeout;
+    }
+
+    public Integer getFrameworkOfferEvaluationThreads() {
+        return frameworkOfferEvaluationThreads;
+    }
+
     public String getElasticsearchBinary() {
         return executorBinary;
     }
@@ -316,6 +449,13 @@ public class Configuration {
         return portsList;
     }
 
+    public List<String> getElasticsearchAwarenessAttributes() {
+        if (elasticsearchAwarenessAttributes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(elasticsearchAwarenessAttributes.replace(" ", "").split(","));
+    }
+
     public String getExternalVolumeDriver() {
         return externalVolumeDriver;
     }
@@ -338,6 +478,13 @@ public class Configuration {
     }
 
     public List<String> esArguments(ClusterState clusterState, Protos.DiscoveryInfo discoveryInfo, Protos.SlaveID slaveID) {
+        return esArguments(clusterState, discoveryInfo, slaveID, Collections.emptyList());
+    }
+
+    /**
+     * @param attributes of the agent, which name the failure domains of the node
+     */
+    public List<String> esArguments(ClusterState clusterState, Protos.DiscoveryInfo discoveryInfo, Protos.SlaveID slaveID, List<Protos.Attribute> attributes) {
         List<String> args = new ArrayList<>();
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
         String hostAddress = "";
@@ -358,10 +505,19 @@ public class Configuration {
         args.add(buildKeyValue("node.master", true));
         args.add(buildKeyValue("node.data", true));
         args.add(buildKeyValue("network.host", "_site_"));
+        final List<String> awarenessAttributes = getElasticsearchAwarenessAttributes();
+        if (!awarenessAttributes.isEmpty()) {
+            // Shard copies go to different domains, and searches prefer copies in the node's own domain.
+            // Elasticsearch 2.x reads custom node attributes as node.<name>; node.attr.<name> only came with 5.0.
+            awarenessAttributes.forEach(name -> FailureDomains.value(attributes, name).ifPresent(value -> args.add(buildKeyValue("node." + name, value))));
+            args.add(buildKeyValue("cluster.routing.allocation.awareness.attributes", String.join(",", awarenessAttributes)));
+        }
         if (!isFrameworkUseDocker()) {
-            String taskSpecificDataDir = taskSpecificHostDir(slaveID);
+            String taskSpecificDataDir = getFrameworkPersistentVolumes() ? HOST_SANDBOX + "/" + PERSISTENT_VOLUME_PATH : taskSpecificHostDir(slaveID);
             args.add(buildKeyValue("path.home", HOST_PATH_HOME)); // Cannot be overidden
             args.add(buildKeyValue("path.data", taskSpecificDataDir));
+        } else if (getFrameworkPersistentVolumes()) {
+            args.add(buildKeyValue("path.data", CONTAINER_PATH_SANDBOX + "/" + PERSISTENT_VOLUME_PATH)); // Mesos mounts the sandbox there
         } else {
             args.add(buildKeyValue("path.data", CONTAINER_PATH_DATA)); // Cannot be overidden
         }
@@ -414,4 +570,16 @@ public class Configuration {
         }
         return Optional.of(Protos.NetworkInfo.newBuilder().setName(mesosTaskNetworkName).build());
     }
+
+    /**
+     * Ensures that the state backend is one of the supported ones.
+     */
+    public static class StateBackendValidator implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            if (!asList(STATE_BACKEND_ZOOKEEPER, STATE_BACKEND_FILE, STATE_BACKEND_MEMORY).contains(value)) {
+                throw new ParameterException("Parameter " + name + " must be one of " + STATE_BACKEND_ZOOKEEPER + ", " + STATE_BACKEND_FILE + " or " + STATE_BACKEND_MEMORY);
+            }
+        }
+    }
 }
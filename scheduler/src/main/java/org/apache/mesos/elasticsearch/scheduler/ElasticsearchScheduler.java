@@ -8,10 +8,13 @@ import org.apache.mesos.elasticsearch.scheduler.cluster.TaskReaper;
 import org.apache.mesos.elasticsearch.scheduler.state.*;
 import org.apache.mesos.elasticsearch.scheduler.util.Clock;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 
 /**
  * Scheduler for Elasticsearch.
@@ -26,16 +29,21 @@ public class ElasticsearchScheduler implements Scheduler {
     private final ClusterState clusterState;
     private FrameworkState frameworkState;
     private OfferStrategy offerStrategy;
+    private final OfferPlanner offerPlanner;
     private SerializableState zookeeperStateDriver;
-    private TaskReaper taskReaper;
+    private volatile TaskReaper taskReaper; // Null until the driver runs.
+    private volatile BooleanSupplier leaderElected = () -> true; // Replaced when several schedulers elect a leader.
+    private boolean offersSuppressed; // Guarded by this.
 
-    public ElasticsearchScheduler(Configuration configuration, FrameworkState frameworkState, ClusterState clusterState, TaskInfoFactory taskInfoFactory, OfferStrategy offerStrategy, SerializableState zookeeperStateDriver) {
+    public ElasticsearchScheduler(Configuration configuration, FrameworkState frameworkState, ClusterState clusterState, TaskInfoFactory taskInfoFactory,
+                                  OfferStrategy offerStrategy, SerializableState zookeeperStateDriver, ForkJoinPool evaluationPool) {
         this.configuration = configuration;
         this.frameworkState = frameworkState;
         this.clusterState = clusterState;
         this.taskInfoFactory = taskInfoFactory;
         this.offerStrategy = offerStrategy;
         this.zookeeperStateDriver = zookeeperStateDriver;
+        this.offerPlanner = new OfferPlanner(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, evaluationPool);
     }
 
     public Map<String, Task> getTasks() {
@@ -46,6 +54,13 @@ public class ElasticsearchScheduler implements Scheduler {
         }
     }
 
+    /**
+     * @return how often each offer rule ran and how long it took, by decline reason
+     */
+    public Map<String, RuleMetrics.RuleSnapshot> getOfferRuleMetrics() {
+        return offerStrategy.getRuleMetrics();
+    }
+
     public void run(SchedulerDriver schedulerDriver) {
         LOGGER.info("Starting ElasticSearch on Mesos - [numHwNodes: " + configuration.getElasticsearchNodes() +
                 ", zk mesos: " + configuration.getMesosZKURL() +
@@ -58,8 +73,28 @@ public class ElasticsearchScheduler implements Scheduler {
     }
 
     public void reapTasks() {
+        final TaskReaper reaper = taskReaper;
+        if (reaper == null) {
+            LOGGER.warn("Scheduler driver is not running. Not reaping tasks.");
+            return;
+        }
         LOGGER.debug("Running task reaper");
-        taskReaper.run();
+        reaper.run();
+    }
+
+    /**
+     * @param leaderElected true while this scheduler holds the leadership, see {@link LeaderElection#isLeader()}
+     */
+    public void setLeaderElected(BooleanSupplier leaderElected) {
+        this.leaderElected = leaderElected;
+    }
+
+    /**
+     * @return true if this scheduler drives the cluster: its driver runs and, with leader election, it is the leader.
+     * A standby only serves what it read from the state, and must not change the cluster.
+     */
+    public boolean isLeading() {
+        return taskReaper != null && leaderElected.getAsBoolean();
     }
 
     @Override
@@ -76,11 +111,17 @@ public class ElasticsearchScheduler implements Scheduler {
         driver.requestResources(requests);
 
         frameworkState.markRegistered(frameworkId, driver);
+        forgetSuppression();
     }
 
     @Override
     public void reregistered(SchedulerDriver driver, Protos.MasterInfo masterInfo) {
         LOGGER.info("Framework re-registered");
+        forgetSuppression(); // A new master does not know offers were suppressed, so suppress again on the next offers.
+    }
+
+    private synchronized void forgetSuppression() {
+        offersSuppressed = false;
     }
 
     @Override
@@ -90,22 +131,60 @@ public class ElasticsearchScheduler implements Scheduler {
             return;
         }
 
-        for (Protos.Offer offer : offers) {
-            final OfferStrategy.OfferResult result = offerStrategy.evaluate(offer);
-
-            if (!result.acceptable) {
-                LOGGER.debug("Declined offer: " + flattenProtobufString(offer.toString()) +
-                        "Reason: " + result.reason.orElse("Unknown"));
-                driver.declineOffer(offer.getId());
-            } else {
-                Protos.TaskInfo taskInfo = taskInfoFactory.createTask(configuration, frameworkState, offer, new Clock());
-                LOGGER.debug(taskInfo.toString());
-                driver.launchTasks(Collections.singleton(offer.getId()), Collections.singleton(taskInfo));
-                ESTaskStatus esTask = new ESTaskStatus(zookeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zookeeperStateDriver)); // Write staging state to zk
-                clusterState.addTask(esTask); // Add tasks to cluster state and write to zk
-                frameworkState.announceNewTask(esTask);
+        final OfferPlanner.Plan plan = offerPlanner.plan(offers, new Clock());
+        plan.getDeclines().forEach((offer, result) -> {
+            final Protos.Filters filters = result.filters(configuration);
+            LOGGER.debug("Declined offer: " + flattenProtobufString(offer.toString()) +
+                    "Reason: " + result.reason.orElse("Unknown") + ", refused for " + filters.getRefuseSeconds() + " s");
+            driver.declineOffer(offer.getId(), filters);
+        });
+        for (OfferPlanner.Launch launch : plan.getLaunches()) {
+            LOGGER.debug("Launching " + launch.getTasks().size() + " tasks on " + launch.getOfferIds().size() + " offers");
+            if (launch.getOperations().isEmpty()) {
+                driver.launchTasks(launch.getOfferIds(), launch.getTasks());
+            } else { // Reserve resources and create volumes before the launch, in one call.
+                final List<Protos.Offer.Operation> operations = new ArrayList<>(launch.getOperations());
+                operations.add(Protos.Offer.Operation.newBuilder()
+                        .setType(Protos.Offer.Operation.Type.LAUNCH)
+                        .setLaunch(Protos.Offer.Operation.Launch.newBuilder().addAllTaskInfos(launch.getTasks()))
+                        .build());
+                driver.acceptOffers(launch.getOfferIds(), operations, Protos.Filters.getDefaultInstance());
             }
         }
+        clusterState.commitStagedTasks().forEach(frameworkState::announceNewTask); // Write staging state to zk in one batch
+        if (clusterState.getTaskCount() >= configuration.getElasticsearchNodes()) {
+            suppressOffers(driver);
+        }
+    }
+
+    /**
+     * Stops offers once the cluster is full, so the master does not keep sending offers that are only declined.
+     */
+    private synchronized void suppressOffers(SchedulerDriver driver) {
+        if (!offersSuppressed) {
+            LOGGER.info("Cluster size fulfilled. Suppressing offers.");
+            driver.suppressOffers();
+            offersSuppressed = true;
+        }
+    }
+
+    /**
+     * Resumes offers and clears the filters of declined offers.
+     */
+    private synchronized void reviveOffers(SchedulerDriver driver, String reason) {
+        LOGGER.info("Reviving offers: " + reason);
+        driver.reviveOffers();
+        offersSuppressed = false;
+    }
+
+    /**
+     * Revives offers if the cluster is now short of tasks. Call after changing the desired cluster size.
+     */
+    public void clusterSizeChanged() {
+        final SchedulerDriver driver = frameworkState.getDriver();
+        if (driver != null && clusterState.getTaskCount() < configuration.getElasticsearchNodes()) {
+            reviveOffers(driver, "cluster size changed to " + configuration.getElasticsearchNodes());
+        }
     }
 
     private String flattenProtobufString(String s) {
@@ -128,6 +207,9 @@ public class ElasticsearchScheduler implements Scheduler {
                 " " +
                 " ");
         frameworkState.announceStatusUpdate(status);
+        if (ESTaskStatus.errorState(status.getState())) {
+            reviveOffers(driver, "task " + status.getTaskId().getValue() + " is " + status.getState());
+        }
     }
 
     @Override
@@ -9,4 +9,11 @@ public class Environment {
     public String getJavaHeap() {
         return System.getenv().get(ExecutorEnvironmentalVariables.JAVA_OPTS);
     }
+
+    /**
+     * @return the Mesos sandbox of the scheduler, or the working directory when not run by Mesos
+     */
+    public String getSandbox() {
+        return System.getenv().getOrDefault("MESOS_SANDBOX", ".");
+    }
 }
@@ -0,0 +1,104 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads Elasticsearch nodes evenly across the failure domains named by Mesos agent attributes, e.g. zones and racks,
+ * see {@link Configuration#getElasticsearchAwarenessAttributes()}.
+ *
+ * Each task is labelled with the attribute values of its agent. A domain is known once an offer from it could take a
+ * node, and forgotten when no such offer has come from it for twice the refuse time, so a zone that is lost or full does
+ * not hold back the others.
+ */
+public class FailureDomains {
+    static final String LABEL_PREFIX = "attr.";
+    private final Configuration configuration;
+    private final LongSupplier clock;
+    private final Map<String, Map<String, Long>> lastSeen = new ConcurrentHashMap<>(); // Attribute -> value -> ms
+
+    public FailureDomains(Configuration configuration) {
+        this(configuration, System::currentTimeMillis);
+    }
+
+    FailureDomains(Configuration configuration, LongSupplier clock) {
+        this.configuration = configuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Remembers the domains of the offer's agent. Safe to call from several threads.
+     */
+    public void observe(Protos.Offer offer) {
+        final long now = clock.getAsLong();
+        for (String name : configuration.getElasticsearchAwarenessAttributes()) {
+            value(offer.getAttributesList(), name).ifPresent(value ->
+                    lastSeen.computeIfAbsent(name, key -> new ConcurrentHashMap<>()).put(value, now));
+        }
+    }
+
+    /**
+     * @return true if the agent has every awareness attribute. Elasticsearch does not allocate shards to a node that
+     * lacks one.
+     */
+    public boolean hasAttributes(Protos.Offer offer) {
+        return configuration.getElasticsearchAwarenessAttributes().stream()
+                .allMatch(name -> value(offer.getAttributesList(), name).isPresent());
+    }
+
+    /**
+     * @return true if, for every awareness attribute, no known domain runs fewer tasks than the offer's
+     */
+    public boolean isLeastLoaded(Protos.Offer offer, ClusterSnapshot snapshot) {
+        final long knownSince = clock.getAsLong() - 2 * TimeUnit.SECONDS.toMillis(configuration.getMesosOfferRefuseSeconds());
+        for (String name : configuration.getElasticsearchAwarenessAttributes()) {
+            final Optional<String> value = value(offer.getAttributesList(), name);
+            if (!value.isPresent()) {
+                continue;
+            }
+            final int tasks = snapshot.countTasksWithLabel(LABEL_PREFIX + name, value.get());
+            final boolean lessLoadedDomain = lastSeen.getOrDefault(name, new ConcurrentHashMap<>()).entrySet().stream()
+                    .filter(domain -> domain.getValue() >= knownSince)
+                    .anyMatch(domain -> snapshot.countTasksWithLabel(LABEL_PREFIX + name, domain.getKey()) < tasks);
+            if (lessLoadedDomain) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the labels a task on the offer's agent carries, so that its domains are known after a failover
+     */
+    public static Protos.Labels labels(Configuration configuration, Protos.Offer offer) {
+        final Protos.Labels.Builder labels = Protos.Labels.newBuilder();
+        for (String name : configuration.getElasticsearchAwarenessAttributes()) {
+            value(offer.getAttributesList(), name).ifPresent(value ->
+                    labels.addLabels(Protos.Label.newBuilder().setKey(LABEL_PREFIX + name).setValue(value)));
+        }
+        return labels.build();
+    }
+
+    /**
+     * @return the value of a text or scalar attribute, or empty if the agent does not have it
+     */
+    public static Optional<String> value(List<Protos.Attribute> attributes, String name) {
+        for (Protos.Attribute attribute : attributes) {
+            if (!attribute.getName().equals(name)) {
+                continue;
+            }
+            if (attribute.getType() == Protos.Value.Type.TEXT) {
+                return Optional.of(attribute.getText().getValue());
+            } else if (attribute.getType() == Protos.Value.Type.SCALAR) {
+                return Optional.of(String.valueOf(attribute.getScalar().getValue()));
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -3,13 +3,30 @@ package org.apache.mesos.elasticsearch.scheduler;
 import org.apache.log4j.Logger;
 import org.apache.mesos.MesosSchedulerDriver;
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.FileSerializableState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.InMemorySerializableState;
+import org.apache.mesos.elasticsearch.scheduler.state.LeaderElection;
+import org.apache.mesos.elasticsearch.scheduler.state.MirroredSerializableState;
+import org.apache.mesos.elasticsearch.scheduler.state.SerializableState;
 import org.apache.mesos.elasticsearch.scheduler.state.SerializableZookeeperState;
+import org.apache.mesos.elasticsearch.scheduler.state.StateJournal;
+import org.apache.mesos.elasticsearch.scheduler.state.StateMetrics;
+import org.apache.mesos.elasticsearch.scheduler.state.StatusCompactor;
 import org.apache.mesos.state.ZooKeeperState;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -17,6 +34,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class Main {
     private static final Logger LOGGER = Logger.getLogger(Main.class);
+    private static final long MIRROR_RECONCILE_RETRY_MS = 5000;
 
     private final Environment env;
     private Configuration configuration;
@@ -41,55 +59,200 @@ public class Main {
             configuration.setFrameworkFileServerAddress(simpleFileServer.getAddress());
         }
 
-        final SerializableZookeeperState zookeeperStateDriver = new SerializableZookeeperState(new ZooKeeperState(
-                configuration.getMesosStateZKURL(),
-                configuration.getZookeeperCLI().getZookeeperMesosTimeout(),
-                TimeUnit.MILLISECONDS,
-                "/" + configuration.getFrameworkName() + "/" + configuration.getElasticsearchCLI().getElasticsearchClusterName()));
-        final FrameworkState frameworkState = new FrameworkState(zookeeperStateDriver);
-        final ClusterState clusterState = new ClusterState(zookeeperStateDriver, frameworkState);
+        final String statePath = "/" + configuration.getFrameworkName() + "/" + configuration.getElasticsearchCLI().getElasticsearchClusterName();
+        final SerializableState backend = stateBackend(configuration, statePath);
+        final SerializableState stateDriver = mirror(configuration, statePath, backend);
+        final FrameworkState frameworkState = new FrameworkState(stateDriver);
+        final ClusterState clusterState = new ClusterState(stateDriver, frameworkState);
         final TaskInfoFactory taskInfoFactory = new TaskInfoFactory(clusterState);
+        final HealthMonitor healthMonitor = new HealthMonitor(clusterState, configuration.getIsUseIpAddress(), daemonScheduler("es-health-monitor"),
+                configuration.getFrameworkHealthCheckInterval(), configuration.getFrameworkHealthCheckTimeout());
+        final ForkJoinPool evaluationPool = new ForkJoinPool(configuration.getFrameworkOfferEvaluationThreads());
 
         final ElasticsearchScheduler scheduler = new ElasticsearchScheduler(
                 configuration,
                 frameworkState,
                 clusterState,
                 taskInfoFactory,
-                configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0 ? new OfferStrategyExternalStorage(configuration, clusterState) : new OfferStrategyNormal(configuration, clusterState),
-                zookeeperStateDriver);
+                configuration.getExternalVolumeDriver() != null && configuration.getExternalVolumeDriver().length() > 0
+                        ? new OfferStrategyExternalStorage(configuration, clusterState, healthMonitor)
+                        : new OfferStrategyNormal(configuration, clusterState, healthMonitor),
+                stateDriver,
+                evaluationPool);
+
+        frameworkState.recover(); // Before the framework info is built, because it carries the recovered framework ID.
+        if (stateDriver instanceof MirroredSerializableState) {
+            reconcileInBackground((MirroredSerializableState) stateDriver, frameworkState);
+        }
+
+        final StateMetrics stateMetrics = stateDriver.getMetrics() == null ? new StateMetrics() : stateDriver.getMetrics(); // Empty for backends that are not instrumented.
+        HashMap<String, Object> properties = new HashMap<>();
+        properties.put("server.port", String.valueOf(configuration.getWebUiPort()));
+        new SpringApplicationBuilder(WebApplication.class)
+                .properties(properties)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("scheduler", scheduler))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("configuration", configuration))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("frameworkState", frameworkState))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("stateMetrics", stateMetrics))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("dnsCache", DnsCache.getDefault()))
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("healthMonitor", healthMonitor))
+                .showBanner(false)
+                .run(args);
+
+        // The lease is read from zookeeper itself, never from the mirror, which may lag behind the other schedulers.
+        final LeaderElection election = configuration.getFrameworkLeaderElection()
+                ? new LeaderElection(backend, configuration.webUiAddress() + "#" + UUID.randomUUID(), configuration.getFrameworkLeaderLease())
+                : null;
+        if (election != null) {
+            scheduler.setLeaderElected(election::isLeader);
+            awaitLeadership(election, frameworkState);
+        }
+        if (backend instanceof SerializableZookeeperState) {
+            // Without election, this is the only scheduler writing the state.
+            ((SerializableZookeeperState) backend).trustKnownKeysWhile(election == null ? () -> true : election::isLeader);
+        }
+        compactInBackground(new StatusCompactor(stateDriver, frameworkState, clusterState), configuration.getFrameworkStateCompactionInterval());
+        healthMonitor.start();
 
         FrameworkInfoFactory frameworkInfoFactory = new FrameworkInfoFactory(configuration, frameworkState);
         final Protos.FrameworkInfo.Builder frameworkBuilder = frameworkInfoFactory.getBuilder();
         final Protos.Credential.Builder credentialBuilder = new CredentialFactory(configuration).getBuilder();
         final MesosSchedulerDriver schedulerDriver;
+        final boolean implicitAcknowledgements = false; // ClusterState acknowledges status updates once they are written.
         if (credentialBuilder.isInitialized()) {
             LOGGER.debug("Creating Scheduler driver with principal: " + credentialBuilder.toString());
-            schedulerDriver = new MesosSchedulerDriver(scheduler, frameworkBuilder.build(), configuration.getMesosZKURL(), credentialBuilder.build());
+            schedulerDriver = new MesosSchedulerDriver(scheduler, frameworkBuilder.build(), configuration.getMesosZKURL(), implicitAcknowledgements, credentialBuilder.build());
         } else {
-            schedulerDriver = new MesosSchedulerDriver(scheduler, frameworkBuilder.build(), configuration.getMesosZKURL());
+            schedulerDriver = new MesosSchedulerDriver(scheduler, frameworkBuilder.build(), configuration.getMesosZKURL(), implicitAcknowledgements);
         }
 
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
-                LOGGER.info("Performing graceful shutdown");
-                scheduler.shutdown(schedulerDriver);
+                closeStatusUpdates(clusterState);
+                try {
+                    if (election != null) {
+                        LOGGER.info("Handing over to a standby scheduler");
+                        schedulerDriver.stop(true); // Failover: Mesos keeps the tasks for the next leader.
+                        election.release();
+                        return;
+                    }
+                    LOGGER.info("Performing graceful shutdown");
+                    scheduler.shutdown(schedulerDriver);
+                } finally {
+                    evaluationPool.shutdown(); // After the driver stops, so no offer callback is left to use it.
+                }
             }
         });
 
-        HashMap<String, Object> properties = new HashMap<>();
-        properties.put("server.port", String.valueOf(configuration.getWebUiPort()));
-        new SpringApplicationBuilder(WebApplication.class)
-                .properties(properties)
-                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("scheduler", scheduler))
-                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("configuration", configuration))
-                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("frameworkState", frameworkState))
-                .showBanner(false)
-                .run(args);
-
         scheduler.run(schedulerDriver);
     }
 
+    private SerializableState stateBackend(Configuration configuration, String statePath) {
+        switch (configuration.getFrameworkStateBackend()) {
+            case Configuration.STATE_BACKEND_MEMORY:
+                LOGGER.warn("Keeping framework state in memory. It will be lost when the scheduler restarts.");
+                return new InMemorySerializableState();
+            case Configuration.STATE_BACKEND_FILE:
+                final Path stateDir = configuration.getFrameworkStateDir().isEmpty() ? Paths.get(env.getSandbox(), "state") : Paths.get(configuration.getFrameworkStateDir());
+                try {
+                    LOGGER.info("Keeping framework state in " + stateDir.toAbsolutePath());
+                    return new FileSerializableState(stateDir);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to create state directory " + stateDir, e);
+                }
+            default:
+                return new SerializableZookeeperState(new ZooKeeperState(
+                        configuration.getMesosStateZKURL(),
+                        configuration.getZookeeperCLI().getZookeeperMesosTimeout(),
+                        TimeUnit.MILLISECONDS,
+                        statePath));
+        }
+    }
+
+    /**
+     * Wraps the state in a local mirror if enabled. A mirror that cannot be opened is skipped.
+     */
+    private SerializableState mirror(Configuration configuration, String statePath, SerializableState zookeeperState) {
+        if (!configuration.getFrameworkStateMirror() || !Configuration.STATE_BACKEND_ZOOKEEPER.equals(configuration.getFrameworkStateBackend())) {
+            return zookeeperState;
+        }
+        final Path journal = Paths.get(env.getSandbox(), "state.journal");
+        try {
+            return new MirroredSerializableState(zookeeperState, new StateJournal(journal, configuration.getMesosStateZKURL() + statePath));
+        } catch (IOException e) {
+            LOGGER.error("Unable to open state mirror " + journal + ". Continuing without it.", e);
+            return zookeeperState;
+        }
+    }
+
+    /**
+     * Retries until zookeeper answers, then reloads the state that was warmed from the mirror.
+     */
+    private void reconcileInBackground(MirroredSerializableState mirroredState, FrameworkState frameworkState) {
+        final Thread reconciler = new Thread(() -> {
+            while (mirroredState.isWarm()) {
+                try {
+                    mirroredState.reconcile();
+                    frameworkState.recover();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to reconcile state mirror with zookeeper. Retrying.", e);
+                    try {
+                        Thread.sleep(MIRROR_RECONCILE_RETRY_MS);
+                    } catch (InterruptedException e1) {
+                        return;
+                    }
+                }
+            }
+        }, "state-mirror-reconciler");
+        reconciler.setDaemon(true);
+        reconciler.start();
+    }
+
+    /**
+     * Blocks until elected. While standing by, the state loaded at startup is refreshed on every poll: only the task
+     * list and the tasks added or removed by the leader are read, so the web UI stays current and the takeover needs no
+     * full reload. If leadership is lost, halts at once without running the shutdown hooks, so that the new leader keeps
+     * the tasks.
+     */
+    private void awaitLeadership(LeaderElection election, FrameworkState frameworkState) {
+        try {
+            election.awaitLeadership(frameworkState::refresh);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while standing by for leadership", e);
+        }
+        frameworkState.refresh(); // Picks up the last writes of the previous leader.
+        election.maintain(() -> {
+            LOGGER.error("Lost leadership. Halting so that the new leader takes over.");
+            Runtime.getRuntime().halt(1);
+        });
+    }
+
+    /**
+     * Drains the status updates that are still queued, so they are not lost on shutdown or handover.
+     */
+    private static void closeStatusUpdates(ClusterState clusterState) {
+        try {
+            clusterState.closeStatusUpdates();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while writing queued status updates", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void compactInBackground(StatusCompactor compactor, long intervalMs) {
+        daemonScheduler("state-compactor").scheduleWithFixedDelay(compactor, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledExecutorService daemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     private void checkEnv() {
         checkHeap(env.getJavaHeap());
     }
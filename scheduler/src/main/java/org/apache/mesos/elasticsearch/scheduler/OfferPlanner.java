@@ -0,0 +1,204 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Plans tasks for a whole batch of offers at once, instead of one offer at a time.
+ *
+ * First, all offers are evaluated at the same time on a worker pool, against one {@link ClusterSnapshot} of the batch.
+ * Offers that fail are declined. The others are ranked by the {@link OfferScorer} and planned one at a time, best
+ * first: every planned task is staged in the {@link ClusterState} and added to the snapshot. An offer accepted before
+ * any task was planned keeps its result; the others are rechecked against the new snapshot before they get a task.
+ * This resolves conflicts between offers that were accepted together, e.g. two offers for the last free slot.
+ * When multiple tasks per host are allowed, the resources left on an offer are evaluated again after each task, until
+ * they no longer fit another task. The caller launches the plan and then commits the staged tasks.
+ */
+public class OfferPlanner {
+    private final Configuration configuration;
+    private final FrameworkState frameworkState;
+    private final ClusterState clusterState;
+    private final TaskInfoFactory taskInfoFactory;
+    private final OfferStrategy offerStrategy;
+    private final ForkJoinPool evaluationPool;
+    private final OfferScorer offerScorer;
+    private final PersistentVolumes persistentVolumes;
+
+    public OfferPlanner(Configuration configuration, FrameworkState frameworkState, ClusterState clusterState, TaskInfoFactory taskInfoFactory, OfferStrategy offerStrategy, ForkJoinPool evaluationPool) {
+        this.configuration = configuration;
+        this.frameworkState = frameworkState;
+        this.clusterState = clusterState;
+        this.taskInfoFactory = taskInfoFactory;
+        this.offerStrategy = offerStrategy;
+        this.evaluationPool = evaluationPool;
+        this.offerScorer = new OfferScorer(configuration);
+        this.persistentVolumes = new PersistentVolumes(configuration);
+    }
+
+    /**
+     * Assigns as many tasks as fit to the given offers. If planning fails, every task staged so far is discarded.
+     *
+     * @param offers the offers received in one callback
+     * @param clock used to name the tasks
+     * @return the launches, one per slave, and the offers to decline
+     */
+    public Plan plan(List<Protos.Offer> offers, Clock clock) {
+        final Map<String, Launch> launches = new LinkedHashMap<>();
+        final Map<Protos.Offer, OfferStrategy.OfferResult> declines = new LinkedHashMap<>();
+        final ClusterSnapshot batchSnapshot = offerStrategy.snapshot();
+        final Map<Protos.Offer, OfferStrategy.OfferResult> evaluated = evaluateAll(offers, batchSnapshot);
+        ClusterSnapshot snapshot = batchSnapshot;
+        try {
+            for (Protos.Offer offer : offers.size() < 2 ? offers : offerScorer.rank(offers, snapshot)) {
+                if (clusterState.getTaskCount() >= configuration.getElasticsearchNodes()) {
+                    // Skips the rule chain, which may resolve hostnames and call the cluster.
+                    declines.put(offer, OfferStrategy.OfferResult.decline(OfferStrategy.CLUSTER_SIZE_FULFILLED, OfferStrategy.Refusal.UNTIL_CLUSTER_CHANGES));
+                    continue;
+                }
+                OfferStrategy.OfferResult firstResult = evaluated.get(offer);
+                if (firstResult != null && !firstResult.acceptable) {
+                    declines.put(offer, firstResult);
+                    continue;
+                }
+                if (firstResult != null && snapshot != batchSnapshot) {
+                    firstResult = offerStrategy.recheck(offer, snapshot);
+                }
+                final List<Protos.TaskInfo> tasks = new ArrayList<>();
+                final List<Protos.Offer.Operation> operations = new ArrayList<>();
+                final OfferStrategy.OfferResult result = planOffer(offer, firstResult, snapshot, clock, tasks, operations);
+                for (Protos.TaskInfo task : tasks) {
+                    snapshot = snapshot.withTask(task);
+                }
+                if (tasks.isEmpty()) {
+                    declines.put(offer, result);
+                } else {
+                    launches.computeIfAbsent(offer.getSlaveId().getValue(), slaveId -> new Launch()).add(offer.getId(), tasks, operations);
+                }
+            }
+        } catch (RuntimeException e) {
+            clusterState.discardStagedTasks();
+            throw e;
+        }
+        return new Plan(new ArrayList<>(launches.values()), declines);
+    }
+
+    /**
+     * Evaluates the offers concurrently. Rules only read the snapshot and thread safe state, so the offers do not see
+     * each other; conflicts are resolved when the accepted offers are planned.
+     *
+     * @return the result of each offer. Empty if the cluster is already full, as then no offer is evaluated.
+     */
+    private Map<Protos.Offer, OfferStrategy.OfferResult> evaluateAll(List<Protos.Offer> offers, ClusterSnapshot snapshot) {
+        if (offers.size() < 2 || snapshot.getTaskCount() >= configuration.getElasticsearchNodes()) {
+            return Collections.emptyMap();
+        }
+        return evaluationPool.submit(() -> offers.parallelStream().distinct()
+                .collect(toMap(offer -> offer, offer -> offerStrategy.evaluate(offer, snapshot)))).join();
+    }
+
+    /**
+     * Stages tasks on the offer until it is declined, or after the first task if only one task may run per host.
+     *
+     * @param firstResult the result of the whole offer if it has already been evaluated, or null
+     * @return the result of the last evaluation, or null if it was accepted
+     */
+    private OfferStrategy.OfferResult planOffer(Protos.Offer offer, OfferStrategy.OfferResult firstResult, ClusterSnapshot batchSnapshot, Clock clock, List<Protos.TaskInfo> tasks, List<Protos.Offer.Operation> operations) {
+        Protos.Offer remaining = offer;
+        ClusterSnapshot snapshot = batchSnapshot;
+        OfferStrategy.OfferResult evaluated = firstResult;
+        do {
+            final OfferStrategy.OfferResult result = evaluated != null ? evaluated : offerStrategy.evaluate(remaining, snapshot);
+            evaluated = null;
+            if (!result.acceptable) {
+                return result;
+            }
+            Protos.TaskInfo taskInfo = taskInfoFactory.createTask(configuration, frameworkState, remaining, clock);
+            List<Protos.Resource> taken = taskInfo.getResourcesList();
+            if (configuration.getFrameworkPersistentVolumes()) {
+                // The prepared task holds reserved resources, which are not in the offer yet.
+                final PersistentVolumes.Preparation preparation = persistentVolumes.prepare(remaining, taskInfo);
+                taskInfo = preparation.getTask();
+                taken = preparation.getOfferedResources();
+                operations.addAll(preparation.getOperations());
+            }
+            clusterState.stageTask(taskInfo);
+            snapshot = snapshot.withTask(taskInfo);
+            tasks.add(taskInfo);
+            remaining = Protos.Offer.newBuilder(remaining)
+                    .clearResources()
+                    .addAllResources(Resources.subtract(remaining.getResourcesList(), taken))
+                    .build();
+        } while (configuration.getMesosMultipleTasksPerHost());
+        return null;
+    }
+
+    /**
+     * The outcome of planning a batch of offers
+     */
+    public static class Plan {
+        private final List<Launch> launches;
+        private final Map<Protos.Offer, OfferStrategy.OfferResult> declines;
+
+        Plan(List<Launch> launches, Map<Protos.Offer, OfferStrategy.OfferResult> declines) {
+            this.launches = Collections.unmodifiableList(launches);
+            this.declines = Collections.unmodifiableMap(declines);
+        }
+
+        /**
+         * @return one launch per slave that was given tasks
+         */
+        public List<Launch> getLaunches() {
+            return launches;
+        }
+
+        /**
+         * @return the offers that were given no task, with the result that declined them
+         */
+        public Map<Protos.Offer, OfferStrategy.OfferResult> getDeclines() {
+            return declines;
+        }
+    }
+
+    /**
+     * The offers of one slave and the tasks to launch on them. Mesos only accepts offers from a single slave in one
+     * launch.
+     */
+    public static class Launch {
+        private final List<Protos.OfferID> offerIds = new ArrayList<>();
+        private final List<Protos.TaskInfo> tasks = new ArrayList<>();
+        private final List<Protos.Offer.Operation> operations = new ArrayList<>();
+
+        void add(Protos.OfferID offerId, List<Protos.TaskInfo> offerTasks, List<Protos.Offer.Operation> offerOperations) {
+            offerIds.add(offerId);
+            tasks.addAll(offerTasks);
+            operations.addAll(offerOperations);
+        }
+
+        /**
+         * @return the operations to run before the tasks are launched, e.g. to reserve resources. Empty unless
+         * persistent volumes are used.
+         */
+        public List<Protos.Offer.Operation> getOperations() {
+            return operations;
+        }
+
+        public List<Protos.OfferID> getOfferIds() {
+            return offerIds;
+        }
+
+        public List<Protos.TaskInfo> getTasks() {
+            return tasks;
+        }
+    }
+}
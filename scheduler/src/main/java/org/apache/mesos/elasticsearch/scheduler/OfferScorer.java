@@ -0,0 +1,61 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks offers, so that when a batch holds more offers than tasks are needed, the tasks go to the best hosts rather
+ * than to the first ones offered.
+ *
+ * An offer scores the share of each resource it would have left after the task, weighted by the configuration: spare
+ * RAM is left to the page cache, and spare CPU and disk mean less contention with other tasks. The elasticsearch tasks
+ * already on the slave count against it. With persistent volumes, an offer that holds one of our volumes goes before
+ * all others, so the data is reused.
+ */
+public class OfferScorer {
+    static final double VOLUME_BONUS = 1000; // Far above what the weights add up to.
+    private final Configuration configuration;
+    private final PersistentVolumes persistentVolumes;
+
+    public OfferScorer(Configuration configuration) {
+        this.configuration = configuration;
+        this.persistentVolumes = new PersistentVolumes(configuration);
+    }
+
+    /**
+     * @return the offers, best first. Offers of equal score keep their order.
+     */
+    public List<Protos.Offer> rank(List<Protos.Offer> offers, ClusterSnapshot snapshot) {
+        final Map<Protos.Offer, Double> scores = new IdentityHashMap<>();
+        offers.forEach(offer -> scores.put(offer, score(offer, snapshot)));
+        final List<Protos.Offer> ranked = new ArrayList<>(offers);
+        ranked.sort(Comparator.comparing(scores::get, Comparator.reverseOrder()));
+        return ranked;
+    }
+
+    /**
+     * @return the score of the offer. Higher is better.
+     */
+    public double score(Protos.Offer offer, ClusterSnapshot snapshot) {
+        final List<Protos.Resource> resources = offer.getResourcesList();
+        final int tasksOnSlave = snapshot.countTasksOnSlave(offer.getSlaveId());
+        return configuration.getMesosOfferWeightMem() * spare(resources, Resources.RESOURCE_MEM, configuration.getMem())
+                + configuration.getMesosOfferWeightDisk() * spare(resources, Resources.RESOURCE_DISK, configuration.getDisk())
+                + configuration.getMesosOfferWeightCpus() * spare(resources, Resources.RESOURCE_CPUS, configuration.getCpus())
+                - configuration.getMesosOfferWeightLoad() * tasksOnSlave / (tasksOnSlave + 1.0)
+                + (configuration.getFrameworkPersistentVolumes() && persistentVolumes.findVolume(resources).isPresent() ? VOLUME_BONUS : 0);
+    }
+
+    /**
+     * @return the share of the offered resource left after the task, between 0 and 1
+     */
+    static double spare(List<Protos.Resource> resources, String name, double required) {
+        final double offered = new ResourceCheck(name).total(resources);
+        return offered <= 0 ? 0 : Math.max(0, offered - required) / offered;
+    }
+}
@@ -1,99 +1,186 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
-import org.apache.mesos.elasticsearch.common.util.NetworkUtils;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
-import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 /**
  * Offer strategy
+ *
+ * Rules read the cluster from a {@link ClusterSnapshot} and run cheapest first, so an offer that lacks resources is
+ * declined before any host is resolved. Every rule evaluation is timed. An offer that passes every rule is reported to
+ * the {@link FailureDomains}, so they know which zones and racks can take a node, and then checked against the balance
+ * of the failure domains.
  */
 public class OfferStrategy {
     protected static final Logger LOGGER = Logger.getLogger(ElasticsearchScheduler.class.toString());
     public static final int DUMMY_PORT = 80;
+    public static final String CLUSTER_SIZE_FULFILLED = "Cluster size already fulfilled";
     protected ClusterState clusterState;
     protected Configuration configuration;
+    protected HealthMonitor healthMonitor;
+    protected PersistentVolumes persistentVolumes;
+    protected FailureDomains failureDomains;
 
     protected List<OfferRule> acceptanceRules = null;
+    private final OfferRule balanceRule = new OfferRule("Other failure domains run fewer nodes", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !failureDomains.isLeastLoaded(offer, snapshot));
+    private final RuleMetrics ruleMetrics = new RuleMetrics();
 
     protected boolean isHostnameResolveable(String hostname) {
         LOGGER.debug("Attempting to resolve hostname: " + hostname);
-        InetSocketAddress address = new InetSocketAddress(hostname, DUMMY_PORT);
-        return !address.isUnresolved();
+        return DnsCache.getDefault().resolve(hostname).isPresent();
     }
 
-    protected boolean isAtLeastOneESNodeRunning() {
+    /**
+     * Reads the health of the first node from the {@link HealthMonitor}, so no offer waits on Elasticsearch once the
+     * node has been checked. Until then, e.g. after a failover, the node is checked once.
+     */
+    protected boolean isAtLeastOneESNodeRunning(ClusterSnapshot snapshot) {
         // If this is the first, do not check
-        final Map<String, Task> taskList = clusterState.getGuiTaskList();
-        if (taskList.size() == 0) {
-            return true;
-        } else {
-            try {
-                // TODO (PNW): Better get HTTP address method. We do this everywhere.
-                InetSocketAddress clientAddress = taskList.get(clusterState.getTaskList().get(0).getTaskId().getValue()).getClientAddress();
-                String hostAddress = NetworkUtils.addressToString(clientAddress, configuration.getIsUseIpAddress());
-                final int hostHttpStatus = Unirest.get(hostAddress).asString().getStatus();
-                // If the quorum requirement is set higher than the number of nodes running,
-                // we will get back a 503.
-                return hostHttpStatus == 200 || hostHttpStatus == 503;
-            } catch (UnirestException e) {
-                return false;
-            }
-        }
+        return snapshot.getFirstTask().map(task -> healthMonitor.isHealthyOrCheck(task.getTaskId().getValue())).orElse(true);
     }
 
-    protected OfferStrategy(Configuration configuration, ClusterState clusterState) {
+    protected OfferStrategy(Configuration configuration, ClusterState clusterState, HealthMonitor healthMonitor) {
         this.clusterState = clusterState;
         this.configuration = configuration;
+        this.healthMonitor = healthMonitor;
+        this.persistentVolumes = new PersistentVolumes(configuration);
+        this.failureDomains = new FailureDomains(configuration);
+    }
+
+    /**
+     * @return the view of the cluster to evaluate a batch of offers against
+     */
+    protected ClusterSnapshot snapshot() {
+        return ClusterSnapshot.of(clusterState);
     }
 
     protected OfferResult evaluate(Protos.Offer offer) {
-        final Optional<OfferRule> decline = acceptanceRules.stream().filter(offerRule -> offerRule.rule.accepts(offer)).limit(1).findFirst();
-        if (decline.isPresent()) {
-            return OfferResult.decline(decline.get().declineReason);
+        return evaluate(offer, snapshot());
+    }
+
+    protected OfferResult evaluate(Protos.Offer offer, ClusterSnapshot snapshot) {
+        for (OfferRule offerRule : acceptanceRules) {
+            if (declines(offerRule, offer, snapshot)) {
+                return OfferResult.decline(offerRule.declineReason, offerRule.refusal);
+            }
+        }
+        // A domain that is full keeps sending offers. Only one that can take a node may hold back the others.
+        failureDomains.observe(offer);
+        if (declines(balanceRule, offer, snapshot)) {
+            return OfferResult.decline(balanceRule.declineReason, balanceRule.refusal);
         }
 
         LOGGER.info("Accepted offer: " + offer.getHostname());
         return OfferResult.accept();
     }
 
+    /**
+     * Evaluates an accepted offer again after other tasks were planned in the same batch, to resolve conflicts between
+     * offers that were accepted together. Expensive rules only depend on the host, so they keep their result for the
+     * batch and are not run again. Not recorded in the rule metrics, as the offer has already been counted.
+     */
+    protected OfferResult recheck(Protos.Offer offer, ClusterSnapshot snapshot) {
+        for (OfferRule offerRule : acceptanceRules) {
+            if (offerRule.cost != Cost.EXPENSIVE && offerRule.rule.accepts(offer, snapshot)) {
+                return OfferResult.decline(offerRule.declineReason, offerRule.refusal);
+            }
+        }
+        if (balanceRule.rule.accepts(offer, snapshot)) {
+            return OfferResult.decline(balanceRule.declineReason, balanceRule.refusal);
+        }
+        return OfferResult.accept();
+    }
+
+    /**
+     * @return the count, declines and latency of each rule, by decline reason
+     */
+    public Map<String, RuleMetrics.RuleSnapshot> getRuleMetrics() {
+        return ruleMetrics.getRules();
+    }
+
+    private boolean declines(OfferRule offerRule, Protos.Offer offer, ClusterSnapshot snapshot) {
+        final long start = ruleMetrics.start();
+        final boolean declines = offerRule.cost == Cost.EXPENSIVE
+                ? snapshot.checkHost(offerRule.declineReason, offer.getHostname(), () -> offerRule.rule.accepts(offer, snapshot))
+                : offerRule.rule.accepts(offer, snapshot);
+        ruleMetrics.record(offerRule.declineReason, start, declines);
+        return declines;
+    }
+
+    /**
+     * @return the rules, cheapest first. Rules of the same cost keep their order.
+     */
+    protected static List<OfferRule> byCost(OfferRule... rules) {
+        final List<OfferRule> sorted = new ArrayList<>(Arrays.asList(rules));
+        sorted.sort(Comparator.comparing(offerRule -> offerRule.cost));
+        return sorted;
+    }
+
     /**
      * Offer result
      */
     protected static class OfferResult {
         final boolean acceptable;
         final Optional<String> reason;
+        final Refusal refusal;
 
-        private OfferResult(boolean acceptable, Optional<String> reason) {
+        private OfferResult(boolean acceptable, Optional<String> reason, Refusal refusal) {
             this.acceptable = acceptable;
             this.reason = reason;
+            this.refusal = refusal;
         }
 
         public static OfferResult accept() {
-            return new OfferResult(true, Optional.<String>empty());
+            return new OfferResult(true, Optional.<String>empty(), Refusal.TRANSIENT);
         }
 
         public static OfferResult decline(String reason) {
-            return new OfferResult(false, Optional.of(reason));
+            return decline(reason, Refusal.TRANSIENT);
+        }
+
+        public static OfferResult decline(String reason, Refusal refusal) {
+            return new OfferResult(false, Optional.of(reason), refusal);
+        }
+
+        /**
+         * @return filters that keep Mesos from offering the declined resources again for as long as the reason is
+         * likely to hold
+         */
+        public Protos.Filters filters(Configuration configuration) {
+            return Protos.Filters.newBuilder().setRefuseSeconds(configuration.getMesosOfferRefuseSeconds() * refusal.scale).build();
         }
     }
 
-    protected boolean isHostAlreadyRunningTask(Protos.Offer offer) {
-        Boolean result = false;
-        List<Protos.TaskInfo> stateList = clusterState.getTaskList();
-        for (Protos.TaskInfo t : stateList) {
-            if (t.getSlaveId().equals(offer.getSlaveId())) {
-                result = true;
-            }
+    /**
+     * How long a declined offer is held back, as a fraction of {@link Configuration#getMesosOfferRefuseSeconds()}.
+     */
+    protected enum Refusal {
+        /** May change within seconds, e.g. the first node is still starting. */
+        TRANSIENT(1.0 / 60),
+        /** Changes when other frameworks release resources on the host. */
+        RESOURCES(1.0 / 10),
+        /** Only changes when a task is lost or the cluster size changes, which revives offers anyway. */
+        UNTIL_CLUSTER_CHANGES(1.0);
+
+        private final double scale;
+
+        Refusal(double scale) {
+            this.scale = scale;
         }
-        return result;
+    }
+
+    protected boolean isHostAlreadyRunningTask(Protos.Offer offer, ClusterSnapshot snapshot) {
+        return snapshot.countTasksOnSlave(offer.getSlaveId()) > 0;
     }
 
     protected boolean isEnoughCPU(Configuration configuration, List<Protos.Resource> resourcesList) {
@@ -120,15 +207,31 @@ public class OfferStrategy {
         return true;
     }
 
+    /**
+     * How much a rule costs to evaluate. Cheaper rules run first.
+     */
+    protected enum Cost {
+        /** Reads only the offer and the snapshot. */
+        CHEAP,
+        /** Reads state kept outside the snapshot, e.g. node health. */
+        MODERATE,
+        /** May block on the network, e.g. DNS. Must only depend on the host, as it runs once per host and batch. */
+        EXPENSIVE
+    }
+
     /**
      * Rule and reason container object
      */
     protected static class OfferRule {
         String declineReason;
+        Refusal refusal;
+        Cost cost;
         Rule rule;
 
-        public OfferRule(String declineReason, Rule rule) {
+        public OfferRule(String declineReason, Refusal refusal, Cost cost, Rule rule) {
             this.declineReason = declineReason;
+            this.refusal = refusal;
+            this.cost = cost;
             this.rule = rule;
         }
     }
@@ -138,6 +241,6 @@ public class OfferStrategy {
      */
     @FunctionalInterface
     protected interface Rule {
-        boolean accepts(Protos.Offer offer);
+        boolean accepts(Protos.Offer offer, ClusterSnapshot snapshot);
     }
 }
@@ -1,9 +1,8 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
-import static java.util.Arrays.asList;
-
 /**
  * Offer strategy when external storage is involved. Notice when compared to the OfferStrategyNormal, the OfferRule for
  * checking if enough storage space is no longer needed because external volumes size is managed externally (storage
@@ -11,19 +10,20 @@ import static java.util.Arrays.asList;
  */
 public class OfferStrategyExternalStorage extends OfferStrategy {
 
-    public OfferStrategyExternalStorage(final Configuration configuration, ClusterState clusterState) {
-        super(configuration, clusterState);
+    public OfferStrategyExternalStorage(final Configuration configuration, ClusterState clusterState, HealthMonitor healthMonitor) {
+        super(configuration, clusterState, healthMonitor);
         // Offer rule lambda returns false, it accepts the offer.
         // Offer rule lambda returns true, it declines the offer.
-        acceptanceRules = asList(
-          new OfferRule("Host already running task", offer -> !configuration.getMesosMultipleTasksPerHost() && isHostAlreadyRunningTask(offer)),
-          new OfferRule("Hostname is unresolveable", offer -> !isHostnameResolveable(offer.getHostname())),
-          new OfferRule("First ES node is not responding", offer -> !isAtLeastOneESNodeRunning() && configuration.getMesosOfferWaitForRunning()),
-          new OfferRule("Cluster size already fulfilled", offer -> clusterState.getTaskList().size() >= configuration.getElasticsearchNodes()),
-          new OfferRule("Offer did not have 2 ports", offer -> !containsTwoPorts(offer.getResourcesList())),
-          new OfferRule("The offer does not contain the user specified ports", offer -> !(containsUserSpecifiedPorts(offer.getResourcesList()) || configuration.getMesosOfferIgnorePorts())),
-          new OfferRule("Offer did not have enough CPU resources", offer -> !isEnoughCPU(configuration, offer.getResourcesList())),
-          new OfferRule("Offer did not have enough RAM resources", offer -> !isEnoughRAM(configuration, offer.getResourcesList()))
+        acceptanceRules = byCost(
+          new OfferRule("Host already running task", Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> !configuration.getMesosMultipleTasksPerHost() && isHostAlreadyRunningTask(offer, snapshot)),
+          new OfferRule("Agent lacks an awareness attribute", Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> !failureDomains.hasAttributes(offer)),
+          new OfferRule("Hostname is unresolveable", Refusal.RESOURCES, Cost.EXPENSIVE, (offer, snapshot) -> !isHostnameResolveable(offer.getHostname())),
+          new OfferRule("First ES node is not responding", Refusal.TRANSIENT, Cost.MODERATE, (offer, snapshot) -> configuration.getMesosOfferWaitForRunning() && !isAtLeastOneESNodeRunning(snapshot)),
+          new OfferRule(CLUSTER_SIZE_FULFILLED, Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> snapshot.getTaskCount() >= configuration.getElasticsearchNodes()),
+          new OfferRule("Offer did not have 2 ports", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !containsTwoPorts(offer.getResourcesList())),
+          new OfferRule("The offer does not contain the user specified ports", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !(containsUserSpecifiedPorts(offer.getResourcesList()) || configuration.getMesosOfferIgnorePorts())),
+          new OfferRule("Offer did not have enough CPU resources", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !isEnoughCPU(configuration, offer.getResourcesList())),
+          new OfferRule("Offer did not have enough RAM resources", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !isEnoughRAM(configuration, offer.getResourcesList()))
         );
 
     }
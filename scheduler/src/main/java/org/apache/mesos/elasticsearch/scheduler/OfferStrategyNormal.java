@@ -1,31 +1,32 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 
 import java.util.List;
 
-import static java.util.Arrays.asList;
-
 /**
  * Offer strategy
  */
 public class OfferStrategyNormal extends OfferStrategy {
 
-    public OfferStrategyNormal(Configuration configuration, ClusterState clusterState) {
-        super(configuration, clusterState);
+    public OfferStrategyNormal(Configuration configuration, ClusterState clusterState, HealthMonitor healthMonitor) {
+        super(configuration, clusterState, healthMonitor);
         // Offer rule lambda returns false, it accepts the offer.
         // Offer rule lambda returns true, it declines the offer.
-        acceptanceRules = asList(
-          new OfferRule("Host already running task", offer -> !configuration.getMesosMultipleTasksPerHost() && isHostAlreadyRunningTask(offer)),
-          new OfferRule("Hostname is unresolveable", offer -> !isHostnameResolveable(offer.getHostname())),
-          new OfferRule("First ES node is not responding", offer -> !isAtLeastOneESNodeRunning() && configuration.getMesosOfferWaitForRunning()),
-          new OfferRule("Cluster size already fulfilled", offer -> clusterState.getTaskList().size() >= configuration.getElasticsearchNodes()),
-          new OfferRule("Offer did not have 2 ports", offer -> !containsTwoPorts(offer.getResourcesList())),
-          new OfferRule("The offer does not contain the user specified ports", offer -> !(containsUserSpecifiedPorts(offer.getResourcesList()) || configuration.getMesosOfferIgnorePorts())),
-          new OfferRule("Offer did not have enough CPU resources", offer -> !isEnoughCPU(configuration, offer.getResourcesList())),
-          new OfferRule("Offer did not have enough RAM resources", offer -> !isEnoughRAM(configuration, offer.getResourcesList())),
-          new OfferRule("Offer did not have enough disk resources", offer -> !isEnoughDisk(configuration, offer.getResourcesList()))
+        acceptanceRules = byCost(
+          new OfferRule("Host already running task", Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> !configuration.getMesosMultipleTasksPerHost() && isHostAlreadyRunningTask(offer, snapshot)),
+          new OfferRule("Agent lacks an awareness attribute", Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> !failureDomains.hasAttributes(offer)),
+          new OfferRule("Hostname is unresolveable", Refusal.RESOURCES, Cost.EXPENSIVE, (offer, snapshot) -> !isHostnameResolveable(offer.getHostname())),
+          new OfferRule("First ES node is not responding", Refusal.TRANSIENT, Cost.MODERATE, (offer, snapshot) -> configuration.getMesosOfferWaitForRunning() && !isAtLeastOneESNodeRunning(snapshot)),
+          new OfferRule(CLUSTER_SIZE_FULFILLED, Refusal.UNTIL_CLUSTER_CHANGES, Cost.CHEAP, (offer, snapshot) -> snapshot.getTaskCount() >= configuration.getElasticsearchNodes()),
+          new OfferRule("Offer did not have 2 ports", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !containsTwoPorts(offer.getResourcesList())),
+          new OfferRule("The offer does not contain the user specified ports", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !(containsUserSpecifiedPorts(offer.getResourcesList()) || configuration.getMesosOfferIgnorePorts())),
+          new OfferRule("Offer did not have enough CPU resources", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !isEnoughCPU(configuration, offer.getResourcesList())),
+          new OfferRule("Offer did not have enough RAM resources", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !isEnoughRAM(configuration, offer.getResourcesList())),
+          new OfferRule("Offer did not have enough disk resources", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> !isEnoughDisk(configuration, offer.getResourcesList())),
+          new OfferRule("Offer did not have a disk to hold a persistent volume", Refusal.RESOURCES, Cost.CHEAP, (offer, snapshot) -> configuration.getFrameworkPersistentVolumes() && !persistentVolumes.canHoldVolume(offer.getResourcesList()))
         );
     }
 
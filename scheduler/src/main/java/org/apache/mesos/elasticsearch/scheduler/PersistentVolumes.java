@@ -0,0 +1,190 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Keeps the data of each Elasticsearch node on a persistent volume, on resources dynamically reserved for the
+ * framework role. Mesos offers the reserved resources and the volume back to this framework only, so when a node dies
+ * its replacement is started on the same agent with the same data, and recovers its shards locally instead of copying
+ * them over the network.
+ *
+ * A new task takes whatever it needs from "*" through a RESERVE operation and creates its volume through a CREATE
+ * operation, both sent with the launch. A task on an offer that holds one of our volumes reuses it.
+ *
+ * Nothing is ever released: no DESTROY or UNRESERVE operation is sent, because Mesos only accepts them against an offer,
+ * and there are none once the framework is torn down. Volumes of removed nodes stay reserved for the role until an
+ * operator destroys and unreserves them, e.g. through the Mesos {@code /destroy-volumes} and {@code /unreserve}
+ * endpoints.
+ */
+public class PersistentVolumes {
+    private final Configuration configuration;
+
+    public PersistentVolumes(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return an unused volume of this cluster in the offered resources
+     */
+    public Optional<Protos.Resource> findVolume(List<Protos.Resource> offeredResources) {
+        return offeredResources.stream().filter(this::isOurVolume).findFirst();
+    }
+
+    /**
+     * @return true if a task started on the resources has somewhere to keep its data: an existing volume, or a single
+     * disk resource large enough for a new one
+     */
+    public boolean canHoldVolume(List<Protos.Resource> offeredResources) {
+        return findVolume(offeredResources).isPresent() || findVolumeSource(offeredResources).isPresent();
+    }
+
+    /**
+     * Moves a task onto reserved resources and a persistent volume.
+     *
+     * @param offer the offer the task was built from
+     * @param task a task whose resources were taken from the offer
+     * @return the task, with the volume in place of its disk, and the operations to run before it is launched
+     */
+    public Preparation prepare(Protos.Offer offer, Protos.TaskInfo task) {
+        final List<Protos.Resource> toReserve = new ArrayList<>();
+        final List<Protos.Resource> taken = new ArrayList<>();
+        final List<Protos.Offer.Operation> operations = new ArrayList<>();
+        final Protos.TaskInfo.Builder builder = Protos.TaskInfo.newBuilder(task).clearResources();
+        for (Protos.Resource resource : task.getResourcesList()) {
+            if (resource.getName().equals(Resources.RESOURCE_DISK) && resource.hasScalar()) {
+                continue; // Replaced by the volume
+            }
+            taken.add(resource);
+            builder.addResources(reserveIfUnreserved(resource, toReserve));
+        }
+
+        final Optional<Protos.Resource> existingVolume = findVolume(offer.getResourcesList());
+        final Protos.Resource volume = existingVolume.isPresent() ? existingVolume.get() : newVolume(offer, toReserve, taken);
+        builder.addResources(volume);
+        existingVolume.ifPresent(taken::add);
+
+        if (!toReserve.isEmpty()) {
+            operations.add(Protos.Offer.Operation.newBuilder()
+                    .setType(Protos.Offer.Operation.Type.RESERVE)
+                    .setReserve(Protos.Offer.Operation.Reserve.newBuilder().addAllResources(toReserve))
+                    .build());
+        }
+        if (!existingVolume.isPresent()) {
+            operations.add(Protos.Offer.Operation.newBuilder()
+                    .setType(Protos.Offer.Operation.Type.CREATE)
+                    .setCreate(Protos.Offer.Operation.Create.newBuilder().addVolumes(volume))
+                    .build());
+        }
+        return new Preparation(builder.build(), operations, taken);
+    }
+
+    private Protos.Resource newVolume(Protos.Offer offer, List<Protos.Resource> toReserve, List<Protos.Resource> taken) {
+        final Protos.Resource source = findVolumeSource(offer.getResourcesList())
+                .orElseThrow(() -> new IllegalStateException("Offer " + offer.getId().getValue() + " has no disk for a persistent volume"));
+        final Protos.Resource disk = Protos.Resource.newBuilder(source)
+                .setScalar(Protos.Value.Scalar.newBuilder().setValue(configuration.getDisk()))
+                .build();
+        taken.add(disk);
+        return Protos.Resource.newBuilder(reserveIfUnreserved(disk, toReserve))
+                .setDisk(Protos.Resource.DiskInfo.newBuilder()
+                        .setPersistence(persistence())
+                        .setVolume(Protos.Volume.newBuilder()
+                                .setContainerPath(Configuration.PERSISTENT_VOLUME_PATH)
+                                .setMode(Protos.Volume.Mode.RW)))
+                .build();
+    }
+
+    /**
+     * @return a single disk resource, reserved first, that a new volume of the configured size fits on
+     */
+    private Optional<Protos.Resource> findVolumeSource(List<Protos.Resource> offeredResources) {
+        return offeredResources.stream()
+                .filter(resource -> resource.getName().equals(Resources.RESOURCE_DISK) && resource.hasScalar() && !resource.hasDisk())
+                .filter(resource -> isUsableRole(resource) && resource.getScalar().getValue() >= configuration.getDisk())
+                .sorted(Comparator.comparing(resource -> Resources.ANY_ROLE.equals(resource.getRole())))
+                .findFirst();
+    }
+
+    private Protos.Resource reserveIfUnreserved(Protos.Resource resource, List<Protos.Resource> toReserve) {
+        if (!Resources.ANY_ROLE.equals(resource.getRole())) {
+            return resource;
+        }
+        final Protos.Resource.ReservationInfo.Builder reservation = Protos.Resource.ReservationInfo.newBuilder();
+        if (!configuration.getFrameworkPrincipal().isEmpty()) {
+            reservation.setPrincipal(configuration.getFrameworkPrincipal());
+        }
+        final Protos.Resource reserved = Protos.Resource.newBuilder(resource)
+                .setRole(configuration.getFrameworkRole())
+                .setReservation(reservation)
+                .build();
+        toReserve.add(reserved);
+        return reserved;
+    }
+
+    private Protos.Resource.DiskInfo.Persistence.Builder persistence() {
+        final Protos.Resource.DiskInfo.Persistence.Builder persistence = Protos.Resource.DiskInfo.Persistence.newBuilder()
+                .setId(volumePrefix() + UUID.randomUUID());
+        if (!configuration.getFrameworkPrincipal().isEmpty()) {
+            persistence.setPrincipal(configuration.getFrameworkPrincipal());
+        }
+        return persistence;
+    }
+
+    private boolean isOurVolume(Protos.Resource resource) {
+        return resource.getName().equals(Resources.RESOURCE_DISK)
+                && resource.getRole().equals(configuration.getFrameworkRole())
+                && resource.getDisk().getPersistence().getId().startsWith(volumePrefix());
+    }
+
+    private boolean isUsableRole(Protos.Resource resource) {
+        return Resources.ANY_ROLE.equals(resource.getRole()) || resource.getRole().equals(configuration.getFrameworkRole());
+    }
+
+    /**
+     * Volumes are named after the framework and the cluster, so several clusters can share a role.
+     */
+    private String volumePrefix() {
+        return configuration.getFrameworkName() + "." + configuration.getElasticsearchClusterName() + ".";
+    }
+
+    /**
+     * A task moved onto reserved resources, and the operations that prepare them
+     */
+    public static class Preparation {
+        private final Protos.TaskInfo task;
+        private final List<Protos.Offer.Operation> operations;
+        private final List<Protos.Resource> offeredResources;
+
+        Preparation(Protos.TaskInfo task, List<Protos.Offer.Operation> operations, List<Protos.Resource> offeredResources) {
+            this.task = task;
+            this.operations = Collections.unmodifiableList(operations);
+            this.offeredResources = Collections.unmodifiableList(offeredResources);
+        }
+
+        public Protos.TaskInfo getTask() {
+            return task;
+        }
+
+        /**
+         * @return the RESERVE and CREATE operations to run before the task is launched, in order
+         */
+        public List<Protos.Offer.Operation> getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return the resources the task takes from the offer, as they were offered: before they are reserved, and the
+         * disk a new volume is made from
+         */
+        public List<Protos.Resource> getOfferedResources() {
+            return offeredResources;
+        }
+    }
+}
@@ -5,7 +5,9 @@ import org.apache.mesos.Protos;
 import java.util.List;
 
 /**
- * Checks a list of resources to ensure that it contains more than the required value
+ * Checks a list of resources to ensure that it contains more than the required value. Resources of the same name are
+ * added up across roles, so an offer that splits a resource between the framework role and "*" is enough if the sum
+ * is.
  */
 public class ResourceCheck {
     private final String resourceName;
@@ -24,16 +26,18 @@ public class ResourceCheck {
      * @return true if there are enough resources
      */
     public Boolean isEnough(List<Protos.Resource> resourcesList, double requiredValue) {
-        Protos.Resource resource = getResource(resourcesList);
-        return resource != null && resource.getScalar() != null && resource.getScalar().getValue() >= requiredValue;
+        return resourcesList.stream().anyMatch(this::isScalar) && total(resourcesList) >= requiredValue;
     }
 
-    private Protos.Resource getResource(List<Protos.Resource> resourcesList) {
-        for (Protos.Resource resource : resourcesList) {
-            if (resource.getName().equals(resourceName)) {
-                return resource;
-            }
-        }
-        return null;
+    /**
+     * @param resourcesList a list of resources
+     * @return the sum of every scalar resource with the name, e.g. of several roles
+     */
+    public double total(List<Protos.Resource> resourcesList) {
+        return resourcesList.stream().filter(this::isScalar).mapToDouble(resource -> resource.getScalar().getValue()).sum();
+    }
+
+    private boolean isScalar(Protos.Resource resource) {
+        return resource.getName().equals(resourceName) && resource.hasScalar();
     }
 }
\ No newline at end of file
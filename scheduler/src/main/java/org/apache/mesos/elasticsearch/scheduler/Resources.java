@@ -4,8 +4,10 @@ import org.apache.mesos.Protos;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * Helper class for building Mesos resources.
@@ -16,6 +18,8 @@ public class Resources {
     public static final String RESOURCE_CPUS = "cpus";
     public static final String RESOURCE_MEM = "mem";
     public static final String RESOURCE_DISK = "disk";
+    public static final String ANY_ROLE = "*";
+    private static final double EPSILON = 0.0001; // Mesos keeps three decimals.
 
     private Resources() {
 
@@ -82,6 +86,85 @@ public class Resources {
 
     }
 
+    /**
+     * Builds the resources of a task from the resources of an offer, taking each resource from the roles it is offered
+     * in. Reserved resources are used before unreserved ones.
+     */
+    public static ArrayList<Protos.Resource> buildFrameworkResources(Configuration configuration, List<Protos.Resource> offeredResources) {
+        final String role = configuration.getFrameworkRole();
+        final ArrayList<Protos.Resource> resources = new ArrayList<>();
+        resources.addAll(allocate(offeredResources, RESOURCE_CPUS, configuration.getCpus(), role));
+        resources.addAll(allocate(offeredResources, RESOURCE_MEM, configuration.getMem(), role));
+
+        //if we are using external storage, then we dont need to take disk into account
+        if (configuration.getExternalVolumeDriver() == null || configuration.getExternalVolumeDriver().length() == 0) {
+            resources.addAll(allocate(offeredResources, RESOURCE_DISK, configuration.getDisk(), role));
+        }
+        return resources;
+    }
+
+    /**
+     * Plans which roles an amount of a scalar resource is taken from. Reserved roles go first, as that capacity is
+     * held for this framework anyway, and then "*". Each part copies the offered resource, so it keeps its role and
+     * reservation.
+     *
+     * @param offeredResources the resources of the offer
+     * @param name the name of the scalar resource
+     * @param amount how much is needed
+     * @param frameworkRole the role to ask for whatever the offer does not cover
+     * @return one resource per role used
+     */
+    public static List<Protos.Resource> allocate(List<Protos.Resource> offeredResources, String name, double amount, String frameworkRole) {
+        final List<Protos.Resource> candidates = offeredResources.stream()
+                .filter(resource -> resource.getName().equals(name) && resource.hasScalar() && !isPersistentVolume(resource))
+                .sorted(Comparator.comparing(resource -> ANY_ROLE.equals(resource.getRole())))
+                .collect(Collectors.toList());
+        final List<Protos.Resource> allocated = new ArrayList<>();
+        double left = amount;
+        for (Protos.Resource resource : candidates) {
+            if (left < EPSILON) {
+                break;
+            }
+            final double taken = Math.min(left, resource.getScalar().getValue());
+            if (taken >= EPSILON) {
+                allocated.add(Protos.Resource.newBuilder(resource).setScalar(Protos.Value.Scalar.newBuilder().setValue(taken)).build());
+                left -= taken;
+            }
+        }
+        if (left >= EPSILON || allocated.isEmpty()) {
+            // Not offered. The offer rules decline such offers, so this only keeps the task complete.
+            allocated.add(Protos.Resource.newBuilder()
+                    .setName(name)
+                    .setType(Protos.Value.Type.SCALAR)
+                    .setScalar(Protos.Value.Scalar.newBuilder().setValue(Math.max(0, left)))
+                    .setRole(frameworkRole)
+                    .build());
+        }
+        return allocated;
+    }
+
+    /**
+     * @return the port as a resource of the role it is offered in, or of the framework role if it is not offered
+     */
+    public static Protos.Resource allocatePort(List<Protos.Resource> offeredResources, long port, String frameworkRole) {
+        return offeredResources.stream()
+                .filter(resource -> resource.getName().equals(RESOURCE_PORTS) && resource.hasRanges())
+                .filter(resource -> resource.getRanges().getRangeList().stream().anyMatch(range -> range.getBegin() <= port && port <= range.getEnd()))
+                .sorted(Comparator.comparing(resource -> ANY_ROLE.equals(resource.getRole())))
+                .findFirst()
+                .map(resource -> Protos.Resource.newBuilder(resource)
+                        .setRanges(Protos.Value.Ranges.newBuilder().addRange(Protos.Value.Range.newBuilder().setBegin(port).setEnd(port)))
+                        .build())
+                .orElseGet(() -> singlePortRange(port, frameworkRole));
+    }
+
+    private static boolean isPersistentVolume(Protos.Resource resource) {
+        return resource.hasDisk() && resource.getDisk().hasPersistence();
+    }
+
+    /**
+     * @return the resources to request from the master, all in the framework role
+     */
     public static ArrayList<Protos.Resource> buildFrameworkResources(Configuration configuration) {
         Protos.Resource cpus = Resources.cpus(configuration.getCpus(), configuration.getFrameworkRole());
         Protos.Resource mem = Resources.mem(configuration.getMem(), configuration.getFrameworkRole());
@@ -105,4 +188,75 @@ public class Resources {
                 }));
         return available.get();
     }
+
+    /**
+     * Takes the resources used by a task out of an offer, so that the rest can be offered to the next task. Scalars are
+     * taken from the same resource (name, role, reservation and volume), or else the resource with the same name and
+     * role, or else the first with the same name. Scalars that are used up are removed. Ports are taken out of every
+     * range that contains them.
+     *
+     * @param offeredResources the resources of the offer
+     * @param usedResources the resources of the task
+     * @return the resources left over
+     */
+    public static List<Protos.Resource> subtract(List<Protos.Resource> offeredResources, List<Protos.Resource> usedResources) {
+        final List<Protos.Resource> remaining = new ArrayList<>(offeredResources);
+        for (Protos.Resource used : usedResources) {
+            if (used.getType().equals(Protos.Value.Type.SCALAR)) {
+                subtractScalar(remaining, used);
+            } else if (used.getType().equals(Protos.Value.Type.RANGES)) {
+                used.getRanges().getRangeList().forEach(range -> subtractRange(remaining, used.getName(), range));
+            }
+        }
+        return remaining;
+    }
+
+    private static void subtractScalar(List<Protos.Resource> remaining, Protos.Resource used) {
+        final Protos.Resource usedWithoutAmount = Protos.Resource.newBuilder(used).clearScalar().build();
+        int match = -1;
+        int matchRank = 0;
+        for (int i = 0; i < remaining.size() && matchRank < 3; i++) {
+            final Protos.Resource resource = remaining.get(i);
+            if (resource.getName().equals(used.getName()) && resource.getType().equals(Protos.Value.Type.SCALAR)) {
+                final int rank = Protos.Resource.newBuilder(resource).clearScalar().build().equals(usedWithoutAmount) ? 3
+                        : resource.getRole().equals(used.getRole()) ? 2 : 1;
+                if (rank > matchRank) {
+                    match = i;
+                    matchRank = rank;
+                }
+            }
+        }
+        if (match >= 0) {
+            final Protos.Resource resource = remaining.get(match);
+            final double left = resource.getScalar().getValue() - used.getScalar().getValue();
+            if (left < EPSILON) {
+                remaining.remove(match);
+            } else {
+                remaining.set(match, Protos.Resource.newBuilder(resource).setScalar(Protos.Value.Scalar.newBuilder().setValue(left)).build());
+            }
+        }
+    }
+
+    private static void subtractRange(List<Protos.Resource> remaining, String name, Protos.Value.Range used) {
+        for (int i = 0; i < remaining.size(); i++) {
+            final Protos.Resource resource = remaining.get(i);
+            if (!resource.getName().equals(name) || !resource.getType().equals(Protos.Value.Type.RANGES)) {
+                continue;
+            }
+            final Protos.Value.Ranges.Builder ranges = Protos.Value.Ranges.newBuilder();
+            for (Protos.Value.Range range : resource.getRanges().getRangeList()) {
+                if (range.getEnd() < used.getBegin() || range.getBegin() > used.getEnd()) {
+                    ranges.addRange(range);
+                    continue;
+                }
+                if (range.getBegin() < used.getBegin()) {
+                    ranges.addRange(Protos.Value.Range.newBuilder().setBegin(range.getBegin()).setEnd(used.getBegin() - 1));
+                }
+                if (range.getEnd() > used.getEnd()) {
+                    ranges.addRange(Protos.Value.Range.newBuilder().setBegin(used.getEnd() + 1).setEnd(range.getEnd()));
+                }
+            }
+            remaining.set(i, Protos.Resource.newBuilder(resource).setRanges(ranges).build());
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the evaluations of each offer rule, and how many offers each rule declined. Recording is lock free,
+ * so offers can be evaluated concurrently.
+ */
+public class RuleMetrics {
+    private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+
+    /**
+     * @return the current time, to be passed to {@link #record(String, long, boolean)} once the rule has run
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a rule evaluation that began at {@code startNanos}.
+     */
+    public void record(String rule, long startNanos, boolean declined) {
+        rules.computeIfAbsent(rule, name -> new Rule()).record(System.nanoTime() - startNanos, declined);
+    }
+
+    /**
+     * @return the statistics of each rule, by decline reason
+     */
+    public Map<String, RuleSnapshot> getRules() {
+        final Map<String, RuleSnapshot> result = new TreeMap<>();
+        rules.forEach((name, rule) -> result.put(name, rule.snapshot()));
+        return result;
+    }
+
+    /**
+     * Running totals of one rule
+     */
+    private static class Rule {
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder declines = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, boolean declined) {
+            evaluations.increment();
+            if (declined) {
+                declines.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        RuleSnapshot snapshot() {
+            final long n = evaluations.sum();
+            return new RuleSnapshot(n, declines.sum(), n == 0 ? 0 : totalNanos.sum() / n / 1000, maxNanos.get() / 1000);
+        }
+    }
+
+    /**
+     * Statistics of one rule at a point in time
+     */
+    public static class RuleSnapshot {
+        private final long evaluations;
+        private final long declines;
+        private final long meanMicros;
+        private final long maxMicros;
+
+        RuleSnapshot(long evaluations, long declines, long meanMicros, long maxMicros) {
+            this.evaluations = evaluations;
+            this.declines = declines;
+            this.meanMicros = meanMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return the number of offers the rule declined
+         */
+        public long getDeclines() {
+            return declines;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
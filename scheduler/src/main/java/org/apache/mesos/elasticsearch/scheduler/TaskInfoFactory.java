@@ -4,6 +4,7 @@ import com.google.protobuf.ByteString;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.common.Discovery;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
 import org.apache.mesos.elasticsearch.scheduler.configuration.ExecutorEnvironmentalVariables;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
@@ -12,6 +13,7 @@ import org.apache.mesos.elasticsearch.scheduler.util.Clock;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -67,37 +69,37 @@ public class TaskInfoFactory {
 
     private Protos.TaskInfo buildNativeTask(Protos.Offer offer, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
         final List<Integer> ports = getPorts(offer, configuration);
-        final List<Protos.Resource> resources = getResources(configuration, ports);
+        final List<Protos.Resource> resources = getResources(configuration, ports, offer);
         final Protos.DiscoveryInfo discovery = getDiscovery(ports, configuration);
 
-        final String hostAddress = resolveHostAddress(offer, ports);
+        final String hostAddress = resolveHostAddress(offer);
 
         LOGGER.info("Creating Elasticsearch task with resources: " + resources.toString());
 
-        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId());
+        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId(), offer.getAttributesList());
 
-        return Protos.TaskInfo.newBuilder()
+        return withLabels(configuration, offer, Protos.TaskInfo.newBuilder()
                 .setName(configuration.getTaskName())
                 .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC()))
                 .setTaskId(Protos.TaskID.newBuilder().setValue(taskId(offer, clock)))
                 .setSlaveId(offer.getSlaveId())
                 .addAllResources(resources)
                 .setDiscovery(discovery)
-                .setCommand(nativeCommand(configuration, args, elasticSearchNodeId))
+                .setCommand(nativeCommand(configuration, args, elasticSearchNodeId)))
                 .build();
     }
 
     private Protos.TaskInfo buildDockerTask(Protos.Offer offer, Configuration configuration, Clock clock, Long elasticSearchNodeId) {
         final List<Integer> ports = getPorts(offer, configuration);
-        final List<Protos.Resource> resources = getResources(configuration, ports);
+        final List<Protos.Resource> resources = getResources(configuration, ports, offer);
         final Protos.DiscoveryInfo discovery = getDiscovery(ports, configuration);
 
-        final String hostAddress = resolveHostAddress(offer, ports);
+        final String hostAddress = resolveHostAddress(offer);
 
         LOGGER.info("Creating Elasticsearch task with resources: " + resources.toString());
 
         final Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(taskId(offer, clock)).build();
-        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId());
+        final List<String> args = configuration.esArguments(clusterState, discovery, offer.getSlaveId(), offer.getAttributesList());
         Protos.ContainerInfo containerInfo = getContainer(configuration, taskId, elasticSearchNodeId, offer.getSlaveId());
 
         final String tamrEsExtraDockerParams = System.getenv("TAMR_ES_EXTRA_DOCKER_PARAMS");
@@ -124,7 +126,7 @@ public class TaskInfoFactory {
             }
         }
 
-        return Protos.TaskInfo.newBuilder()
+        return withLabels(configuration, offer, Protos.TaskInfo.newBuilder()
                 .setName(configuration.getTaskName())
                 .setData(toData(offer.getHostname(), hostAddress, clock.nowUTC()))
                 .setTaskId(taskId)
@@ -132,15 +134,26 @@ public class TaskInfoFactory {
                 .addAllResources(resources)
                 .setDiscovery(discovery)
                 .setCommand(dockerCommand(configuration, args, elasticSearchNodeId))
-                .setContainer(containerInfo)
+                .setContainer(containerInfo))
                 .build();
     }
 
-    private String resolveHostAddress(Protos.Offer offer, List<Integer> ports) {
+    /**
+     * Labels the task with the failure domains of its agent, if nodes are spread across them.
+     */
+    private Protos.TaskInfo.Builder withLabels(Configuration configuration, Protos.Offer offer, Protos.TaskInfo.Builder builder) {
+        if (configuration.getElasticsearchAwarenessAttributes().isEmpty()) {
+            return builder;
+        }
+        return builder.setLabels(FailureDomains.labels(configuration, offer));
+    }
+
+    private String resolveHostAddress(Protos.Offer offer) {
         String hostname = offer.getHostname();
         LOGGER.debug("Attempting to resolve hostname: " + hostname);
-        InetSocketAddress address = new InetSocketAddress(hostname, ports.get(0));
-        return address.getAddress().getHostAddress(); // Note this will always resolve because of the check in OfferStrategy
+        // Normally cached by the check in OfferStrategy, so this does not hit DNS again.
+        return DnsCache.getDefault().resolve(hostname).map(InetAddress::getHostAddress)
+                .orElseThrow(() -> new IllegalStateException("Unable to resolve hostname: " + hostname));
     }
 
     private List<Integer> getPorts(Protos.Offer offer, Configuration configuration) {
@@ -156,11 +169,11 @@ public class TaskInfoFactory {
         return ports;
     }
 
-    private List<Protos.Resource> getResources(Configuration configuration, List<Integer> ports) {
-        List<Protos.Resource> acceptedResources = Resources.buildFrameworkResources(configuration);
+    private List<Protos.Resource> getResources(Configuration configuration, List<Integer> ports, Protos.Offer offer) {
+        List<Protos.Resource> acceptedResources = Resources.buildFrameworkResources(configuration, offer.getResourcesList());
         if (!configuration.getMesosOfferIgnorePorts()) {
-            acceptedResources.add(Resources.singlePortRange(ports.get(0), configuration.getFrameworkRole()));
-            acceptedResources.add(Resources.singlePortRange(ports.get(1), configuration.getFrameworkRole()));
+            acceptedResources.add(Resources.allocatePort(offer.getResourcesList(), ports.get(0), configuration.getFrameworkRole()));
+            acceptedResources.add(Resources.allocatePort(offer.getResourcesList(), ports.get(1), configuration.getFrameworkRole()));
         }
         return acceptedResources;
     }
@@ -212,7 +225,7 @@ public class TaskInfoFactory {
             dockerInfo.addParameters(Protos.Parameter.newBuilder()
                     .setKey("volume")
                     .setValue(sHostPathOrExternalVolumeForData));
-        } else {
+        } else if (!configuration.getFrameworkPersistentVolumes()) { // Otherwise the data goes to a persistent volume in the sandbox.
             if (!configuration.getDataDir().isEmpty()) {
                 builder.addVolumes(Protos.Volume.newBuilder()
                         .setHostPath(configuration.taskSpecificHostDir(slaveID))
@@ -303,7 +316,13 @@ public class TaskInfoFactory {
 
     private String taskId(Protos.Offer offer, Clock clock) {
         String date = new SimpleDateFormat(TASK_DATE_FORMAT).format(clock.now());
-        return String.format("elasticsearch_%s_%s", offer.getHostname(), date);
+        final String taskId = String.format("elasticsearch_%s_%s", offer.getHostname(), date);
+        // Tasks planned on the same host within a millisecond would otherwise share an ID.
+        String uniqueId = taskId;
+        for (int i = 1; clusterState.exists(Protos.TaskID.newBuilder().setValue(uniqueId).build()); i++) {
+            uniqueId = taskId + "_" + i;
+        }
+        return uniqueId;
     }
 
     public static Task parse(Protos.TaskInfo taskInfo, Protos.TaskStatus taskStatus, Clock clock) {
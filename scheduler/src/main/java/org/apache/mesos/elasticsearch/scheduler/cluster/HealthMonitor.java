@@ -0,0 +1,213 @@
+package org.apache.mesos.elasticsearch.scheduler.cluster;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.elasticsearch.common.util.NetworkUtils;
+import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the HTTP port of every Elasticsearch node in the background and keeps the latest result per task. Offer rules,
+ * the search proxy and the GUI read the result instead of calling the nodes themselves, so they never wait on
+ * Elasticsearch.
+ *
+ * Each round is scheduled after the previous one with a random jitter of up to a fifth of the interval, so that
+ * several schedulers do not poll in lockstep.
+ */
+public class HealthMonitor implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(HealthMonitor.class);
+    private final ClusterState clusterState;
+    private final Probe probe;
+    private final ScheduledExecutorService executor;
+    private final long intervalMs;
+    private final int timeoutMs;
+    private final boolean useIpAddress;
+    private final Random random = new Random();
+    private final Map<String, NodeHealth> health = new ConcurrentHashMap<>();
+
+    public HealthMonitor(ClusterState clusterState, boolean useIpAddress, ScheduledExecutorService executor, long intervalMs, int timeoutMs) {
+        this(clusterState, useIpAddress, executor, intervalMs, timeoutMs, HealthMonitor::httpStatus);
+    }
+
+    HealthMonitor(ClusterState clusterState, boolean useIpAddress, ScheduledExecutorService executor, long intervalMs, int timeoutMs, Probe probe) {
+        this.clusterState = clusterState;
+        this.useIpAddress = useIpAddress;
+        this.executor = executor;
+        this.intervalMs = intervalMs;
+        this.timeoutMs = timeoutMs;
+        this.probe = probe;
+    }
+
+    /**
+     * Starts polling in the background.
+     */
+    public void start() {
+        executor.schedule(this, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            poll();
+        } catch (Exception ex) { // Catch all, or the next round would never be scheduled.
+            LOGGER.warn("Unable to check Elasticsearch node health. Retrying on the next round.", ex);
+        } finally {
+            executor.schedule(this, intervalMs + (long) (random.nextDouble() * intervalMs / 5), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checks every known node once and forgets nodes whose task has gone.
+     */
+    public void poll() {
+        final Map<String, Task> tasks = clusterState.getGuiTaskList();
+        health.keySet().retainAll(tasks.keySet());
+        tasks.forEach((taskId, task) -> health.put(taskId, check(task, health.get(taskId))));
+    }
+
+    /**
+     * @return the latest result of the task, if it has been checked yet
+     */
+    public Optional<NodeHealth> getHealth(String taskId) {
+        return Optional.ofNullable(health.get(taskId));
+    }
+
+    /**
+     * @return the latest result of every checked task, by task ID
+     */
+    public Map<String, NodeHealth> getHealth() {
+        return Collections.unmodifiableMap(new HashMap<>(health));
+    }
+
+    /**
+     * @return true if the node answered the last check. False if it did not, or has not been checked yet.
+     */
+    public boolean isHealthy(String taskId) {
+        return getHealth(taskId).map(NodeHealth::isHealthy).orElse(false);
+    }
+
+    /**
+     * Like {@link #isHealthy(String)}, but checks the node at once if it has not been checked yet, e.g. right after the
+     * scheduler started or failed over. Blocks for at most the check timeout, and only until the first result exists.
+     */
+    public boolean isHealthyOrCheck(String taskId) {
+        final NodeHealth latest = health.get(taskId);
+        if (latest != null) {
+            return latest.isHealthy();
+        }
+        final Task task = clusterState.getGuiTaskList().get(taskId);
+        if (task == null) {
+            return false;
+        }
+        final NodeHealth checked = check(task, null);
+        health.putIfAbsent(taskId, checked);
+        return checked.isHealthy();
+    }
+
+    private NodeHealth check(Task task, NodeHealth previous) {
+        final long start = System.nanoTime();
+        final int failures = previous == null ? 0 : previous.getConsecutiveFailures();
+        final InetSocketAddress address = task.getClientAddress();
+        try {
+            if (address == null || address.isUnresolved()) {
+                throw new IOException("Address of task " + task.getTaskId() + " is unresolved");
+            }
+            final int status = probe.get(NetworkUtils.addressToString(address, useIpAddress), timeoutMs);
+            // If the quorum requirement is set higher than the number of nodes running, we will get back a 503.
+            final boolean healthy = status == 200 || status == 503;
+            return new NodeHealth(healthy, status, System.currentTimeMillis(), elapsedMs(start), healthy ? 0 : failures + 1, null);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Elasticsearch node of task " + task.getTaskId() + " did not respond", e);
+            return new NodeHealth(false, 0, System.currentTimeMillis(), elapsedMs(start), failures + 1, e.getMessage());
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static int httpStatus(String url, int timeoutMs) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Requests a URL and returns the HTTP status
+     */
+    @FunctionalInterface
+    interface Probe {
+        int get(String url, int timeoutMs) throws IOException;
+    }
+
+    /**
+     * Result of the latest check of one node
+     */
+    public static class NodeHealth {
+        private final boolean healthy;
+        private final int httpStatus;
+        private final long checkedAt;
+        private final long latencyMs;
+        private final int consecutiveFailures;
+        private final String error;
+
+        NodeHealth(boolean healthy, int httpStatus, long checkedAt, long latencyMs, int consecutiveFailures, String error) {
+            this.healthy = healthy;
+            this.httpStatus = httpStatus;
+            this.checkedAt = checkedAt;
+            this.latencyMs = latencyMs;
+            this.consecutiveFailures = consecutiveFailures;
+            this.error = error;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return the HTTP status, or 0 if there was no response
+         */
+        public int getHttpStatus() {
+            return httpStatus;
+        }
+
+        /**
+         * @return when the check finished, in ms since the epoch
+         */
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return why the node did not respond, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -4,7 +4,10 @@ import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.scheduler.Configuration;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
+import org.apache.mesos.elasticsearch.scheduler.RuleMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -77,15 +80,30 @@ public class ClusterController {
         return response;
     }
 
+    @RequestMapping(value = "/offerRules", method = RequestMethod.GET)
+    public Map<String, RuleMetrics.RuleSnapshot> offerRules() {
+        return scheduler.getOfferRuleMetrics();
+    }
+
     @RequestMapping(value = "/elasticsearchNodes", method = RequestMethod.GET)
     @ResponseBody public ElasticsearchNodesWrapper getElasticsearchNodes() {
         return new ElasticsearchNodesWrapper(scheduler.getTasks().size()); // This method should represent the current state, not the setting in the config.
     }
 
+    /**
+     * Resizes the cluster. Refused with 503 by a scheduler that is not leading, e.g. a standby, so that the request is
+     * retried against the leader.
+     */
     @RequestMapping(value = "/elasticsearchNodes", method = RequestMethod.PUT)
-    public void putElasticsearchNodes(@RequestBody ElasticsearchNodesWrapper elasticsearchNodes) {
+    public ResponseEntity<Void> putElasticsearchNodes(@RequestBody ElasticsearchNodesWrapper elasticsearchNodes) {
+        if (!scheduler.isLeading()) {
+            LOGGER.warn("Not the leading scheduler. Refusing to resize the cluster to " + elasticsearchNodes.getValue() + " nodes.");
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
         configuration.setElasticsearchNodes(elasticsearchNodes.getValue());
         scheduler.reapTasks();
+        scheduler.clusterSizeChanged();
+        return new ResponseEntity<>(HttpStatus.OK);
     }
 
     /**
@@ -0,0 +1,38 @@
+package org.apache.mesos.elasticsearch.scheduler.controllers;
+
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Exposes how well the scheduler's DNS cache answers lookups
+ */
+@RestController
+@RequestMapping("/v1/dns")
+public class DnsController {
+
+    @Autowired
+    DnsCache dnsCache;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public DnsMetricsResponse metrics() {
+        DnsMetricsResponse response = new DnsMetricsResponse();
+        response.hits = dnsCache.getHits();
+        response.misses = dnsCache.getMisses();
+        response.refreshes = dnsCache.getRefreshes();
+        response.failures = dnsCache.getFailures();
+        return response;
+    }
+
+    /**
+     * Lookup counts since the scheduler started
+     */
+    public static class DnsMetricsResponse {
+        public long hits;
+        public long misses;
+        public long refreshes;
+        public long failures;
+    }
+}
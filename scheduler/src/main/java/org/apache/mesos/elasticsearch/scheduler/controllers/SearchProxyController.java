@@ -7,6 +7,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
 import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.MediaType;
@@ -20,8 +21,11 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URLEncoder;
 import java.util.Collection;
+import java.util.List;
 import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toList;
+
 /**
  *
  */
@@ -34,9 +38,12 @@ public class SearchProxyController {
     @Autowired
     HttpClient httpClient;
 
+    @Autowired
+    HealthMonitor healthMonitor;
+
     @RequestMapping("/_cluster/stats")
     public ResponseEntity<InputStreamResource> stats() throws IOException {
-        Collection<Task> tasks = scheduler.getTasks().values();
+        Collection<Task> tasks = healthyTasks();
         Stream<HttpHost> httpHostStream = tasks.stream().map(task -> toHttpHost(task.getClientAddress()));
         HttpHost httpHost = httpHostStream.skip(RandomUtils.nextInt(0, tasks.size())).findAny().get();
 
@@ -53,13 +60,13 @@ public class SearchProxyController {
     @RequestMapping("/_search")
     public ResponseEntity<InputStreamResource> search(@RequestParam("q") String query, @RequestHeader(value = "X-ElasticSearch-Host", required = false) String elasticSearchHost) throws IOException {
         HttpHost httpHost = null;
-        Collection<Task> tasks = scheduler.getTasks().values();
-        Stream<HttpHost> httpHostStream = tasks.stream().map(task -> new HttpHost(task.getHostname(), task.getClientAddress().getPort()));
 
         if (elasticSearchHost != null) {
-            httpHost = httpHostStream.filter(host -> host.toHostString().equalsIgnoreCase(elasticSearchHost)).findAny().get();
+            httpHost = scheduler.getTasks().values().stream().map(SearchProxyController::toSearchHost)
+                    .filter(host -> host.toHostString().equalsIgnoreCase(elasticSearchHost)).findAny().get();
         } else {
-            httpHost = httpHostStream.skip(RandomUtils.nextInt(0, tasks.size())).findAny().get();
+            Collection<Task> tasks = healthyTasks();
+            httpHost = tasks.stream().map(SearchProxyController::toSearchHost).skip(RandomUtils.nextInt(0, tasks.size())).findAny().get();
         }
 
         HttpResponse esSearchResponse = httpClient.execute(httpHost, new HttpGet("/_search?q=" + URLEncoder.encode(query, "UTF-8")));
@@ -73,6 +80,20 @@ public class SearchProxyController {
                 .body(inputStreamResource);
     }
 
+    /**
+     * @return the tasks whose node answered the last health check, or all tasks if none did, e.g. right after a
+     * failover when no node has been checked yet.
+     */
+    private Collection<Task> healthyTasks() {
+        Collection<Task> tasks = scheduler.getTasks().values();
+        List<Task> healthy = tasks.stream().filter(task -> healthMonitor.isHealthy(task.getTaskId())).collect(toList());
+        return healthy.isEmpty() ? tasks : healthy;
+    }
+
+    private static HttpHost toSearchHost(Task task) {
+        return new HttpHost(task.getHostname(), task.getClientAddress().getPort());
+    }
+
     private static HttpHost toHttpHost(InetSocketAddress address) {
         return new HttpHost(address.getAddress(), address.getPort());
     }
@@ -0,0 +1,36 @@
+package org.apache.mesos.elasticsearch.scheduler.controllers;
+
+import org.apache.mesos.elasticsearch.scheduler.state.StateMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Exposes how the scheduler uses its state store
+ */
+@RestController
+@RequestMapping("/v1/state")
+public class StateController {
+
+    @Autowired
+    StateMetrics stateMetrics;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public StateMetricsResponse metrics() {
+        StateMetricsResponse response = new StateMetricsResponse();
+        response.operations = stateMetrics.getOperations();
+        response.volumes = stateMetrics.getVolumes();
+        return response;
+    }
+
+    /**
+     * Operation counts and latencies, and bytes moved per key prefix
+     */
+    public static class StateMetricsResponse {
+        public Map<String, StateMetrics.OperationSnapshot> operations;
+        public Map<String, StateMetrics.VolumeSnapshot> volumes;
+    }
+}
@@ -3,6 +3,7 @@ package org.apache.mesos.elasticsearch.scheduler.controllers;
 import org.apache.mesos.elasticsearch.scheduler.Configuration;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
 import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -33,6 +34,9 @@ public class TasksController {
     @Autowired
     FrameworkState frameworkState;
 
+    @Autowired
+    HealthMonitor healthMonitor;
+
     @RequestMapping
     public List<GetTasksResponse> getTasks() {
         if (frameworkState.isRegistered()) {
@@ -43,6 +47,7 @@ public class TasksController {
     }
 
     private GetTasksResponse from(Map.Entry<String, Task> task) {
+        final Optional<HealthMonitor.NodeHealth> health = healthMonitor.getHealth(task.getValue().getTaskId());
         return new GetTasksResponse(
             task.getValue().getTaskId(),
             task.getValue().getState().toString(),
@@ -51,7 +56,9 @@ public class TasksController {
             task.getValue().getStartedAt().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME),
             toFormattedAddress(task.getValue().getClientAddress()).orElse("UNRESOLVED"),
             toFormattedAddress(task.getValue().getTransportAddress()).orElse("UNRESOLVED"),
-            task.getValue().getHostname()
+            task.getValue().getHostname(),
+            health.map(HealthMonitor.NodeHealth::isHealthy).orElse(null),
+            health.map(HealthMonitor.NodeHealth::getCheckedAt).orElse(null)
         );
     }
 
@@ -68,8 +75,10 @@ public class TasksController {
      */
     public static class GetTasksResponse {
         public String id, state, name, version, startedAt, httpAddress, transportAddress, hostname;
+        public Boolean healthy; // Null until the node has been checked.
+        public Long healthCheckedAt;
 
-        public GetTasksResponse(String id, String state, String name, String version, String startedAt, String httpAddress, String transportAddress, String hostname) {
+        public GetTasksResponse(String id, String state, String name, String version, String startedAt, String httpAddress, String transportAddress, String hostname, Boolean healthy, Long healthCheckedAt) {
             this.id = id;
             this.state = state;
             this.name = name;
@@ -78,6 +87,8 @@ public class TasksController {
             this.httpAddress = httpAddress;
             this.transportAddress = transportAddress;
             this.hostname = hostname;
+            this.healthy = healthy;
+            this.healthCheckedAt = healthCheckedAt;
         }
     }
 }
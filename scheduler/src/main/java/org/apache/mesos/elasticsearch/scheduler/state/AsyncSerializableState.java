@@ -0,0 +1,33 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Non-blocking variant of {@link SerializableState}. Independent reads and writes can be issued together, so their
+ * latency overlaps instead of adding up. Futures complete exceptionally with an {@link IOException} where the blocking
+ * API would throw one.
+ */
+public interface AsyncSerializableState {
+    <T> CompletableFuture<T> get(String key);
+    <T> CompletableFuture<Void> set(String key, T object);
+    CompletableFuture<Void> delete(String key);
+
+    /**
+     * Waits for a future and rethrows its failure the way the blocking API would.
+     */
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
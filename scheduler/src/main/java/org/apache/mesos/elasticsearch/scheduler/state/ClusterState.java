@@ -3,6 +3,7 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.SchedulerDriver;
 import org.apache.mesos.elasticsearch.scheduler.Task;
 import org.apache.mesos.elasticsearch.scheduler.TaskInfoFactory;
 import org.apache.mesos.elasticsearch.scheduler.configuration.ExecutorEnvironmentalVariables;
@@ -12,6 +13,9 @@ import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -19,34 +23,231 @@ import static org.apache.mesos.Protos.TaskID;
 
 /**
  * Model of cluster state. User is able to add, remove and monitor task status.
+ * The task list is held in memory and is the source of truth for reads. Every mutation is written through to the
+ * {@link SerializableState} so that it survives a scheduler restart.
+ *
+ * Each TaskInfo is stored in its own zNode, {@code <frameworkId>/tasks/<taskId>}. The {@code <frameworkId>/tasks} zNode
+ * holds the ordered list of task IDs. Mesos {@code State#names()} only lists the entries directly under the state root,
+ * not the children of a nested zNode such as {@code <frameworkId>/tasks}, so the IDs are kept in the parent instead.
+ *
+ * Task status updates are written behind through a {@link StatusUpdateQueue}, and acknowledged to Mesos once written.
  */
 public class ClusterState {
     public static final Logger LOGGER = Logger.getLogger(ClusterState.class);
-    public static final String STATE_LIST = "stateList";
+    public static final String STATE_LIST = "stateList"; // Legacy: every TaskInfo in a single zNode.
+    public static final String TASKS_KEY = "tasks";
     private SerializableState zooKeeperStateDriver;
+    private final AsyncSerializableState asyncState;
     private FrameworkState frameworkState;
+    private volatile TaskIndex taskCache; // Null until loaded. Replaced, never mutated, so readers need no lock.
+    private final Map<String, ESTaskStatus> statuses = new ConcurrentHashMap<>(); // One per task, so reads hit its cache.
+    private final List<TaskInfo> staged = new ArrayList<>(); // Guarded by this. In the task list, but not yet written.
+    private final StatusUpdateQueue statusUpdates = new StatusUpdateQueue(StatusUpdateQueue.DEFAULT_CAPACITY, this::persistStatus, this::acknowledge);
 
     public ClusterState(@NotNull SerializableState zooKeeperStateDriver, @NotNull FrameworkState frameworkState) {
         if (zooKeeperStateDriver == null || frameworkState == null) {
             throw new NullPointerException();
         }
         this.zooKeeperStateDriver = zooKeeperStateDriver;
+        this.asyncState = new ExecutorAsyncSerializableState(zooKeeperStateDriver);
         this.frameworkState = frameworkState;
         frameworkState.onStatusUpdate(this::updateTask);
+        frameworkState.setClusterState(this);
     }
 
     /**
      * Get a list of all tasks with state
-     * @return a list of TaskInfo
+     * @return a copy of the in-memory list of TaskInfo
      */
     public List<TaskInfo> getTaskList() {
-        List<TaskInfo> taskInfoList = null;
+        return new ArrayList<>(tasks());
+    }
+
+    /**
+     * @return true once the task list has been loaded from the state store
+     */
+    public boolean isLoaded() {
+        return taskCache != null;
+    }
+
+    /**
+     * @return the number of tasks, without copying the task list
+     */
+    public int getTaskCount() {
+        return index().size();
+    }
+
+    /**
+     * @return the number of tasks placed on the given slave
+     */
+    public int countTasksOnSlave(Protos.SlaveID slaveId) {
+        return index().countOnSlave(slaveId);
+    }
+
+    /**
+     * Loads the task list and every task status from the state store, replacing the in-memory copy. Called during
+     * recovery and once the framework is registered, but may be called at any time to pick up changes made outside of
+     * this scheduler.
+     */
+    public synchronized void load() {
+        taskCache = null;
+        statuses.clear();
+        index();
+    }
+
+    /**
+     * Catches up with the writes of another scheduler without reloading everything, e.g. while standing by for
+     * leadership. Re-reads the list of task IDs, fetches the task and status zNodes of tasks added since, and drops
+     * removed tasks. Task zNodes never change once written, so known tasks are kept, and their statuses are re-read on
+     * next use. Loads in full if nothing has been loaded yet.
+     */
+    public synchronized void refresh() {
+        final TaskIndex current = taskCache;
+        if (current == null) {
+            index();
+            return;
+        }
+        final Map<String, Protos.TaskStatus> taskStatuses = new HashMap<>();
+        final List<TaskID> taskIds;
+        final List<TaskInfo> added;
         try {
-            taskInfoList = zooKeeperStateDriver.get(getKey());
+            taskIds = zooKeeperStateDriver.get(getTasksKey());
+            if (taskIds == null) {
+                LOGGER.debug("No task list in zookeeper. Keeping the cached one.");
+                return;
+            }
+            added = readTasks(taskIds.stream().filter(taskId -> current.get(taskId) == null).collect(Collectors.toList()), taskStatuses);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to refresh the task list. Keeping the cached one.", e);
+            return;
+        }
+        final Set<TaskID> listed = new HashSet<>(taskIds);
+        final List<TaskInfo> taskList = current.tasks().stream()
+                .filter(taskInfo -> listed.contains(taskInfo.getTaskId()) || staged.contains(taskInfo))
+                .collect(Collectors.toList());
+        taskList.addAll(added);
+        final Set<String> kept = taskList.stream().map(taskInfo -> taskInfo.getTaskId().getValue()).collect(Collectors.toSet());
+        statuses.keySet().retainAll(kept);
+        staged.forEach(taskInfo -> kept.remove(taskInfo.getTaskId().getValue())); // Not written yet, so nothing to re-read.
+        statuses.forEach((taskId, status) -> {
+            if (kept.contains(taskId)) {
+                status.forget();
+            }
+        });
+        final Set<TaskID> indexed = taskStatuses.isEmpty() ? Collections.emptySet() : new HashSet<>(readStatusIndex());
+        added.stream()
+                .filter(taskInfo -> taskStatuses.containsKey(taskInfo.getTaskId().getValue()))
+                .forEach(taskInfo -> statuses.put(taskInfo.getTaskId().getValue(), loadedStatus(taskInfo, taskStatuses.get(taskInfo.getTaskId().getValue()), indexed)));
+        taskCache = new TaskIndex(taskList);
+        LOGGER.debug("Refreshed task list: " + added.size() + " added, " + (current.size() + added.size() - taskList.size()) + " removed");
+    }
+
+    private List<TaskInfo> tasks() {
+        return index().tasks();
+    }
+
+    private TaskIndex index() {
+        TaskIndex cache = taskCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = taskCache;
+                if (cache == null) {
+                    cache = readTaskList();
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Reads the task list from the state store. The result is only cached when the read succeeded for a valid framework
+     * ID; otherwise a later write would overwrite the stored list with a partial one.
+     */
+    private TaskIndex readTaskList() {
+        final long start = System.nanoTime();
+        final boolean hasFrameworkId = !frameworkState.getFrameworkID().getValue().isEmpty();
+        final Map<String, Protos.TaskStatus> taskStatuses = new HashMap<>();
+        List<TaskInfo> taskInfoList;
+        try {
+            final List<TaskID> taskIds = zooKeeperStateDriver.get(getTasksKey());
+            taskInfoList = taskIds == null ? migrateLegacyTaskList(hasFrameworkId) : readTasks(taskIds, taskStatuses);
         } catch (IOException e) {
             LOGGER.info("Unable to get key for cluster state due to invalid frameworkID.", e);
+            return TaskIndex.EMPTY;
+        }
+        final TaskIndex result = new TaskIndex(taskInfoList);
+        if (hasFrameworkId) {
+            final Set<TaskID> indexed = taskStatuses.isEmpty() ? Collections.emptySet() : new HashSet<>(readStatusIndex()); // Read once per load.
+            taskInfoList.stream()
+                    .filter(taskInfo -> taskStatuses.containsKey(taskInfo.getTaskId().getValue()))
+                    .forEach(taskInfo -> statuses.put(taskInfo.getTaskId().getValue(), loadedStatus(taskInfo, taskStatuses.get(taskInfo.getTaskId().getValue()), indexed)));
+            LOGGER.info("Loaded " + taskInfoList.size() + " tasks and " + taskStatuses.size() + " task statuses in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            LOGGER.debug("Loaded executor state list: " + logTaskList(taskInfoList));
+            taskCache = result;
+        }
+        return result;
+    }
+
+    /**
+     * Wraps a status read during load. Tasks the {@link StatusIndex} already lists are marked as such, so that their next
+     * status write does not read-modify-write the index again. Only unlisted tasks, e.g. from an older scheduler, do.
+     */
+    private ESTaskStatus loadedStatus(TaskInfo taskInfo, Protos.TaskStatus status, Set<TaskID> indexed) {
+        final ESTaskStatus taskStatus = new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zooKeeperStateDriver), status);
+        if (indexed.contains(taskInfo.getTaskId())) {
+            taskStatus.markIndexed();
         }
-        return taskInfoList == null ? new ArrayList<>(0) : taskInfoList;
+        return taskStatus;
+    }
+
+    /**
+     * Fetches every task zNode and every task status zNode in one concurrent batch. Statuses that could not be read are
+     * left out of {@code taskStatuses} and read on first use instead.
+     */
+    private List<TaskInfo> readTasks(List<TaskID> taskIds, Map<String, Protos.TaskStatus> taskStatuses) throws IOException {
+        final List<CompletableFuture<TaskInfo>> fetches = taskIds.stream().map(taskId -> asyncState.<TaskInfo>get(getTaskKey(taskId))).collect(Collectors.toList());
+        final List<CompletableFuture<Protos.TaskStatus>> statusFetches = taskIds.stream().map(taskId -> asyncState.<Protos.TaskStatus>get(ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskId))).collect(Collectors.toList());
+        final List<TaskInfo> taskInfoList = new ArrayList<>(taskIds.size());
+        for (int i = 0; i < taskIds.size(); i++) {
+            final TaskInfo taskInfo = AsyncSerializableState.await(fetches.get(i));
+            if (taskInfo == null) {
+                LOGGER.warn("Task " + taskIds.get(i).getValue() + " is listed but has no TaskInfo in zookeeper. Ignoring.");
+            } else {
+                taskInfoList.add(taskInfo);
+            }
+        }
+        for (int i = 0; i < taskIds.size(); i++) {
+            try {
+                final Protos.TaskStatus status = AsyncSerializableState.await(statusFetches.get(i));
+                if (status != null) {
+                    taskStatuses.put(taskIds.get(i).getValue(), status);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read status of task " + taskIds.get(i).getValue() + ". It will be read on first use.", e);
+            }
+        }
+        return taskInfoList;
+    }
+
+    /**
+     * Moves tasks from the legacy single {@link #STATE_LIST} zNode to one zNode per task. The legacy zNode is only
+     * deleted once every task and the index have been written, so a failed migration is retried on the next load.
+     */
+    private List<TaskInfo> migrateLegacyTaskList(boolean hasFrameworkId) throws IOException {
+        final List<TaskInfo> legacy = zooKeeperStateDriver.get(getLegacyKey());
+        if (legacy == null) {
+            return new ArrayList<>(0);
+        }
+        final List<TaskInfo> taskInfoList = new ArrayList<>(legacy);
+        if (hasFrameworkId) {
+            LOGGER.info("Migrating " + taskInfoList.size() + " tasks from " + getLegacyKey() + " to " + getTasksKey());
+            for (TaskInfo taskInfo : taskInfoList) {
+                writeTask(taskInfo);
+            }
+            writeIndex(taskInfoList);
+            zooKeeperStateDriver.delete(getLegacyKey());
+        }
+        return taskInfoList;
     }
 
     /**
@@ -60,7 +261,7 @@ public class ClusterState {
     }
 
     private List<Integer> getElasticNodeIdList() {
-        return getTaskList().stream()
+        return tasks().stream()
                 .filter(this::containsElasticNodeId)
                 .map(this::getElasticNodeId)
                 .map(Integer::parseInt)
@@ -81,7 +282,10 @@ public class ClusterState {
      */
     public Map<String, Task> getGuiTaskList() {
         Map<String, Task> tasks = new HashMap<>();
-        getTaskList().forEach(taskInfo -> tasks.put(taskInfo.getTaskId().getValue(), TaskInfoFactory.parse(taskInfo, getStatus(taskInfo.getTaskId()).getStatus(), new Clock())));
+        tasks().forEach(taskInfo -> {
+            final Protos.TaskStatus status = statusUpdates.peek(taskInfo.getTaskId()).orElseGet(() -> getStatus(taskInfo).getStatus());
+            tasks.put(taskInfo.getTaskId().getValue(), TaskInfoFactory.parse(taskInfo, status, new Clock()));
+        });
         return tasks;
     }
 
@@ -96,40 +300,146 @@ public class ClusterState {
     }
 
     private ESTaskStatus getStatus(TaskInfo taskInfo) {
-        return new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zooKeeperStateDriver));
+        return statuses.computeIfAbsent(taskInfo.getTaskId().getValue(), taskId -> new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zooKeeperStateDriver)));
     }
 
-    public void addTask(ESTaskStatus esTask) {
+    public synchronized void addTask(ESTaskStatus esTask) {
         addTask(esTask.getTaskInfo());
+        statuses.put(esTask.getTaskInfo().getTaskId().getValue(), esTask);
     }
 
-    public void addTask(TaskInfo taskInfo) {
+    public synchronized void addTask(TaskInfo taskInfo) {
         LOGGER.debug("Adding TaskInfo to cluster for task: " + taskInfo.getTaskId().getValue());
         if (exists(taskInfo.getTaskId())) {
             removeTask(taskInfo);
         }
         List<TaskInfo> taskList = getTaskList();
         taskList.add(taskInfo);
+        try {
+            writeTask(taskInfo); // Written before the index, so the index never lists a task that has not been stored.
+        } catch (IOException ex) {
+            LOGGER.error("Could not write executor state to zookeeper: ", ex);
+        }
         setTaskInfoList(taskList);
     }
 
-    public void removeTask(TaskInfo taskInfo) throws InvalidParameterException {
+    /**
+     * Adds a task to the in-memory task list with a STAGING status, without writing anything. Offers evaluated later in
+     * the same batch then see the task, e.g. when counting tasks or picking an elasticsearch node id. Staged tasks are
+     * written by {@link #commitStagedTasks()}, or dropped by {@link #discardStagedTasks()}.
+     * @throws IllegalArgumentException if a task with the same ID exists
+     */
+    public synchronized void stageTask(TaskInfo taskInfo) throws IllegalArgumentException {
+        if (exists(taskInfo.getTaskId())) {
+            throw new IllegalArgumentException("Task already exists: " + taskInfo.getTaskId().getValue());
+        }
+        LOGGER.debug("Staging TaskInfo for task: " + taskInfo.getTaskId().getValue());
+        final List<TaskInfo> taskList = getTaskList();
+        taskList.add(taskInfo);
+        taskCache = new TaskIndex(taskList);
+        statuses.put(taskInfo.getTaskId().getValue(), new ESTaskStatus(zooKeeperStateDriver, frameworkState.getFrameworkID(), taskInfo, new StatePath(zooKeeperStateDriver), ESTaskStatus.defaultStatus(taskInfo)));
+        staged.add(taskInfo);
+    }
+
+    /**
+     * Writes every staged task that has not been removed since, in one batch: the status index once, then all task and
+     * status zNodes concurrently, then the task index once. The task index goes last, so it never lists a task that
+     * has not been stored.
+     * @return the statuses of the written tasks
+     */
+    public synchronized List<ESTaskStatus> commitStagedTasks() {
+        final List<TaskInfo> committed = staged.stream().filter(taskInfo -> exists(taskInfo.getTaskId())).collect(Collectors.toList());
+        staged.clear();
+        if (committed.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final long start = System.nanoTime();
+        final List<ESTaskStatus> result = committed.stream().map(this::getStatus).collect(Collectors.toList());
+        final Protos.FrameworkID frameworkID = frameworkState.getFrameworkID();
+        try {
+            new StatusIndex(zooKeeperStateDriver, frameworkID).addAll(committed.stream().map(TaskInfo::getTaskId).collect(Collectors.toList()));
+            result.forEach(ESTaskStatus::markIndexed);
+            new StatePath(zooKeeperStateDriver).mkdir(getTasksKey()); // Parent of the task zNodes. The status index created theirs.
+        } catch (IOException ex) {
+            LOGGER.error("Could not prepare zookeeper for new tasks: ", ex);
+        }
+        final List<CompletableFuture<Void>> writes = new ArrayList<>(committed.size() * 2);
+        for (ESTaskStatus status : result) {
+            final TaskID taskId = status.getTaskInfo().getTaskId();
+            writes.add(asyncState.set(getTaskKey(taskId), status.getTaskInfo()));
+            writes.add(asyncState.set(ESTaskStatus.getKey(frameworkID, taskId), status.getStatus()));
+        }
+        for (CompletableFuture<Void> write : writes) {
+            try {
+                AsyncSerializableState.await(write);
+            } catch (IOException ex) {
+                LOGGER.error("Could not write executor state to zookeeper: ", ex);
+            }
+        }
+        setTaskInfoList(getTaskList());
+        LOGGER.debug("Wrote " + committed.size() + " new tasks in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * Drops every staged task from the in-memory task list, e.g. because it could not be launched.
+     */
+    public synchronized void discardStagedTasks() {
+        if (staged.isEmpty()) {
+            return;
+        }
+        final List<TaskInfo> taskList = getTaskList();
+        taskList.removeAll(staged);
+        staged.forEach(taskInfo -> statuses.remove(taskInfo.getTaskId().getValue()));
+        staged.clear();
+        taskCache = new TaskIndex(taskList);
+    }
+
+    public synchronized void removeTask(TaskInfo taskInfo) throws InvalidParameterException {
         List<TaskInfo> taskList = getTaskList();
         LOGGER.debug("Removing TaskInfo from cluster for task: " + taskInfo.getTaskId().getValue());
         if (!taskList.remove(taskInfo)) {
             throw new InvalidParameterException("TaskInfo does not exist in list: " + taskInfo.getTaskId().getValue());
         }
-        getStatus(taskInfo).destroy(); // Destroy task status in ZK.
+        statuses.remove(taskInfo.getTaskId().getValue());
+        staged.remove(taskInfo);
+        taskCache = new TaskIndex(taskList); // Before the deletes, so a status written meanwhile sees the task is gone.
+        final CompletableFuture<Void> statusDelete = asyncState.delete(ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskInfo.getTaskId()));
+        final CompletableFuture<Void> taskDelete = asyncState.delete(getTaskKey(taskInfo.getTaskId()));
         setTaskInfoList(taskList); // Remove from cluster state list
+        boolean statusDeleted = true;
+        try {
+            AsyncSerializableState.await(statusDelete); // Destroy task status in ZK.
+        } catch (InvalidParameterException e) {
+            LOGGER.debug("Task status was already gone from ZK.", e);
+        } catch (IOException e) {
+            LOGGER.error("Could not destroy Task in ZK.", e);
+            statusDeleted = false;
+        }
+        if (statusDeleted) {
+            unlistStatus(taskInfo.getTaskId());
+        }
+        try {
+            AsyncSerializableState.await(taskDelete);
+        } catch (IOException | InvalidParameterException ex) {
+            LOGGER.error("Could not delete executor state from zookeeper: ", ex);
+        }
     }
 
-    public Boolean exists(TaskID taskId) {
+    /**
+     * Removes the task from the {@link StatusIndex} once its status zNode has gone. If this fails, the task stays listed
+     * and {@link StatusCompactor} unlists it later.
+     */
+    private void unlistStatus(TaskID taskId) {
         try {
-            getTask(taskId);
-        } catch (IllegalArgumentException e) {
-            return false;
+            new StatusIndex(zooKeeperStateDriver, frameworkState.getFrameworkID()).removeAll(Collections.singletonList(taskId));
+        } catch (IOException e) {
+            LOGGER.warn("Could not remove task " + taskId.getValue() + " from the status index. It will be compacted later.", e);
         }
-        return true;
+    }
+
+    public Boolean exists(TaskID taskId) {
+        return index().get(taskId) != null;
     }
 
     /**
@@ -139,14 +449,7 @@ public class ClusterState {
      * @throws IllegalArgumentException when the taskId does not exist in the Task list.
      */
     public TaskInfo getTask(TaskID taskID) throws IllegalArgumentException {
-        List<TaskInfo> taskInfoList = getTaskList();
-        TaskInfo taskInfo = null;
-        for (TaskInfo info : taskInfoList) {
-            if (info.getTaskId().getValue().equals(taskID.getValue())) {
-                taskInfo = info;
-                break;
-            }
-        }
+        final TaskInfo taskInfo = index().get(taskID);
         if (taskInfo == null) {
             throw new IllegalArgumentException("Could not find executor with that task ID: " + taskID.getValue());
         }
@@ -157,14 +460,7 @@ public class ClusterState {
         if (executorID.getValue().isEmpty()) {
             throw new IllegalArgumentException("ExecutorID.value() is blank. Cannot be blank.");
         }
-        List<TaskInfo> taskInfoList = getTaskList();
-        TaskInfo taskInfo = null;
-        for (TaskInfo info : taskInfoList) {
-            if (info.getExecutor().getExecutorId().getValue().equals(executorID.getValue())) {
-                taskInfo = info;
-                break;
-            }
-        }
+        final TaskInfo taskInfo = index().get(executorID);
         if (taskInfo == null) {
             throw new IllegalArgumentException("Could not find executor with that executor ID: " + executorID.getValue());
         }
@@ -185,40 +481,120 @@ public class ClusterState {
     /**
      * Deletes all tasks and state.
      */
-    public void destroy() {
+    public synchronized void destroy() {
+        final List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        final Set<TaskID> statusIds = new HashSet<>(readStatusIndex()); // Also catches statuses orphaned by earlier failures.
+        for (TaskInfo taskInfo : tasks()) {
+            statusUpdates.discard(taskInfo.getTaskId());
+            statusIds.add(taskInfo.getTaskId());
+            deletes.add(asyncState.delete(getTaskKey(taskInfo.getTaskId())));
+        }
+        statusIds.forEach(taskId -> deletes.add(asyncState.delete(ESTaskStatus.getKey(frameworkState.getFrameworkID(), taskId))));
+        taskCache = TaskIndex.EMPTY;
+        statuses.clear();
+        for (CompletableFuture<Void> delete : deletes) {
+            try {
+                AsyncSerializableState.await(delete);
+            } catch (InvalidParameterException e) {
+                LOGGER.debug("Task state was already deleted", e);
+            } catch (IOException e) {
+                LOGGER.error("Unable to delete task state from ZooKeeper", e);
+            }
+        }
         try {
-            getTaskList().stream().forEach(taskInfo -> getStatus(taskInfo).destroy());
             // Todo (pnw): Refactor. This shouldn't be mopping up the ESTaskStatus stuff
-            zooKeeperStateDriver.delete(getKey());
+            zooKeeperStateDriver.delete(getTasksKey());
             zooKeeperStateDriver.delete(frameworkState.getFrameworkID().getValue() + "/" + ESTaskStatus.STATE_KEY);
             zooKeeperStateDriver.delete(frameworkState.getFrameworkID().getValue());
-        } catch (IOException e) {
+        } catch (IOException | InvalidParameterException e) {
             LOGGER.error("Unable to delete state from ZooKeeper", e);
         }
     }
 
+    private List<TaskID> readStatusIndex() {
+        try {
+            return new StatusIndex(zooKeeperStateDriver, frameworkState.getFrameworkID()).read();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read task status index. Treating it as empty.", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Blocks until every queued status update has been written to zookeeper.
+     */
+    public void flushStatusUpdates() throws InterruptedException {
+        statusUpdates.flush();
+    }
+
     /**
-     * Updates a task with the given status. Status is written to zookeeper.
+     * Writes every queued status update, then stops the writer. Call before the driver stops, so the written updates
+     * can still be acknowledged.
+     */
+    public void closeStatusUpdates() throws InterruptedException {
+        statusUpdates.flush();
+        statusUpdates.shutdown();
+    }
+
+    /**
+     * Updates a task with the given status. Status is queued and written to zookeeper in the background, where it is
+     * coalesced with any later status of the same task.
      * If the task is in error, then the healthchecks are stopped and state is removed from ZK
      * @param status A received task status
      */
     private void updateTask(Protos.TaskStatus status) {
         if (!exists(status.getTaskId())) {
             LOGGER.warn("Could not find task in cluster state.");
+            acknowledge(status);
             return;
         }
 
-        try {
-            Protos.TaskInfo taskInfo = getTask(status.getTaskId());
-            LOGGER.debug("Updating task status for executor: " + status.getExecutorId().getValue() + " [" + status.getTaskId().getValue() + ", " + status.getTimestamp() + ", " + status.getState() + "]");
-            update(status); // Update state of Executor
+        LOGGER.debug("Updating task status for executor: " + status.getExecutorId().getValue() + " [" + status.getTaskId().getValue() + ", " + status.getTimestamp() + ", " + status.getState() + "]");
+        if (ESTaskStatus.errorState(status.getState())) {
+            LOGGER.error("Task in error state. Removing state for executor: " + status.getExecutorId().getValue() + ", due to: " + status.getState());
+            final List<Protos.TaskStatus> superseded = statusUpdates.discard(status.getTaskId());
+            try {
+                removeTask(getTask(status.getTaskId())); // Remove task from cluster state.
+            } catch (IllegalArgumentException e) { // Also covers InvalidParameterException from removeTask.
+                LOGGER.debug("Task was removed concurrently: " + status.getTaskId().getValue(), e);
+            }
+            superseded.forEach(this::acknowledge);
+            acknowledge(status);
+            return;
+        }
+
+        statusUpdates.offer(status); // Dropped unacknowledged if the queue is full, so Mesos resends it.
+    }
 
-            if (taskInError(status)) {
-                LOGGER.error("Task in error state. Removing state for executor: " + status.getExecutorId().getValue() + ", due to: " + status.getState());
-                removeTask(taskInfo); // Remove task from cluster state.
+    /**
+     * Writes a status taken from the queue. Statuses of tasks removed in the meantime are dropped. The write happens
+     * outside the lock, so that tasks can be added, staged and removed while it waits on zookeeper.
+     */
+    private void persistStatus(Protos.TaskStatus status) {
+        final TaskInfo taskInfo;
+        synchronized (this) {
+            taskInfo = index().get(status.getTaskId());
+        }
+        if (taskInfo == null) {
+            LOGGER.debug("Dropping status of removed task: " + status.getTaskId().getValue());
+            return;
+        }
+        final ESTaskStatus taskStatus = getStatus(taskInfo);
+        taskStatus.setStatus(status);
+        if (!exists(status.getTaskId())) {
+            // Removed while the status was written, maybe after its status zNode was deleted. Delete it again.
+            try {
+                taskStatus.destroy();
+            } catch (InvalidParameterException e) {
+                LOGGER.debug("Status of removed task was already deleted: " + status.getTaskId().getValue(), e);
             }
-        } catch (IllegalStateException | IllegalArgumentException e) {
-            LOGGER.error("Unable to write executor state to zookeeper", e);
+        }
+    }
+
+    private void acknowledge(Protos.TaskStatus status) {
+        final SchedulerDriver driver = frameworkState.getDriver();
+        if (driver != null && status.hasUuid()) {
+            driver.acknowledgeStatusUpdate(status);
         }
     }
 
@@ -230,17 +606,47 @@ public class ClusterState {
         return Arrays.toString(res.toArray());
     }
 
+    /**
+     * Replaces the in-memory task list and writes the task ID index through to the state store. The in-memory list is
+     * updated even if the write fails, because it reflects the tasks that have actually been launched.
+     */
     private void setTaskInfoList(List<TaskInfo> taskInfoList) {
         LOGGER.debug("Writing executor state list: " + logTaskList(taskInfoList));
+        taskCache = new TaskIndex(taskInfoList);
         try {
-            new StatePath(zooKeeperStateDriver).mkdir(getKey());
-            zooKeeperStateDriver.set(getKey(), taskInfoList);
+            writeIndex(taskInfoList);
         } catch (IOException ex) {
             LOGGER.error("Could not write list of executor states to zookeeper: ", ex);
         }
     }
 
-    private String getKey() {
+    private void writeTask(TaskInfo taskInfo) throws IOException {
+        final String key = getTaskKey(taskInfo.getTaskId());
+        new StatePath(zooKeeperStateDriver).mkdir(key);
+        zooKeeperStateDriver.set(key, taskInfo);
+    }
+
+    /**
+     * Rewrites the whole list of task IDs, so each add or remove costs O(n) in the number of tasks. Kept because
+     * {@link SerializableState} cannot list the task zNodes (see above). The list only holds task IDs, not TaskInfos,
+     * and a task is added or removed a few times per node lifetime, so it stays small and cheap next to the per-task
+     * writes.
+     */
+    private void writeIndex(List<TaskInfo> taskInfoList) throws IOException {
+        final ArrayList<TaskID> taskIds = taskInfoList.stream().map(TaskInfo::getTaskId).collect(Collectors.toCollection(ArrayList::new));
+        new StatePath(zooKeeperStateDriver).mkdir(getTasksKey());
+        zooKeeperStateDriver.set(getTasksKey(), taskIds);
+    }
+
+    private String getTasksKey() {
+        return frameworkState.getFrameworkID().getValue() + "/" + TASKS_KEY;
+    }
+
+    private String getTaskKey(TaskID taskId) {
+        return getTasksKey() + "/" + taskId.getValue();
+    }
+
+    private String getLegacyKey() {
         return frameworkState.getFrameworkID().getValue() + "/" + STATE_LIST;
     }
 }
@@ -2,6 +2,7 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 
 import org.apache.log4j.Logger;
 import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
 import org.apache.mesos.Protos.TaskInfo;
 import org.apache.mesos.Protos.TaskState;
 import org.apache.mesos.Protos.TaskStatus;
@@ -12,6 +13,9 @@ import java.security.InvalidParameterException;
 /**
  * Status of task. This is necessary because the raw TaskInfo packet doesn't contain the frameworkID or a link to
  * the respective TaskStatus packet.
+ *
+ * The latest status is cached, so only the first read goes to zookeeper. {@link ClusterState} replaces these objects
+ * when it reloads, so a reload never serves a stale status.
  */
 public class ESTaskStatus {
     // Todo (pnw): Refactor: This is part of the cluster state, but is often accessed without cluster state.
@@ -24,7 +28,24 @@ public class ESTaskStatus {
     private final TaskInfo taskInfo;
 
     private final StatePath statePath;
+    private volatile TaskStatus cachedStatus; // Null until read or written.
+    private boolean indexed; // Guarded by this. True once the task is known to be in the StatusIndex.
+
     public ESTaskStatus(SerializableState state, FrameworkID frameworkID, TaskInfo taskInfo, StatePath statePath) {
+        this(state, frameworkID, taskInfo, statePath, null);
+        // Write default status if it doesn't exist
+        try {
+            LOGGER.debug("Task status for " + taskInfo.getTaskId().getValue() + " exists, using old state: " + getStatus().getState());
+        } catch (IllegalStateException | NullPointerException e) {
+            LOGGER.debug("Task status for " + taskInfo.getTaskId().getValue() + " does not exist, or is not yet initialized, this must be a new task. Writing status.");
+            setStatus(getDefaultStatus());
+        }
+    }
+
+    /**
+     * Creates a task status from a status that has already been read, e.g. during recovery. Does not touch zookeeper.
+     */
+    ESTaskStatus(SerializableState state, FrameworkID frameworkID, TaskInfo taskInfo, StatePath statePath, TaskStatus status) {
         if (state == null || taskInfo == null) {
             throw new InvalidParameterException("Cannot be null");
         } else if (frameworkID == null || frameworkID.getValue().isEmpty()) {
@@ -34,34 +55,65 @@ public class ESTaskStatus {
         this.frameworkID = frameworkID;
         this.taskInfo = taskInfo;
         this.statePath = statePath;
-        // Write default status if it doesn't exist
-        try {
-            LOGGER.debug("Task status for " + taskInfo.getTaskId().getValue() + " exists, using old state: " + getStatus().getState());
-        } catch (IllegalStateException | NullPointerException e) {
-            LOGGER.debug("Task status for " + taskInfo.getTaskId().getValue() + " does not exist, or is not yet initialized, this must be a new task. Writing status.");
-            setStatus(getDefaultStatus());
-        }
+        this.cachedStatus = status;
     }
 
-    public void setStatus(TaskStatus status) throws IllegalStateException {
+    public synchronized void setStatus(TaskStatus status) throws IllegalStateException {
         try {
             LOGGER.debug("Writing task status to zk: [" + status.getState() + "] " + status.getTaskId().getValue());
+            if (!indexed) {
+                new StatusIndex(state, frameworkID).add(taskInfo.getTaskId()); // Before the write, so no status zNode goes unlisted.
+                indexed = true;
+            }
             statePath.mkdir(getKey());
             state.set(getKey(), status);
         } catch (IOException e) {
+            cachedStatus = null; // The write may or may not have reached zookeeper.
             throw new IllegalStateException("Unable to write task status to zookeeper", e);
         }
+        cachedStatus = status;
     }
 
+    /**
+     * @return the cached status, read from zookeeper if there is none
+     */
     public TaskStatus getStatus() throws IllegalStateException {
-        try {
-            return state.get(getKey());
-        } catch (IOException e) {
-            throw new IllegalStateException("Unable to get task status from zookeeper", e);
+        TaskStatus status = cachedStatus;
+        if (status == null) {
+            synchronized (this) {
+                status = cachedStatus;
+                if (status == null) {
+                    try {
+                        status = state.get(getKey());
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to get task status from zookeeper", e);
+                    }
+                    cachedStatus = status;
+                }
+            }
         }
+        return status;
+    }
+
+    /**
+     * Records that the task was added to the {@link StatusIndex} by someone else, e.g. a batch of new tasks.
+     */
+    synchronized void markIndexed() {
+        indexed = true;
+    }
+
+    /**
+     * Drops the cached status, so that the next {@link #getStatus()} reads the one another scheduler may have written.
+     */
+    void forget() {
+        cachedStatus = null;
     }
 
     public TaskStatus getDefaultStatus() {
+        return defaultStatus(taskInfo);
+    }
+
+    static TaskStatus defaultStatus(TaskInfo taskInfo) {
         return TaskStatus.newBuilder()
                 .setState(TaskState.TASK_STAGING)
                     .setTaskId(taskInfo.getTaskId())
@@ -77,7 +129,8 @@ public class ESTaskStatus {
     public String toString() {
         String retVal;
         try {
-            retVal = getKey() + ": [" + getStatus().getState() + "] " +  getStatus().getMessage();
+            final TaskStatus status = getStatus();
+            retVal = getKey() + ": [" + status.getState() + "] " +  status.getMessage();
         } catch (Exception e) {
             retVal = getKey() + ": Unable to get message";
         }
@@ -85,7 +138,11 @@ public class ESTaskStatus {
     }
 
     private String getKey() {
-        return frameworkID.getValue() + "/" + STATE_KEY + "/" + taskInfo.getTaskId().getValue();
+        return getKey(frameworkID, taskInfo.getTaskId());
+    }
+
+    static String getKey(FrameworkID frameworkID, TaskID taskID) {
+        return frameworkID.getValue() + "/" + STATE_KEY + "/" + taskID.getValue();
     }
 
     public boolean taskInError() {
@@ -0,0 +1,81 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the calls of a blocking {@link SerializableState} on a small thread pool. The Mesos state API blocks on each
+ * future it returns, so this is how several zookeeper round trips are kept in flight at once.
+ */
+public class ExecutorAsyncSerializableState implements AsyncSerializableState {
+    public static final int DEFAULT_THREADS = 8;
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+    private final SerializableState state;
+    private final Executor executor;
+
+    public ExecutorAsyncSerializableState(SerializableState state) {
+        this(state, newPool(DEFAULT_THREADS));
+    }
+
+    public ExecutorAsyncSerializableState(SerializableState state, Executor executor) {
+        this.state = state;
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> get(String key) {
+        return CompletableFuture.supplyAsync(() -> call(() -> state.<T>get(key)), executor);
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> set(String key, T object) {
+        return CompletableFuture.supplyAsync(() -> call(() -> {
+            state.set(key, object);
+            return null;
+        }), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return CompletableFuture.supplyAsync(() -> call(() -> {
+            state.delete(key);
+            return null;
+        }), executor);
+    }
+
+    private static <T> T call(StateCall<T> call) {
+        try {
+            return call.call();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Idle threads time out, so a pool that is rarely used holds no threads.
+     */
+    private static Executor newPool(int threads) {
+        final int pool = POOL_COUNT.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "state-" + pool + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * A blocking state call
+     */
+    private interface StateCall<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,103 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidParameterException;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Keeps state in a local directory tree, for single node deployments that do not want zookeeper. Each segment of a
+ * key is a directory, and the value is in a {@value #VALUE_FILE} file inside it, so a key can have both a value and
+ * children, as a zNode can. Values are written to a temporary file and renamed into place, so a reader never sees a
+ * partial value.
+ */
+public class FileSerializableState implements SerializableState {
+    static final String VALUE_FILE = ".value";
+    private final Path root;
+    private final StateCodec codec;
+
+    public FileSerializableState(Path root) throws IOException {
+        this(root, new ProtobufStateCodec());
+    }
+
+    public FileSerializableState(Path root, StateCodec codec) throws IOException {
+        this.root = Files.createDirectories(root);
+        this.codec = codec;
+    }
+
+    @Override
+    public <T> T get(String key) throws IOException {
+        try {
+            return codec.decode(Files.readAllBytes(valuePath(key)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Atomic within this process only. Another process sharing the directory could still interleave.
+     */
+    @Override
+    public synchronized <T> boolean replace(String key, T expected, T update) throws IOException {
+        if (!Objects.equals(get(key), expected)) {
+            return false;
+        }
+        set(key, update);
+        return true;
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return Files.exists(valuePath(key));
+    }
+
+    @Override
+    public <T> void set(String key, T object) throws IOException {
+        final Path value = valuePath(key);
+        Files.createDirectories(value.getParent());
+        final Path temp = value.resolveSibling(VALUE_FILE + "." + UUID.randomUUID());
+        try {
+            Files.write(temp, codec.encode(object)); // Null is encoded too, like it is for the directory zNodes.
+            Files.move(temp, value, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        final Path value = valuePath(key);
+        if (!Files.exists(value)) {
+            throw new InvalidParameterException("Key does not exist:" + key);
+        }
+        Files.delete(value);
+        try {
+            Files.deleteIfExists(value.getParent());
+        } catch (DirectoryNotEmptyException e) {
+            // The key still has children.
+        }
+    }
+
+    /**
+     * Segments are URL encoded, with a leading dot escaped, so that they can neither leave the root nor clash with
+     * {@value #VALUE_FILE}.
+     */
+    private Path valuePath(String key) throws UnsupportedEncodingException {
+        Path path = root;
+        for (String segment : key.split("/")) {
+            if (!segment.isEmpty()) {
+                final String encoded = URLEncoder.encode(segment, StandardCharsets.UTF_8.name());
+                path = path.resolve(encoded.startsWith(".") ? "%2E" + encoded.substring(1) : encoded);
+            }
+        }
+        return path.resolve(VALUE_FILE);
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.mesos.SchedulerDriver;
 import java.io.IOException;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -25,6 +26,8 @@ public class FrameworkState {
     private final SerializableState zookeeperStateDriver;
     private final StatePath statePath;
     private SchedulerDriver driver;
+    private volatile Protos.FrameworkID frameworkId;
+    private ClusterState clusterState;
 
     public FrameworkState(SerializableState zookeeperStateDriver) {
         this.zookeeperStateDriver = zookeeperStateDriver;
@@ -32,9 +35,14 @@ public class FrameworkState {
     }
 
     /**
-     * Return empty if no frameworkId found.
+     * Return empty if no frameworkId found. Once recovered or registered, the ID is served from memory.
      */
     public Protos.FrameworkID getFrameworkID() {
+        final Protos.FrameworkID cached = frameworkId;
+        return cached != null ? cached : readFrameworkID();
+    }
+
+    private Protos.FrameworkID readFrameworkID() {
         Protos.FrameworkID id = null;
         try {
             id = zookeeperStateDriver.get(FRAMEWORKID_KEY);
@@ -44,6 +52,42 @@ public class FrameworkState {
         return id == null ? EMPTY_ID : id;
     }
 
+    /**
+     * Reads the stored framework ID and, if there is one, the task list and task statuses in a single batch. Run before
+     * the driver starts, so that failover and the first offer decision do not wait on zookeeper. May be run again to
+     * reload state, e.g. once a state mirror has been reconciled.
+     */
+    public synchronized void recover() {
+        final long start = System.nanoTime();
+        final Protos.FrameworkID id = registered.get() ? getFrameworkID() : readFrameworkID();
+        if (id.getValue().isEmpty()) {
+            LOGGER.info("No framework ID in zookeeper. Nothing to recover.");
+            return;
+        }
+        if (!registered.get()) {
+            frameworkId = id;
+        }
+        final ClusterState clusterState = this.clusterState != null ? this.clusterState : new ClusterState(zookeeperStateDriver, this);
+        clusterState.load();
+        LOGGER.info("Recovered framework " + id.getValue() + " with " + clusterState.getTaskCount() + " tasks in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Catches up with the scheduler that is registered, e.g. while standing by for leadership. Recovers in full if
+     * the stored framework ID appeared or changed, otherwise only refreshes the task list, see {@link ClusterState#refresh()}.
+     */
+    public synchronized void refresh() {
+        final Protos.FrameworkID id = registered.get() ? getFrameworkID() : readFrameworkID();
+        if (id.getValue().isEmpty()) {
+            return;
+        }
+        if (!id.equals(frameworkId) || clusterState == null) {
+            recover();
+        } else {
+            clusterState.refresh();
+        }
+    }
+
     public void markRegistered(Protos.FrameworkID frameworkId, SchedulerDriver driver) {
         if (!registered.compareAndSet(false, true)) {
             throw new IllegalStateException("Framework can not be marked as registered twice");
@@ -55,13 +99,27 @@ public class FrameworkState {
         } catch (IOException e) {
             LOGGER.error("Unable to store framework ID in zookeeper", e);
         }
+        final boolean recovered = frameworkId.equals(this.frameworkId);
+        this.frameworkId = frameworkId;
         this.driver = driver;
 
-        final ClusterState clusterState = new ClusterState(zookeeperStateDriver, this);
+        final ClusterState clusterState = this.clusterState != null ? this.clusterState : new ClusterState(zookeeperStateDriver, this);
+        if (!recovered || !clusterState.isLoaded()) {
+            clusterState.load(); // Warm the task cache now that the framework ID is known.
+        }
         registeredListeners.forEach(listener -> listener.accept(clusterState));
     }
 
+    /**
+     * Binds the cluster state that listens to this framework. Only one cluster state should exist per framework,
+     * otherwise each holds its own copy of the task list.
+     */
+    void setClusterState(ClusterState clusterState) {
+        this.clusterState = clusterState;
+    }
+
     public void destroy() {
+        frameworkId = null;
         try {
             statePath.rm(FRAMEWORKID_KEY);
         } catch (IOException e) {
@@ -0,0 +1,93 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps state in memory, for tests, benchmarks and simulations. Values are encoded like they are for zookeeper, so
+ * callers get copies and see the same errors. Each key carries a version that, like a zNode version, increases with
+ * every write.
+ */
+public class InMemorySerializableState implements SerializableState {
+    public static final long NO_VERSION = -1;
+    private final ConcurrentMap<String, Versioned> entries = new ConcurrentHashMap<>();
+    private final StateCodec codec;
+
+    public InMemorySerializableState() {
+        this(new ProtobufStateCodec());
+    }
+
+    public InMemorySerializableState(StateCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public <T> T get(String key) throws IOException {
+        final Versioned entry = entries.get(key);
+        return entry == null ? null : codec.decode(entry.value);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public <T> void set(String key, T object) throws IOException {
+        final byte[] value = codec.encode(object); // Null is encoded too, like it is for the directory zNodes.
+        entries.compute(key, (k, previous) -> new Versioned(value, previous == null ? 0 : previous.version + 1));
+    }
+
+    /**
+     * Sets the value only if the key is still at the expected version.
+     * @param expectedVersion the version last seen, or {@link #NO_VERSION} if the key must not exist
+     * @return false if the key was changed in the meantime
+     */
+    public <T> boolean compareAndSet(String key, long expectedVersion, T object) throws IOException {
+        final byte[] value = codec.encode(object);
+        if (expectedVersion == NO_VERSION) {
+            return entries.putIfAbsent(key, new Versioned(value, 0)) == null;
+        }
+        final Versioned previous = entries.get(key);
+        return previous != null && previous.version == expectedVersion && entries.replace(key, previous, new Versioned(value, expectedVersion + 1));
+    }
+
+    @Override
+    public <T> boolean replace(String key, T expected, T update) throws IOException {
+        final Versioned previous = entries.get(key);
+        final Object current = previous == null ? null : codec.decode(previous.value);
+        return Objects.equals(current, expected) && compareAndSet(key, previous == null ? NO_VERSION : previous.version, update);
+    }
+
+    /**
+     * @return the version of the key, or {@link #NO_VERSION} if it does not exist
+     */
+    public long version(String key) {
+        final Versioned entry = entries.get(key);
+        return entry == null ? NO_VERSION : entry.version;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        final Versioned entry = entries.remove(key);
+        if (entry == null) {
+            throw new InvalidParameterException("Key does not exist:" + key);
+        }
+    }
+
+    /**
+     * A value and the version it was written at
+     */
+    private static final class Versioned {
+        private final byte[] value;
+        private final long version;
+
+        private Versioned(byte[] value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.*;
+
+/**
+ * Legacy codec using Java serialization. Kept to read state written by older versions of the scheduler, and for values
+ * that are not protobuf messages.
+ */
+public class JavaSerializationCodec implements StateCodec {
+    private static final byte STREAM_MAGIC_HIGH = (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8);
+    private static final byte STREAM_MAGIC_LOW = (byte) ObjectStreamConstants.STREAM_MAGIC;
+
+    /**
+     * @return true if the bytes start with the Java serialization stream header
+     */
+    public static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == STREAM_MAGIC_HIGH && bytes[1] == STREAM_MAGIC_LOW;
+    }
+
+    @Override
+    public byte[] encode(Object object) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (T) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to deserialize zNode", e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects one leader among scheduler instances that share the same state, through a lease held in the
+ * {@value #LEADER_KEY} key. The state API has neither ephemeral zNodes nor watches, so the leader renews the lease well
+ * before it expires and standbys poll it. A standby takes over once the lease has expired, or at once if the leader
+ * released it on shutdown.
+ *
+ * Expiry is compared against the wall clock of each host, so the lease must be much longer than the clock skew between
+ * them. The state must support {@link SerializableState#replace}; otherwise the first attempt to take the lease fails.
+ */
+public class LeaderElection {
+    private static final Logger LOGGER = Logger.getLogger(LeaderElection.class);
+    public static final String LEADER_KEY = "leader";
+    private final SerializableState state;
+    private final String candidateId;
+    private final long leaseMs;
+    private final Clock clock;
+    private volatile Lease held; // The lease last written by this candidate. Null unless leader.
+    private ScheduledExecutorService renewer; // Guarded by this
+
+    public LeaderElection(SerializableState state, String candidateId, long leaseMs) {
+        this(state, candidateId, leaseMs, new Clock());
+    }
+
+    LeaderElection(SerializableState state, String candidateId, long leaseMs, Clock clock) {
+        if (leaseMs < 3) {
+            throw new IllegalArgumentException("Lease must be at least 3 ms");
+        }
+        this.state = state;
+        this.candidateId = candidateId;
+        this.leaseMs = leaseMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Blocks until this candidate is leader.
+     * @param whileStandby run after every failed attempt, e.g. to catch up with the state the leader writes
+     */
+    public void awaitLeadership(Runnable whileStandby) throws InterruptedException {
+        LOGGER.info("Standing by for leadership as " + candidateId);
+        while (!tryAcquire()) {
+            try {
+                whileStandby.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Standby task failed. Retrying on the next poll.", e); // Must not stop the standby.
+            }
+            Thread.sleep(intervalMs());
+        }
+    }
+
+    /**
+     * @return true while this candidate holds a lease that has not expired
+     */
+    public boolean isLeader() {
+        final Lease mine = held;
+        return mine != null && mine.expiresAt > clock.now().getTime();
+    }
+
+    /**
+     * Takes the lease if it is free, expired or already ours.
+     * @return true if this candidate is now leader
+     * @throws IllegalStateException if the state cannot compare and set, so no lease can be held safely
+     */
+    public synchronized boolean tryAcquire() {
+        try {
+            final Lease current = state.get(LEADER_KEY);
+            final long now = clock.now().getTime();
+            if (current != null && !current.holder.equals(candidateId) && current.expiresAt > now) {
+                LOGGER.debug("Leader is " + current.holder);
+                return false;
+            }
+            final Lease next = new Lease(candidateId, now + leaseMs);
+            if (state.replace(LEADER_KEY, current, next)) {
+                if (held == null) {
+                    LOGGER.info("Elected leader as " + candidateId + (current == null ? "" : ", taking over from " + current.holder));
+                }
+                held = next;
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to read or take the leader lease", e);
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("Leader election needs a state backend that can compare and set", e);
+        }
+        return false;
+    }
+
+    /**
+     * Renews the lease in the background until it is lost, then runs {@code onLost} once. The caller must stop acting
+     * as leader straight away, because a standby may already have taken over.
+     */
+    public synchronized void maintain(Runnable onLost) {
+        if (renewer != null) {
+            throw new IllegalStateException("Lease is already being renewed");
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "leader-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ScheduledExecutorService executor = renewer;
+        executor.scheduleWithFixedDelay(() -> {
+            if (!renew()) {
+                executor.shutdown();
+                onLost.run();
+            }
+        }, intervalMs(), intervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Extends the lease. Failing to reach the state is tolerated until the lease expires.
+     * @return false once leadership is lost
+     */
+    synchronized boolean renew() {
+        final Lease mine = held;
+        if (mine == null) {
+            return false;
+        }
+        final long now = clock.now().getTime();
+        try {
+            final Lease current = state.get(LEADER_KEY);
+            if (current == null || !current.holder.equals(candidateId)) {
+                LOGGER.error("Lost leadership to " + (current == null ? "nobody" : current.holder));
+                held = null;
+                return false;
+            }
+            final Lease next = new Lease(candidateId, now + leaseMs);
+            if (!state.replace(LEADER_KEY, current, next)) {
+                LOGGER.error("Lost leadership: the lease was changed by another scheduler");
+                held = null;
+                return false;
+            }
+            held = next;
+            return true;
+        } catch (IOException e) {
+            if (now >= mine.expiresAt) {
+                LOGGER.error("Lost leadership: unable to renew the lease before it expired", e);
+                held = null;
+                return false;
+            }
+            LOGGER.warn("Unable to renew the leader lease. Retrying until it expires.", e);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            LOGGER.error("Lost leadership: the state backend cannot compare and set", e);
+            held = null;
+            return false;
+        }
+    }
+
+    /**
+     * Stops renewing and frees the lease, so a standby can take over without waiting for it to expire.
+     */
+    public synchronized void release() {
+        if (renewer != null) {
+            renewer.shutdownNow();
+        }
+        final Lease mine = held;
+        held = null;
+        if (mine == null) {
+            return;
+        }
+        try {
+            final Lease current = state.get(LEADER_KEY);
+            if (current != null && current.holder.equals(candidateId) && state.replace(LEADER_KEY, current, null)) {
+                LOGGER.info("Released leadership");
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Unable to release the leader lease. Standbys take over once it expires.", e);
+        }
+    }
+
+    private long intervalMs() {
+        return leaseMs / 3;
+    }
+
+    /**
+     * The current leader and when its lease runs out
+     */
+    static final class Lease implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String holder;
+        private final long expiresAt; // Epoch millis
+
+        Lease(String holder, long expiresAt) {
+            this.holder = holder;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Lease lease = (Lease) o;
+            return expiresAt == lease.expiresAt && holder.equals(lease.holder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(holder, expiresAt);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Mirrors a {@link SerializableState} into a local {@link StateJournal}. The primary state stays authoritative: every
+ * write goes to it first, and the mirror only records what the primary holds.
+ *
+ * Until {@link #reconcile()} has run, reads are served from the mirror where it has the key. This lets the scheduler
+ * warm its caches while zookeeper is slow or briefly unreachable. Reconciling compares every mirrored key with the
+ * primary, corrects the mirror, and from then on all reads go to the primary.
+ */
+public class MirroredSerializableState implements SerializableState {
+    private static final Logger LOGGER = Logger.getLogger(MirroredSerializableState.class);
+    private final SerializableState primary;
+    private final StateJournal journal;
+    private final StateCodec codec;
+    private volatile boolean warm = true;
+    private volatile boolean mirroring = true;
+
+    public MirroredSerializableState(SerializableState primary, StateJournal journal) {
+        this(primary, journal, new ProtobufStateCodec());
+    }
+
+    public MirroredSerializableState(SerializableState primary, StateJournal journal, StateCodec codec) {
+        this.primary = primary;
+        this.journal = journal;
+        this.codec = codec;
+    }
+
+    @Override
+    public <T> T get(String key) throws IOException {
+        if (warm) {
+            final byte[] mirrored = journal.get(key);
+            if (mirrored != null) {
+                return codec.decode(mirrored);
+            }
+        }
+        final T value = primary.get(key);
+        mirror(key, value);
+        return value;
+    }
+
+    @Override
+    public <T> void set(String key, T object) throws IOException {
+        primary.set(key, object);
+        mirror(key, object);
+    }
+
+    @Override
+    public <T> boolean replace(String key, T expected, T update) throws IOException {
+        if (!primary.replace(key, expected, update)) {
+            return false;
+        }
+        mirror(key, update);
+        return true;
+    }
+
+    /**
+     * Always asks the primary, because only the primary's zNodes decide whether a write needs its parents created.
+     */
+    @Override
+    public boolean exists(String key) throws IOException {
+        return primary.exists(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            primary.delete(key);
+        } finally {
+            mirror(key, null); // Even if the delete failed: the mirror may miss keys, but must not resurrect them.
+        }
+    }
+
+    @Override
+    public StateMetrics getMetrics() {
+        return primary.getMetrics();
+    }
+
+    /**
+     * @return true while reads are still served from the mirror
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    /**
+     * Brings every mirrored key in line with the primary, then switches reads to the primary.
+     * @throws IOException if the primary cannot be read. The mirror keeps serving reads, so this can be retried.
+     */
+    public void reconcile() throws IOException {
+        final long start = System.nanoTime();
+        int corrected = 0;
+        for (Map.Entry<String, byte[]> entry : journal.snapshot().entrySet()) {
+            final Object value = primary.get(entry.getKey());
+            if (value == null || !Arrays.equals(codec.encode(value), entry.getValue())) {
+                mirror(entry.getKey(), value);
+                corrected++;
+            }
+        }
+        warm = false;
+        LOGGER.info("Reconciled state mirror with zookeeper in " + (System.nanoTime() - start) / 1000000 + " ms. Corrected " + corrected + " entries.");
+    }
+
+    /**
+     * Journal failures never fail the caller, because the primary already holds the data. Mirroring stops instead, and
+     * reads fall through to the primary.
+     */
+    private void mirror(String key, Object value) {
+        if (!mirroring) {
+            return;
+        }
+        try {
+            if (value == null) {
+                journal.remove(key);
+            } else {
+                journal.put(key, codec.encode(value));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to write state mirror. Disabling it.", e);
+            mirroring = false;
+            warm = false;
+        }
+    }
+}
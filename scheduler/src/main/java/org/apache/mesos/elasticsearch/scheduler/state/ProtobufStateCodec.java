@@ -0,0 +1,183 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import org.apache.mesos.Protos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Length-prefixed protobuf codec for the Mesos messages kept in state. The format is:
+ * <pre>
+ *   magic (2 bytes) | version (1 byte) | kind (1 byte) | message type (1 byte) | payload
+ * </pre>
+ * where the payload is a single length-prefixed message for {@link #KIND_MESSAGE}, or a varint count followed by
+ * length-prefixed messages for {@link #KIND_LIST}.
+ *
+ * Values that are not supported Mesos messages (e.g. the null written for directories) are encoded with the fallback
+ * codec. Bytes written by the fallback codec, including all state written by older schedulers, are still readable, so
+ * existing zNodes are migrated the next time they are written.
+ */
+public class ProtobufStateCodec implements StateCodec {
+    static final byte MAGIC_HIGH = 'E';
+    static final byte MAGIC_LOW = 'S';
+    static final byte VERSION = 1;
+    static final byte KIND_MESSAGE = 0;
+    static final byte KIND_LIST = 1;
+    private static final int HEADER_LENGTH = 5;
+
+    private static final byte TYPE_NONE = 0;
+    private static final byte TYPE_FRAMEWORK_ID = 1;
+    private static final byte TYPE_TASK_STATUS = 2;
+    private static final byte TYPE_TASK_INFO = 3;
+    private static final byte TYPE_TASK_ID = 4;
+
+    private final StateCodec fallback;
+
+    public ProtobufStateCodec() {
+        this(new JavaSerializationCodec());
+    }
+
+    public ProtobufStateCodec(StateCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * @return true if the bytes start with this codec's header
+     */
+    public static boolean isProtobufEncoded(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC_HIGH && bytes[1] == MAGIC_LOW;
+    }
+
+    @Override
+    public byte[] encode(Object object) throws IOException {
+        if (object instanceof Message && typeOf(object) != TYPE_NONE) {
+            return encodeMessage((Message) object);
+        } else if (object instanceof Collection && isHomogeneousMessageCollection((Collection<?>) object)) {
+            return encodeList((Collection<?>) object);
+        }
+        return fallback.encode(object);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] bytes) throws IOException {
+        if (isProtobufEncoded(bytes)) {
+            return (T) decodeProtobuf(bytes);
+        } else if (JavaSerializationCodec.isJavaSerialized(bytes)) {
+            return fallback.decode(bytes);
+        }
+        throw new StreamCorruptedException("Unknown zNode format");
+    }
+
+    private byte[] encodeMessage(Message message) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER_LENGTH + message.getSerializedSize() + 5);
+        writeHeader(bos, KIND_MESSAGE, typeOf(message));
+        message.writeDelimitedTo(bos);
+        return bos.toByteArray();
+    }
+
+    private byte[] encodeList(Collection<?> messages) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeHeader(bos, KIND_LIST, messages.isEmpty() ? TYPE_NONE : typeOf(messages.iterator().next()));
+        CodedOutputStream out = CodedOutputStream.newInstance(bos);
+        out.writeRawVarint32(messages.size());
+        for (Object message : messages) {
+            Message m = (Message) message;
+            out.writeRawVarint32(m.getSerializedSize());
+            m.writeTo(out);
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private void writeHeader(ByteArrayOutputStream bos, byte kind, byte type) {
+        bos.write(MAGIC_HIGH);
+        bos.write(MAGIC_LOW);
+        bos.write(VERSION);
+        bos.write(kind);
+        bos.write(type);
+    }
+
+    private Object decodeProtobuf(byte[] bytes) throws IOException {
+        if (bytes[2] != VERSION) {
+            throw new StreamCorruptedException("Unsupported zNode format version: " + bytes[2]);
+        }
+        final byte kind = bytes[3];
+        final byte type = bytes[4];
+        final CodedInputStream in = CodedInputStream.newInstance(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        if (kind == KIND_MESSAGE) {
+            return readMessage(in, parserOf(type));
+        } else if (kind == KIND_LIST) {
+            final int count = in.readRawVarint32();
+            final List<Object> list = new ArrayList<>(count);
+            if (count > 0) {
+                final Parser<? extends Message> parser = parserOf(type);
+                for (int i = 0; i < count; i++) {
+                    list.add(readMessage(in, parser));
+                }
+            }
+            return list;
+        }
+        throw new StreamCorruptedException("Unknown zNode payload kind: " + kind);
+    }
+
+    private Message readMessage(CodedInputStream in, Parser<? extends Message> parser) throws IOException {
+        final int length = in.readRawVarint32();
+        final int oldLimit = in.pushLimit(length);
+        final Message message = parser.parseFrom(in);
+        in.popLimit(oldLimit);
+        return message;
+    }
+
+    private boolean isHomogeneousMessageCollection(Collection<?> collection) {
+        if (collection.isEmpty()) {
+            return true;
+        }
+        final byte type = typeOf(collection.iterator().next());
+        if (type == TYPE_NONE) {
+            return false;
+        }
+        for (Object o : collection) {
+            if (typeOf(o) != type) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte typeOf(Object object) {
+        if (object instanceof Protos.FrameworkID) {
+            return TYPE_FRAMEWORK_ID;
+        } else if (object instanceof Protos.TaskStatus) {
+            return TYPE_TASK_STATUS;
+        } else if (object instanceof Protos.TaskInfo) {
+            return TYPE_TASK_INFO;
+        } else if (object instanceof Protos.TaskID) {
+            return TYPE_TASK_ID;
+        }
+        return TYPE_NONE;
+    }
+
+    private static Parser<? extends Message> parserOf(byte type) throws IOException {
+        switch (type) {
+            case TYPE_FRAMEWORK_ID:
+                return Protos.FrameworkID.PARSER;
+            case TYPE_TASK_STATUS:
+                return Protos.TaskStatus.PARSER;
+            case TYPE_TASK_INFO:
+                return Protos.TaskInfo.PARSER;
+            case TYPE_TASK_ID:
+                return Protos.TaskID.PARSER;
+            default:
+                throw new StreamCorruptedException("Unknown zNode message type: " + type);
+        }
+    }
+}
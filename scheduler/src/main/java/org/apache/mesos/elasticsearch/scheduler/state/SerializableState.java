@@ -9,4 +9,29 @@ public interface SerializableState {
     <T> T get(String key) throws IOException;
     <T> void set(String key, T object) throws IOException;
     void delete(String key) throws IOException;
+
+    /**
+     * Writes the value only if the key still holds {@code expected}, atomically with respect to other writers.
+     * @param expected the value the key must hold, by equals(), or null if it must not exist
+     * @return false if the key held something else
+     * @throws UnsupportedOperationException if the state cannot compare and set atomically
+     */
+    default <T> boolean replace(String key, T expected, T update) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support compare and set");
+    }
+
+    /**
+     * @return true if the key holds a non-null value. The default decodes the value, so a directory holding null counts
+     * as missing. Implementations that can tell such a directory from a missing key override this and return true.
+     */
+    default boolean exists(String key) throws IOException {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the metrics of the operations made against the backing store, or null if they are not recorded
+     */
+    default StateMetrics getMetrics() {
+        return null;
+    }
 }
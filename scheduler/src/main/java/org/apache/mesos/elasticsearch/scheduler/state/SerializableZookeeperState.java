@@ -1,19 +1,82 @@
 package org.apache.mesos.elasticsearch.scheduler.state;
 
+import org.apache.log4j.Logger;
 import org.apache.mesos.state.Variable;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
 
 /**
  * Writes serializable data to zookeeper
+ *
+ * Values larger than {@link #DEFAULT_COMPRESS_THRESHOLD} are deflated. Values that are still larger than a zNode can
+ * hold are split across chunk zNodes next to the key, and the key holds a manifest of the chunks. The manifest is
+ * written last, so readers see either the old value or the new one. Smaller values are written as before.
+ *
+ * Every fetch, store and expunge is counted and timed in {@link StateMetrics}, along with the bytes moved per key prefix.
+ *
+ * The last version seen of each existing key is remembered, without its value, until the key is deleted. A write of a
+ * single zNode is stored against that version without fetching it first. If someone else changed the zNode in the
+ * meantime, the store is rejected and retried after a fetch. {@link #exists(String)} is only answered from memory while
+ * this scheduler is the sole writer, see {@link #trustKnownKeysWhile(BooleanSupplier)}.
  */
 public class SerializableZookeeperState implements SerializableState {
+    private static final Logger LOGGER = Logger.getLogger(SerializableZookeeperState.class);
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 64 * 1024;
+    public static final int DEFAULT_MAX_NODE_BYTES = 900 * 1024; // ZooKeeper rejects zNodes over 1 MB by default.
     private org.apache.mesos.state.State zkState;
+    private final StateCodec codec;
+    private final int compressThreshold;
+    private final int maxNodeBytes;
+    private final StateMetrics metrics;
+    private final Map<String, Version> known = new ConcurrentHashMap<>(); // Last version seen of each existing key.
+    private volatile BooleanSupplier soleWriter = () -> false;
 
     public SerializableZookeeperState(org.apache.mesos.state.State zkState) {
+        this(zkState, new ProtobufStateCodec());
+    }
+
+    public SerializableZookeeperState(org.apache.mesos.state.State zkState, StateCodec codec) {
+        this(zkState, codec, DEFAULT_COMPRESS_THRESHOLD, DEFAULT_MAX_NODE_BYTES);
+    }
+
+    public SerializableZookeeperState(org.apache.mesos.state.State zkState, StateCodec codec, int compressThreshold, int maxNodeBytes) {
+        this(zkState, codec, compressThreshold, maxNodeBytes, new StateMetrics());
+    }
+
+    public SerializableZookeeperState(org.apache.mesos.state.State zkState, StateCodec codec, int compressThreshold, int maxNodeBytes, StateMetrics metrics) {
+        if (maxNodeBytes < 1) {
+            throw new IllegalArgumentException("Maximum zNode size must be positive");
+        }
         this.zkState = zkState;
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+        this.maxNodeBytes = maxNodeBytes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Lets {@link #exists(String)} trust the keys it has seen while the condition holds, e.g. while this scheduler holds
+     * the leader lease. Otherwise a key deleted by another scheduler would never be noticed.
+     */
+    public void trustKnownKeysWhile(BooleanSupplier soleWriter) {
+        this.soleWriter = soleWriter;
+    }
+
+    @Override
+    public StateMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -23,31 +86,18 @@ public class SerializableZookeeperState implements SerializableState {
      * @return Object
      * @throws IOException
      */
-    @SuppressWarnings("unchecked")
     public <T> T get(String key) throws IOException {
         try {
-            byte[] existingNodes = zkState.fetch(key).get().value();
+            byte[] existingNodes = fetch(key).value();
+            metrics.read(key, existingNodes.length);
             if (existingNodes.length > 0) {
-                ByteArrayInputStream bis = new ByteArrayInputStream(existingNodes);
-                ObjectInputStream in = null;
-                try {
-                    in = new ObjectInputStream(bis);
-                    return (T) in.readObject();
-                } finally {
-                    try {
-                        bis.close();
-                    } finally {
-                        if (in != null) {
-                            in.close();
-                        }
-                    }
-                }
+                return codec.decode(unwrap(key, existingNodes));
             } else {
                 return null;
             }
         } catch (StreamCorruptedException e) {
             throw new IOException("Corrupted zookeeper zNode. Please delete (rmr) the zNode path using the zookeeper/bin/zkCli.sh tool.", e);
-        } catch (InterruptedException | ClassNotFoundException | ExecutionException | IOException e) {
+        } catch (InterruptedException | ExecutionException | IOException e) {
             throw new IOException("Unable to get zNode", e);
         }
     }
@@ -59,28 +109,76 @@ public class SerializableZookeeperState implements SerializableState {
      */
     public <T> void set(String key, T object) throws IOException {
         try {
-            Variable value = zkState.fetch(key).get();
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream out = null;
-            try {
-                out = new ObjectOutputStream(bos);
-                out.writeObject(object);
-                value = value.mutate(bos.toByteArray());
-                zkState.store(value).get();
-            } finally {
-                try {
-                    if (out != null) {
-                        out.close();
-                    }
-                } finally {
-                    bos.close();
+            byte[] bytes = codec.encode(object);
+            if (bytes.length > compressThreshold) {
+                bytes = StateEnvelope.compress(bytes);
+            }
+            final Version last = known.get(key);
+            if (bytes.length <= maxNodeBytes && last != null && !last.manifest && store(key, last.token, bytes)) {
+                return; // Chunked values always fetch first, so that chunks of a newer generation are never overwritten.
+            }
+            Variable value = fetch(key);
+            final StateEnvelope.Manifest previous = StateEnvelope.isManifest(value.value()) ? StateEnvelope.Manifest.decode(value.value()) : null;
+            StateEnvelope.Manifest manifest = null;
+            if (bytes.length > maxNodeBytes) {
+                manifest = writeChunks(key, previous == null ? 1 : previous.generation + 1, bytes);
+                bytes = manifest.encode();
+            }
+            if (!store(key, value, bytes)) {
+                if (manifest != null) {
+                    deleteChunks(key, manifest);
                 }
+                throw new IOException("zNode was modified concurrently: " + key);
+            }
+            if (previous != null) {
+                deleteChunks(key, previous);
             }
         } catch (InterruptedException | ExecutionException | IOException e) {
             throw new IOException("Unable to set zNode", e);
         }
     }
 
+    /**
+     * Compares and stores against the same zNode version, so a concurrent writer makes the store fail. Values that
+     * need chunking are not supported.
+     */
+    @Override
+    public <T> boolean replace(String key, T expected, T update) throws IOException {
+        try {
+            final Variable value = fetch(key);
+            final T current = value.value().length == 0 ? null : codec.decode(unwrap(key, value.value()));
+            if (!Objects.equals(current, expected)) {
+                return false;
+            }
+            byte[] bytes = codec.encode(update);
+            if (bytes.length > compressThreshold) {
+                bytes = StateEnvelope.compress(bytes);
+            }
+            if (bytes.length > maxNodeBytes || StateEnvelope.isManifest(value.value())) {
+                throw new IOException("Compare and set is not supported for chunked values: " + key);
+            }
+            return store(key, value, bytes);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Unable to set zNode", e);
+        }
+    }
+
+    /**
+     * Checks that the zNode holds a value without decoding it. While this scheduler is the sole writer, keys already
+     * known to exist are not checked again.
+     */
+    @Override
+    public boolean exists(String key) throws IOException {
+        if (known.containsKey(key) && soleWriter.getAsBoolean()) {
+            return true;
+        }
+        try {
+            return fetch(key).value().length > 0;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Unable to get zNode", e);
+        }
+    }
+
     /**
      * Delete a path in zk
      * @param key the key to delete
@@ -89,13 +187,161 @@ public class SerializableZookeeperState implements SerializableState {
      */
     public void delete(String key) throws IOException {
         try {
-            Variable value = zkState.fetch(key).get();
+            Variable value = fetch(key);
+            forget(key);
             if (value.value().length == 0) {
                 throw new InvalidParameterException("Key does not exist:" + key);
             }
-            zkState.expunge(value);
+            await(StateMetrics.EXPUNGE, metrics.start(), zkState.expunge(value));
+            if (StateEnvelope.isManifest(value.value())) {
+                deleteChunks(key, StateEnvelope.Manifest.decode(value.value()));
+            }
         } catch (InterruptedException | ExecutionException e) {
             throw new IOException("Unable to delete key:" + key, e);
         }
     }
+
+    /**
+     * Stores the bytes against the given version of the key.
+     * @return false if the key has changed since that version
+     */
+    private boolean store(String key, Variable value, byte[] bytes) throws InterruptedException, ExecutionException {
+        metrics.written(key, bytes.length);
+        final Variable stored = await(StateMetrics.STORE, metrics.start(), zkState.store(value.mutate(bytes)));
+        if (stored == null) {
+            known.remove(key);
+            return false;
+        }
+        known.put(key, new Version(stored, bytes));
+        return true;
+    }
+
+    /**
+     * Forgets the key and everything below it before it is deleted, so a failed delete at worst costs another fetch.
+     */
+    private void forget(String key) {
+        final String children = key + "/";
+        known.keySet().removeIf(knownKey -> knownKey.equals(key) || knownKey.startsWith(children));
+    }
+
+    private byte[] unwrap(String key, byte[] bytes) throws IOException, InterruptedException, ExecutionException {
+        byte[] result = bytes;
+        if (StateEnvelope.isManifest(result)) {
+            result = readChunks(key, StateEnvelope.Manifest.decode(result));
+        }
+        if (StateEnvelope.isCompressed(result)) {
+            result = StateEnvelope.decompress(result);
+        }
+        return result;
+    }
+
+    private byte[] readChunks(String key, StateEnvelope.Manifest manifest) throws IOException, InterruptedException, ExecutionException {
+        final long start = metrics.start();
+        final List<Future<Variable>> fetches = new ArrayList<>(manifest.chunkCount);
+        for (int i = 0; i < manifest.chunkCount; i++) {
+            fetches.add(zkState.fetch(manifest.chunkKey(key, i)));
+        }
+        final byte[] bytes = new byte[manifest.length];
+        int offset = 0;
+        for (Future<Variable> fetch : fetches) {
+            final byte[] chunk = await(StateMetrics.FETCH, start, fetch).value();
+            metrics.read(key, chunk.length);
+            if (offset + chunk.length > bytes.length) {
+                throw new StreamCorruptedException("Chunks of " + key + " are longer than its manifest");
+            }
+            System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+            offset += chunk.length;
+        }
+        if (offset != bytes.length || checksum(bytes) != manifest.checksum) {
+            throw new StreamCorruptedException("Chunks of " + key + " do not match its manifest");
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the chunks of a new generation. All chunks are written concurrently.
+     */
+    private StateEnvelope.Manifest writeChunks(String key, long generation, byte[] bytes) throws IOException, InterruptedException, ExecutionException {
+        final int chunkCount = (bytes.length + maxNodeBytes - 1) / maxNodeBytes;
+        final StateEnvelope.Manifest manifest = new StateEnvelope.Manifest(generation, chunkCount, bytes.length, checksum(bytes));
+        final long fetchStart = metrics.start();
+        final List<Future<Variable>> fetches = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            fetches.add(zkState.fetch(manifest.chunkKey(key, i)));
+        }
+        final long storeStart = metrics.start();
+        final List<Future<Variable>> stores = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            final byte[] chunk = Arrays.copyOfRange(bytes, i * maxNodeBytes, Math.min(bytes.length, (i + 1) * maxNodeBytes));
+            stores.add(zkState.store(await(StateMetrics.FETCH, fetchStart, fetches.get(i)).mutate(chunk)));
+            metrics.written(key, chunk.length);
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            if (await(StateMetrics.STORE, storeStart, stores.get(i)) == null) {
+                throw new IOException("Chunk was modified concurrently: " + manifest.chunkKey(key, i));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Best effort. A chunk that is left behind is unreachable, because the next generation uses new names.
+     */
+    private void deleteChunks(String key, StateEnvelope.Manifest manifest) {
+        for (int i = 0; i < manifest.chunkCount; i++) {
+            final String chunkKey = manifest.chunkKey(key, i);
+            try {
+                await(StateMetrics.EXPUNGE, metrics.start(), zkState.expunge(await(StateMetrics.FETCH, metrics.start(), zkState.fetch(chunkKey))));
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.warn("Unable to delete chunk " + chunkKey, e);
+            }
+        }
+    }
+
+    /**
+     * Fetches the current version of the key, and remembers whether it exists.
+     */
+    private Variable fetch(String key) throws InterruptedException, ExecutionException {
+        final Variable value = await(StateMetrics.FETCH, metrics.start(), zkState.fetch(key));
+        if (value.value().length > 0) {
+            known.put(key, new Version(value, value.value()));
+        } else {
+            known.remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Waits for a state operation and records it, failed or not, as having run since {@code start}.
+     */
+    private <V> V await(String operation, long start, Future<V> future) throws InterruptedException, ExecutionException {
+        boolean success = false;
+        try {
+            final V result = future.get();
+            success = true;
+            return result;
+        } finally {
+            metrics.record(operation, start, success);
+        }
+    }
+
+    private static long checksum(byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    /**
+     * The version of a zNode, without its value
+     */
+    private static final class Version {
+        private static final byte[] EMPTY = new byte[0];
+        private final Variable token; // Same version as the zNode, holding no value, to store against.
+        private final boolean manifest;
+
+        Version(Variable variable, byte[] value) {
+            this.token = variable.mutate(EMPTY);
+            this.manifest = StateEnvelope.isManifest(value);
+        }
+    }
 }
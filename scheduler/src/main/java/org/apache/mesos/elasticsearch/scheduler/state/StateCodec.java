@@ -0,0 +1,22 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.IOException;
+
+/**
+ * Converts state objects to and from the bytes stored in a zNode.
+ */
+public interface StateCodec {
+    /**
+     * @param object the object to encode. May be null.
+     * @return the encoded bytes. Never empty, because an empty zNode means "does not exist".
+     * @throws IOException if the object cannot be encoded
+     */
+    byte[] encode(Object object) throws IOException;
+
+    /**
+     * @param bytes the bytes read from the zNode. Never empty.
+     * @return the decoded object
+     * @throws IOException if the bytes are not in a format understood by this codec
+     */
+    <T> T decode(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,124 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Formats that wrap codec output when it is too large to store as is: a deflate-compressed value, and a manifest that
+ * points to a value split across several chunk zNodes. Both are told apart from codec output by their magic bytes.
+ */
+final class StateEnvelope {
+    private static final byte MAGIC = 'E';
+    private static final byte COMPRESSED = 'Z';
+    private static final byte MANIFEST = 'M';
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 3;
+
+    private StateEnvelope() {
+    }
+
+    static boolean isCompressed(byte[] bytes) {
+        return hasHeader(bytes, COMPRESSED);
+    }
+
+    static boolean isManifest(byte[] bytes) {
+        return hasHeader(bytes, MANIFEST);
+    }
+
+    private static boolean hasHeader(byte[] bytes, byte kind) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC && bytes[1] == kind && bytes[2] == VERSION;
+    }
+
+    /**
+     * @return the compressed value, or the original bytes if compression does not make them smaller
+     */
+    static byte[] compress(byte[] bytes) {
+        final Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + HEADER_LENGTH);
+            out.write(new byte[]{MAGIC, COMPRESSED, VERSION}, 0, HEADER_LENGTH);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= bytes.length) {
+                    return bytes;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(byte[] bytes) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            final byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                final int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new StreamCorruptedException("Compressed state value is truncated");
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Compressed state value is corrupt: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Describes a value stored in chunks. Chunks are named after the manifest's generation, so a new value is written
+     * to fresh chunks and only becomes visible when the manifest is replaced.
+     */
+    static final class Manifest {
+        final long generation;
+        final int chunkCount;
+        final int length;
+        final long checksum;
+
+        Manifest(long generation, int chunkCount, int length, long checksum) {
+            this.generation = generation;
+            this.chunkCount = chunkCount;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        byte[] encode() {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.write(new byte[]{MAGIC, MANIFEST, VERSION});
+                out.writeLong(generation);
+                out.writeInt(chunkCount);
+                out.writeInt(length);
+                out.writeLong(checksum);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write to memory", e);
+            }
+            return bytes.toByteArray();
+        }
+
+        static Manifest decode(byte[] bytes) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH))) {
+                return new Manifest(in.readLong(), in.readInt(), in.readInt(), in.readLong());
+            }
+        }
+
+        String chunkKey(String key, int index) {
+            return key + "-chunk-" + generation + "-" + index;
+        }
+    }
+}
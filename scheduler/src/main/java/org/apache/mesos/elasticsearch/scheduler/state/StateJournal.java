@@ -0,0 +1,221 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of state mutations in a memory-mapped file. Every record carries a CRC32, and replay stops at the
+ * first record that does not match, so a torn write at the end is ignored. When the file is full, the live entries are
+ * compacted into a new file that replaces the old one atomically.
+ *
+ * The header holds a format version and an identity, e.g. the zookeeper path of the state it mirrors. A journal with a
+ * different version or identity is discarded when opened.
+ */
+public class StateJournal implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(StateJournal.class);
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    private static final int MAGIC = 0x45534a4c; // "ESJL"
+    private static final int FORMAT_VERSION = 1;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4 + 4 + 8; // Length, op, key length, value length, checksum.
+
+    private final Path path;
+    private final byte[] identity;
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(); // Guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    public StateJournal(Path path, String identity) throws IOException {
+        this(path, identity, DEFAULT_CAPACITY);
+    }
+
+    public StateJournal(Path path, String identity, int capacity) throws IOException {
+        this.path = path;
+        this.identity = identity.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(path) && Files.size(path) > 0) {
+            map(path, Math.max(capacity, (int) Files.size(path)));
+            if (!replay()) {
+                LOGGER.info("Discarding state journal " + path + " written for different state or version");
+                entries.clear();
+                compact(capacity);
+            }
+        } else {
+            compact(capacity);
+        }
+        LOGGER.info("Opened state journal " + path + " with " + entries.size() + " entries");
+    }
+
+    public synchronized byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return a copy of every live entry
+     */
+    public synchronized Map<String, byte[]> snapshot() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+
+    public synchronized void put(String key, byte[] value) throws IOException {
+        if (Arrays.equals(entries.get(key), value)) {
+            return;
+        }
+        append(PUT, key, value);
+        entries.put(key, value);
+    }
+
+    public synchronized void remove(String key) throws IOException {
+        if (!entries.containsKey(key)) {
+            return;
+        }
+        append(REMOVE, key, new byte[0]);
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * @return false if the header does not match this journal's version and identity
+     */
+    private boolean replay() {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return false;
+            }
+            final byte[] stored = new byte[buffer.getInt()];
+            buffer.get(stored);
+            if (!Arrays.equals(stored, identity)) {
+                return false;
+            }
+            while (replayRecord()) {
+                // Applied one record.
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean replayRecord() {
+        final int start = buffer.position();
+        if (buffer.remaining() < RECORD_OVERHEAD) {
+            return false;
+        }
+        final int length = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining() - 8) {
+            buffer.position(start);
+            return false;
+        }
+        final ByteBuffer record = buffer.slice();
+        record.limit(length);
+        final CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        buffer.position(buffer.position() + length);
+        if (buffer.getLong() != crc.getValue()) {
+            LOGGER.warn("State journal " + path + " has a corrupt record at offset " + start + ". Ignoring the rest.");
+            buffer.position(start);
+            return false;
+        }
+        final byte op = record.get();
+        final byte[] key = new byte[record.getInt()];
+        record.get(key);
+        final byte[] value = new byte[record.getInt()];
+        record.get(value);
+        if (op == PUT) {
+            entries.put(new String(key, StandardCharsets.UTF_8), value);
+        } else {
+            entries.remove(new String(key, StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    private void append(byte op, String key, byte[] value) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int size = RECORD_OVERHEAD + keyBytes.length + value.length;
+        if (buffer.remaining() < size + 4) {
+            compact(Math.max(buffer.capacity(), 2 * (liveSize() + size)));
+        }
+        writeRecord(buffer, op, keyBytes, value);
+        buffer.putInt(buffer.position(), 0); // End marker, overwritten by the next record.
+    }
+
+    private static void writeRecord(ByteBuffer target, byte op, byte[] key, byte[] value) {
+        final int start = target.position();
+        target.putInt(1 + 4 + key.length + 4 + value.length);
+        target.put(op);
+        target.putInt(key.length);
+        target.put(key);
+        target.putInt(value.length);
+        target.put(value);
+        final ByteBuffer record = target.duplicate();
+        record.limit(target.position());
+        record.position(start + 4);
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        target.putLong(crc.getValue());
+    }
+
+    private int liveSize() {
+        int size = 12 + identity.length;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            size += RECORD_OVERHEAD + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the live entries to a new file and moves it over the journal.
+     */
+    private void compact(int capacity) throws IOException {
+        final int size = Math.max(capacity, liveSize() + 4);
+        final Path next = path.resolveSibling(path.getFileName() + ".compact");
+        final ByteBuffer content = ByteBuffer.allocate(size);
+        content.putInt(MAGIC);
+        content.putInt(FORMAT_VERSION);
+        content.putInt(identity.length);
+        content.put(identity);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            writeRecord(content, PUT, entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+        final int end = content.position();
+        content.clear();
+        try (FileChannel out = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            out.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(next, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(path, size);
+        buffer.position(end);
+    }
+
+    private void map(Path file, int size) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
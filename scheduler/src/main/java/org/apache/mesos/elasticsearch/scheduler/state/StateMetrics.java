@@ -0,0 +1,187 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the operations made against the state store, and the bytes read and written per key prefix.
+ * Recording is lock free, so it can be called from any thread.
+ */
+public class StateMetrics {
+    public static final String FETCH = "fetch";
+    public static final String STORE = "store";
+    public static final String EXPUNGE = "expunge";
+    public static final String MKDIR = "mkdir";
+    static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, Volume> volumes = new ConcurrentHashMap<>();
+
+    /**
+     * @return the current time, to be passed to {@link #record(String, long, boolean)} once the operation is done
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records an operation that began at {@code startNanos}.
+     */
+    public void record(String operation, long startNanos, boolean success) {
+        operations.computeIfAbsent(operation, name -> new Operation()).record(System.nanoTime() - startNanos, success);
+    }
+
+    public void read(String key, long bytes) {
+        volume(key).read.add(bytes);
+    }
+
+    public void written(String key, long bytes) {
+        volume(key).written.add(bytes);
+    }
+
+    /**
+     * @return the statistics of each operation, by operation name
+     */
+    public Map<String, OperationSnapshot> getOperations() {
+        final Map<String, OperationSnapshot> result = new TreeMap<>();
+        operations.forEach((name, operation) -> result.put(name, operation.snapshot()));
+        return result;
+    }
+
+    /**
+     * @return the bytes read and written, by key prefix
+     */
+    public Map<String, VolumeSnapshot> getVolumes() {
+        final Map<String, VolumeSnapshot> result = new TreeMap<>();
+        volumes.forEach((prefix, volume) -> result.put(prefix, new VolumeSnapshot(volume.read.sum(), volume.written.sum())));
+        return result;
+    }
+
+    /**
+     * @return the key without its last segment, so all tasks or all statuses share a prefix. "/" for top level keys.
+     */
+    static String prefix(String key) {
+        final int slash = key.lastIndexOf('/');
+        return slash <= 0 ? "/" : key.substring(0, slash);
+    }
+
+    private Volume volume(String key) {
+        return volumes.computeIfAbsent(prefix(key), prefix -> new Volume());
+    }
+
+    /**
+     * Running totals of one operation
+     */
+    private static class Operation {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length + 1);
+
+        void record(long nanos, boolean success) {
+            count.increment();
+            if (!success) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+
+        private static int bucket(long millis) {
+            int i = 0;
+            while (i < BUCKET_BOUNDS_MS.length && millis >= BUCKET_BOUNDS_MS[i]) {
+                i++;
+            }
+            return i;
+        }
+
+        OperationSnapshot snapshot() {
+            final Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+                histogram.put("<" + BUCKET_BOUNDS_MS[i] + "ms", buckets.get(i));
+            }
+            histogram.put(">=" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1] + "ms", buckets.get(BUCKET_BOUNDS_MS.length));
+            final long n = count.sum();
+            return new OperationSnapshot(n, errors.sum(), n == 0 ? 0 : totalNanos.sum() / n / 1000, maxNanos.get() / 1000, histogram);
+        }
+    }
+
+    /**
+     * Running byte totals of one key prefix
+     */
+    private static class Volume {
+        private final LongAdder read = new LongAdder();
+        private final LongAdder written = new LongAdder();
+    }
+
+    /**
+     * Statistics of one operation at a point in time
+     */
+    public static class OperationSnapshot {
+        private final long count;
+        private final long errors;
+        private final long meanMicros;
+        private final long maxMicros;
+        private final Map<String, Long> latency;
+
+        OperationSnapshot(long count, long errors, long meanMicros, long maxMicros, Map<String, Long> latency) {
+            this.count = count;
+            this.errors = errors;
+            this.meanMicros = meanMicros;
+            this.maxMicros = maxMicros;
+            this.latency = latency;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        /**
+         * @return the number of operations per latency bucket
+         */
+        public Map<String, Long> getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * Bytes read and written under one key prefix at a point in time
+     */
+    public static class VolumeSnapshot {
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        VolumeSnapshot(long bytesRead, long bytesWritten) {
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+}
@@ -14,9 +14,28 @@ public class StatePath {
 
     /**
      * Creates the zNode if it does not exist. Will create parent directories.
+     * Existence is checked with {@link SerializableState#exists(String)}, which does not decode the value and, for
+     * zookeeper, is answered from memory for keys already seen. Each call is timed as a {@link StateMetrics#MKDIR} if
+     * the state records metrics.
      * @param key the zNode path
      */
     public void mkdir(String key) throws IOException {
+        final StateMetrics metrics = zkState.getMetrics();
+        if (metrics == null) {
+            walk(key);
+            return;
+        }
+        final long start = metrics.start();
+        boolean success = false;
+        try {
+            walk(key);
+            success = true;
+        } finally {
+            metrics.record(StateMetrics.MKDIR, start, success);
+        }
+    }
+
+    private void walk(String key) throws IOException {
         key = key.replace(" ", "");
         if (key.endsWith("/") && !key.equals("/")) {
             throw new InvalidParameterException("Trailing slash not allowed in zookeeper path");
@@ -33,12 +52,7 @@ public class StatePath {
     }
 
     public Boolean exists(String key) throws IOException {
-        Boolean exists = true;
-        Object value = zkState.get(key);
-        if (value == null) {
-            exists = false;
-        }
-        return exists;
+        return zkState.exists(key);
     }
 
     /**
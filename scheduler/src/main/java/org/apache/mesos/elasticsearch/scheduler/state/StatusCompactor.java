@@ -0,0 +1,131 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.mesos.Protos.TaskInfo;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Removes task status zNodes that no task refers to any more, e.g. because a scheduler crashed half way through
+ * removing a task. Candidates are taken from the {@link StatusIndex}.
+ *
+ * A status is only removed once it has been orphaned for two consecutive runs, because a new task writes its status
+ * before it is added to the cluster state.
+ */
+public class StatusCompactor implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(StatusCompactor.class);
+    private final SerializableState state;
+    private final FrameworkState frameworkState;
+    private final ClusterState clusterState;
+    private Set<TaskID> suspects = Collections.emptySet(); // Guarded by this. Orphans seen by the previous run.
+
+    public StatusCompactor(SerializableState state, FrameworkState frameworkState, ClusterState clusterState) {
+        this.state = state;
+        this.frameworkState = frameworkState;
+        this.clusterState = clusterState;
+    }
+
+    @Override
+    public void run() {
+        try {
+            compact();
+        } catch (Exception ex) { // ScheduledExecutorService stops rescheduling after an exception, so catch all.
+            LOGGER.warn("Unable to compact task statuses. Retrying on the next run.", ex);
+        }
+    }
+
+    /**
+     * Deletes the status zNodes that were orphaned in the previous run and still are.
+     * @return what was reclaimed
+     * @throws IOException if the status index could not be read or written
+     */
+    public synchronized Result compact() throws IOException {
+        final FrameworkID frameworkID = frameworkState.getFrameworkID();
+        if (frameworkID.getValue().isEmpty() || !clusterState.isLoaded()) {
+            LOGGER.debug("Cluster state not loaded. Skipping task status compaction.");
+            return new Result(Collections.emptyList(), Collections.emptyList(), 0);
+        }
+        final StatusIndex index = new StatusIndex(state, frameworkID);
+        final Set<TaskID> live = clusterState.getTaskList().stream().map(TaskInfo::getTaskId).collect(Collectors.toSet());
+        final Set<TaskID> orphans = index.read().stream().filter(taskId -> !live.contains(taskId)).collect(Collectors.toSet());
+
+        final List<TaskID> deleted = new ArrayList<>();
+        final List<TaskID> missing = new ArrayList<>();
+        for (TaskID taskId : orphans) {
+            if (!suspects.contains(taskId)) {
+                continue;
+            }
+            try {
+                state.delete(ESTaskStatus.getKey(frameworkID, taskId));
+                deleted.add(taskId);
+            } catch (InvalidParameterException e) {
+                missing.add(taskId); // Deleted by removeTask, which could not unlist it. Only the index entry is left.
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete orphaned status of task " + taskId.getValue(), e);
+            }
+        }
+        final List<TaskID> unlisted = new ArrayList<>(deleted);
+        unlisted.addAll(missing);
+        index.removeAll(unlisted);
+        orphans.removeAll(unlisted);
+        suspects = orphans;
+
+        final Result result = new Result(deleted, missing, orphans.size());
+        if (!deleted.isEmpty()) {
+            LOGGER.info("Compacted task statuses: " + result);
+        } else {
+            LOGGER.debug("Compacted task statuses: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * What a compaction run reclaimed
+     */
+    public static class Result {
+        private final List<TaskID> deleted;
+        private final List<TaskID> unlisted;
+        private final int pending;
+
+        Result(List<TaskID> deleted, List<TaskID> unlisted, int pending) {
+            this.deleted = Collections.unmodifiableList(deleted);
+            this.unlisted = Collections.unmodifiableList(unlisted);
+            this.pending = pending;
+        }
+
+        /**
+         * @return tasks whose orphaned status zNode was deleted
+         */
+        public List<TaskID> getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return tasks whose status zNode had already gone, and were only removed from the index
+         */
+        public List<TaskID> getUnlisted() {
+            return unlisted;
+        }
+
+        /**
+         * @return orphans seen for the first time, which are deleted by the next run if still orphaned
+         */
+        public int getPending() {
+            return pending;
+        }
+
+        @Override
+        public String toString() {
+            return "deleted " + deleted.size() + " orphaned statuses " + deleted.stream().map(TaskID::getValue).collect(Collectors.toList())
+                    + ", unlisted " + unlisted.size() + " removed statuses, " + pending + " pending";
+        }
+    }
+}
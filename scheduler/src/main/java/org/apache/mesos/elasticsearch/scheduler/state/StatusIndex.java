@@ -0,0 +1,89 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos.FrameworkID;
+import org.apache.mesos.Protos.TaskID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The IDs of every task that has a status zNode, {@code <frameworkId>/state/<taskId>}. Held in the
+ * {@code <frameworkId>/state} zNode itself, because Mesos {@code State#names()} only lists the entries directly under the
+ * state root, not the children of a nested zNode.
+ *
+ * A task is added before its first status is written, so every status zNode is listed: new tasks in one batch when
+ * they are committed, tasks missing from the index on their first status write. Entries are removed when
+ * {@link ClusterState} deletes a task, or by {@link StatusCompactor} once the status zNode has gone.
+ */
+final class StatusIndex {
+    private static final Object LOCK = new Object(); // Serialises read-modify-write of the index within this JVM. Rarely taken: see above.
+    private final SerializableState state;
+    private final FrameworkID frameworkID;
+
+    StatusIndex(SerializableState state, FrameworkID frameworkID) {
+        this.state = state;
+        this.frameworkID = frameworkID;
+    }
+
+    /**
+     * @return the listed task IDs. Empty if there is no index, e.g. because it was written by an older scheduler.
+     */
+    List<TaskID> read() throws IOException {
+        final List<TaskID> taskIds = state.get(getKey());
+        return taskIds == null ? new ArrayList<>(0) : new ArrayList<>(taskIds);
+    }
+
+    /**
+     * Lists the task, unless it is listed already.
+     */
+    void add(TaskID taskId) throws IOException {
+        addAll(Collections.singletonList(taskId));
+    }
+
+    /**
+     * Lists the given tasks in a single write. Writes nothing if all of them are listed already.
+     */
+    void addAll(Collection<TaskID> added) throws IOException {
+        synchronized (LOCK) {
+            final List<TaskID> taskIds = read();
+            final Set<TaskID> listed = new HashSet<>(taskIds);
+            boolean changed = false;
+            for (TaskID taskId : added) {
+                if (listed.add(taskId)) {
+                    taskIds.add(taskId);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                write(taskIds);
+            }
+        }
+    }
+
+    /**
+     * Unlists the given tasks. Writes nothing if none of them are listed.
+     */
+    void removeAll(Collection<TaskID> removed) throws IOException {
+        final Set<TaskID> remove = new HashSet<>(removed);
+        synchronized (LOCK) {
+            final List<TaskID> taskIds = read();
+            if (taskIds.removeAll(remove)) {
+                write(taskIds);
+            }
+        }
+    }
+
+    String getKey() {
+        return frameworkID.getValue() + "/" + ESTaskStatus.STATE_KEY;
+    }
+
+    private void write(List<TaskID> taskIds) throws IOException {
+        new StatePath(state).mkdir(getKey());
+        state.set(getKey(), new ArrayList<>(taskIds));
+    }
+}
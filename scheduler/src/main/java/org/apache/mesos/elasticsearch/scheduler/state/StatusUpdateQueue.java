@@ -0,0 +1,156 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.log4j.Logger;
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind queue for task status updates. Updates are coalesced per task so that only the latest status of each
+ * task is written, and writes happen on a background thread instead of the Mesos driver callback thread.
+ *
+ * A status is only acknowledged once a status at least as recent has been written, so Mesos redelivers any update
+ * that was lost before it reached the state store. Statuses that fail to write are not acknowledged, and neither are
+ * statuses dropped because the queue is full, so the driver callback thread never waits on the state store.
+ */
+public class StatusUpdateQueue {
+    private static final Logger LOGGER = Logger.getLogger(StatusUpdateQueue.class);
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Map<String, Pending> pending = new LinkedHashMap<>(); // Guarded by this
+    private final int capacity;
+    private final Consumer<Protos.TaskStatus> writer;
+    private final Consumer<Protos.TaskStatus> acknowledger;
+    private final ExecutorService flusher;
+    private boolean flushing; // Guarded by this
+
+    /**
+     * @param capacity the maximum number of tasks with pending updates. Updates of further tasks are dropped.
+     * @param writer persists a status. Runs on the flusher thread.
+     * @param acknowledger acknowledges a status once it, or a later status of the same task, has been written.
+     */
+    public StatusUpdateQueue(int capacity, Consumer<Protos.TaskStatus> writer, Consumer<Protos.TaskStatus> acknowledger) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.writer = writer;
+        this.acknowledger = acknowledger;
+        this.flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-update-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a status. Replaces any pending status of the same task. If the queue is full and the task has no pending
+     * status, the status is dropped without being acknowledged, and Mesos resends it later.
+     * @return false if the status was dropped
+     */
+    public synchronized boolean offer(Protos.TaskStatus status) {
+        final String taskId = status.getTaskId().getValue();
+        if (!pending.containsKey(taskId) && pending.size() >= capacity) {
+            LOGGER.warn("Status update queue is full. Dropping status of task " + taskId + " until Mesos resends it.");
+            return false;
+        }
+        pending.computeIfAbsent(taskId, id -> new Pending()).add(status);
+        if (!flushing) {
+            flushing = true;
+            flusher.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * @return the latest status queued for the task, if it has not been written yet
+     */
+    public synchronized Optional<Protos.TaskStatus> peek(Protos.TaskID taskId) {
+        final Pending p = pending.get(taskId.getValue());
+        return p == null ? Optional.empty() : Optional.of(p.latest);
+    }
+
+    /**
+     * Drops any pending status of the task without writing it, e.g. because the task has been removed.
+     * @return the dropped statuses, which the caller is responsible for acknowledging
+     */
+    public synchronized List<Protos.TaskStatus> discard(Protos.TaskID taskId) {
+        final Pending p = pending.remove(taskId.getValue());
+        notifyAll();
+        return p == null ? Collections.emptyList() : p.received;
+    }
+
+    /**
+     * Blocks until every queued status has been written.
+     */
+    public synchronized void flush() throws InterruptedException {
+        while (flushing) {
+            wait();
+        }
+    }
+
+    /**
+     * Stops the writer thread. Statuses queued afterwards are not written.
+     */
+    public void shutdown() {
+        flusher.shutdown();
+    }
+
+    private void drain() {
+        while (true) {
+            final Pending next;
+            synchronized (this) {
+                final Iterator<Pending> iterator = pending.values().iterator();
+                if (!iterator.hasNext()) {
+                    flushing = false;
+                    notifyAll();
+                    return;
+                }
+                next = iterator.next();
+                iterator.remove();
+                notifyAll();
+            }
+            write(next);
+        }
+    }
+
+    private void write(Pending next) {
+        try {
+            writer.accept(next.latest);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to write status of task " + next.latest.getTaskId().getValue() + ". Waiting for Mesos to resend it.", e);
+            return;
+        }
+        next.received.forEach(this::acknowledge);
+    }
+
+    private void acknowledge(Protos.TaskStatus status) {
+        try {
+            acknowledger.accept(status);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to acknowledge status of task " + status.getTaskId().getValue(), e);
+        }
+    }
+
+    /**
+     * Statuses of one task received since the last write
+     */
+    private static class Pending {
+        private final List<Protos.TaskStatus> received = new ArrayList<>(3);
+        private Protos.TaskStatus latest;
+
+        void add(Protos.TaskStatus status) {
+            received.add(status);
+            latest = status;
+        }
+    }
+}
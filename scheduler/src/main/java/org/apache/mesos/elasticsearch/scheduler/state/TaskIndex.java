@@ -0,0 +1,63 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos.ExecutorID;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.Protos.TaskID;
+import org.apache.mesos.Protos.TaskInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the task list, indexed by task ID, executor ID and slave ID. A new index is built whenever the
+ * task list changes, so lookups need no lock.
+ */
+final class TaskIndex {
+    static final TaskIndex EMPTY = new TaskIndex(Collections.emptyList());
+    private final List<TaskInfo> tasks;
+    private final Map<String, TaskInfo> byTaskId;
+    private final Map<String, TaskInfo> byExecutorId;
+    private final Map<String, Integer> countBySlaveId;
+
+    TaskIndex(List<TaskInfo> taskInfoList) {
+        tasks = Collections.unmodifiableList(new ArrayList<>(taskInfoList));
+        byTaskId = new HashMap<>(tasks.size() * 2);
+        byExecutorId = new HashMap<>(tasks.size() * 2);
+        countBySlaveId = new HashMap<>(tasks.size() * 2);
+        for (TaskInfo taskInfo : tasks) {
+            // First match wins, as it did when the list was scanned.
+            byTaskId.putIfAbsent(taskInfo.getTaskId().getValue(), taskInfo);
+            byExecutorId.putIfAbsent(taskInfo.getExecutor().getExecutorId().getValue(), taskInfo);
+            countBySlaveId.merge(taskInfo.getSlaveId().getValue(), 1, Integer::sum);
+        }
+    }
+
+    List<TaskInfo> tasks() {
+        return tasks;
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    /**
+     * @return the task, or null if there is none with that ID
+     */
+    TaskInfo get(TaskID taskId) {
+        return byTaskId.get(taskId.getValue());
+    }
+
+    /**
+     * @return the task, or null if there is none with that executor ID
+     */
+    TaskInfo get(ExecutorID executorId) {
+        return byExecutorId.get(executorId.getValue());
+    }
+
+    int countOnSlave(SlaveID slaveId) {
+        return countBySlaveId.getOrDefault(slaveId.getValue(), 0);
+    }
+}
@@ -0,0 +1,55 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class ClusterSnapshotTest {
+    @Test
+    public void shouldAddTaskToNewSnapshotOnly() {
+        final ClusterSnapshot snapshot = ClusterSnapshot.of(Collections.singletonList(task("task1", "slave1")));
+        final ClusterSnapshot next = snapshot.withTask(task("task2", "slave1"));
+
+        assertEquals(1, snapshot.getTaskCount());
+        assertEquals(1, snapshot.countTasksOnSlave(slave("slave1")));
+        assertEquals(2, next.getTaskCount());
+        assertEquals(2, next.countTasksOnSlave(slave("slave1")));
+        assertEquals(0, next.countTasksOnSlave(slave("slave2")));
+        assertEquals("task1", next.getFirstTask().get().getTaskId().getValue());
+    }
+
+    @Test
+    public void shouldHaveNoFirstTaskWhenEmpty() {
+        assertFalse(ClusterSnapshot.of(Collections.emptyList()).getFirstTask().isPresent());
+    }
+
+    @Test
+    public void shouldCheckEachHostOncePerBatch() {
+        final AtomicInteger checks = new AtomicInteger();
+        final ClusterSnapshot snapshot = ClusterSnapshot.of(Collections.emptyList());
+
+        assertTrue(snapshot.checkHost("check", "host1", () -> checks.incrementAndGet() > 0));
+        assertTrue(snapshot.withTask(task("task1", "slave1")).checkHost("check", "host1", () -> checks.incrementAndGet() > 0));
+        snapshot.checkHost("check", "host2", () -> checks.incrementAndGet() > 0);
+        assertEquals(2, checks.get());
+    }
+
+    private Protos.TaskInfo task(String taskId, String slaveId) {
+        return Protos.TaskInfo.newBuilder()
+                .setName("Test")
+                .setTaskId(Protos.TaskID.newBuilder().setValue(taskId))
+                .setSlaveId(slave(slaveId))
+                .build();
+    }
+
+    private Protos.SlaveID slave(String slaveId) {
+        return Protos.SlaveID.newBuilder().setValue(slaveId).build();
+    }
+}
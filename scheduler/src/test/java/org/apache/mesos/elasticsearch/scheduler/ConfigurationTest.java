@@ -1,5 +1,6 @@
 package org.apache.mesos.elasticsearch.scheduler;
 
+import com.beust.jcommander.ParameterException;
 import org.apache.mesos.Protos;
 import org.apache.mesos.elasticsearch.common.cli.ZookeeperCLIParameter;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
@@ -10,7 +11,9 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -205,4 +208,74 @@ public class ConfigurationTest {
         assertFalse(configuration.getMesosMultipleTasksPerHost());
     }
 
+
+    @Test
+    public void shouldDefaultToZookeeperStateBackend() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa");
+        assertEquals(Configuration.STATE_BACKEND_ZOOKEEPER, configuration.getFrameworkStateBackend());
+    }
+
+    @Test
+    public void shouldAcceptFileStateBackend() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.FRAMEWORK_STATE_BACKEND, Configuration.STATE_BACKEND_FILE, Configuration.FRAMEWORK_STATE_DIR, "/tmp/state");
+        assertEquals(Configuration.STATE_BACKEND_FILE, configuration.getFrameworkStateBackend());
+        assertEquals("/tmp/state", configuration.getFrameworkStateDir());
+    }
+
+    @Test(expected = ParameterException.class)
+    public void shouldRejectUnknownStateBackend() {
+        new Configuration.StateBackendValidator().validate(Configuration.FRAMEWORK_STATE_BACKEND, "etcd");
+    }
+
+    @Test(expected = ParameterException.class)
+    public void shouldRejectPersistentVolumesWithoutRole() {
+        new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.FRAMEWORK_PERSISTENT_VOLUMES, "true");
+    }
+
+    @Test
+    public void shouldKeepDataOnPersistentVolume() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.FRAMEWORK_PERSISTENT_VOLUMES, "true", Configuration.FRAMEWORK_ROLE, "es");
+        final Protos.DiscoveryInfo discoveryInfo = Protos.DiscoveryInfo.newBuilder().setPorts(Protos.Ports.newBuilder()
+          .addPorts(Protos.Port.newBuilder().setNumber(1234))
+          .addPorts(Protos.Port.newBuilder().setNumber(1234)))
+          .setVisibility(Protos.DiscoveryInfo.Visibility.EXTERNAL)
+          .build();
+        final List<String> arguments = configuration.esArguments(Mockito.mock(ClusterState.class), discoveryInfo, Protos.SlaveID.newBuilder().setValue("SLAVE").build());
+        assertTrue(arguments.toString().contains(Configuration.CONTAINER_PATH_SANDBOX + "/" + Configuration.PERSISTENT_VOLUME_PATH));
+    }
+
+    @Test
+    public void shouldSetAwarenessAttributesFromAgent() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.ELASTICSEARCH_AWARENESS_ATTRIBUTES, "zone, rack");
+        final Protos.DiscoveryInfo discoveryInfo = Protos.DiscoveryInfo.newBuilder().setPorts(Protos.Ports.newBuilder()
+          .addPorts(Protos.Port.newBuilder().setNumber(1234))
+          .addPorts(Protos.Port.newBuilder().setNumber(1234)))
+          .setVisibility(Protos.DiscoveryInfo.Visibility.EXTERNAL)
+          .build();
+        final Protos.Attribute zone = Protos.Attribute.newBuilder()
+          .setName("zone")
+          .setType(Protos.Value.Type.TEXT)
+          .setText(Protos.Value.Text.newBuilder().setValue("us-east-1a"))
+          .build();
+        final List<String> arguments = configuration.esArguments(Mockito.mock(ClusterState.class), discoveryInfo, Protos.SlaveID.newBuilder().setValue("SLAVE").build(), Collections.singletonList(zone));
+        assertTrue(arguments.contains("-Enode.zone=us-east-1a"));
+        assertTrue(arguments.contains("-Ecluster.routing.allocation.awareness.attributes=zone,rack"));
+    }
+
+    @Test
+    public void shouldUseElasticsearch2NodeAttributeKeys() {
+        Configuration configuration = new Configuration(ZookeeperCLIParameter.ZOOKEEPER_MESOS_URL, "aa", Configuration.ELASTICSEARCH_AWARENESS_ATTRIBUTES, "rack");
+        final Protos.DiscoveryInfo discoveryInfo = Protos.DiscoveryInfo.newBuilder().setPorts(Protos.Ports.newBuilder()
+          .addPorts(Protos.Port.newBuilder().setNumber(1234))
+          .addPorts(Protos.Port.newBuilder().setNumber(1234)))
+          .setVisibility(Protos.DiscoveryInfo.Visibility.EXTERNAL)
+          .build();
+        final Protos.Attribute rack = Protos.Attribute.newBuilder()
+          .setName("rack")
+          .setType(Protos.Value.Type.SCALAR)
+          .setScalar(Protos.Value.Scalar.newBuilder().setValue(2))
+          .build();
+        final List<String> arguments = configuration.esArguments(Mockito.mock(ClusterState.class), discoveryInfo, Protos.SlaveID.newBuilder().setValue("SLAVE").build(), Collections.singletonList(rack));
+        assertEquals(Collections.singletonList("-Enode.rack=2.0"), arguments.stream().filter(argument -> argument.contains("rack=")).collect(Collectors.toList()));
+    }
 }
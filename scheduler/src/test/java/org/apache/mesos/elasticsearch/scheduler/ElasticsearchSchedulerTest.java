@@ -10,14 +10,22 @@ import org.apache.mesos.elasticsearch.scheduler.state.SerializableState;
 import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
-import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static org.apache.mesos.elasticsearch.common.Offers.newOfferBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
@@ -56,10 +64,13 @@ public class ElasticsearchSchedulerTest {
         when(configuration.getTaskName()).thenReturn("esdemo");
         when(configuration.getFrameworkRole()).thenReturn("*");
         when(configuration.getFrameworkName()).thenReturn("FrameworkName");
+        when(configuration.getMesosOfferRefuseSeconds()).thenReturn(300L);
+        when(configuration.getFrameworkOfferEvaluationThreads()).thenReturn(2);
 
         taskInfoFactory = mock(TaskInfoFactory.class);
+        when(offerStrategy.snapshot()).thenReturn(ClusterSnapshot.of(Collections.emptyList()));
 
-        scheduler = new ElasticsearchScheduler(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, serializableState);
+        scheduler = new ElasticsearchScheduler(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, serializableState, new ForkJoinPool(2));
 
         masterInfo = newMasterInfo();
         scheduler.registered(driver, frameworkID, masterInfo);
@@ -71,6 +82,21 @@ public class ElasticsearchSchedulerTest {
         verify(driver).run();
     }
 
+    @Test
+    public void shouldLeadOnlyOnceDriverRunsAndElected() {
+        assertFalse(scheduler.isLeading());
+        scheduler.run(driver);
+        assertTrue(scheduler.isLeading());
+        scheduler.setLeaderElected(() -> false);
+        assertFalse(scheduler.isLeading());
+    }
+
+    @Test
+    public void shouldNotReapTasksBeforeDriverRuns() {
+        scheduler.reapTasks();
+        verify(driver, never()).killTask(any(Protos.TaskID.class));
+    }
+
     @Test
     public void shouldCallObserversWhenExecutorLost() {
         Protos.ExecutorID executorID = ProtoTestUtil.getExecutorId();
@@ -105,18 +131,64 @@ public class ElasticsearchSchedulerTest {
     public void willDeclineOfferIfStrategyDeclinesOffer() {
         Protos.Offer offer = newOffer("host1").build();
 
-        when(offerStrategy.evaluate(offer)).thenReturn(OfferStrategy.OfferResult.decline("Test"));
+        when(offerStrategy.evaluate(eq(offer), any(ClusterSnapshot.class))).thenReturn(OfferStrategy.OfferResult.decline("Test"));
         when(frameworkState.isRegistered()).thenReturn(true);
 
         scheduler.resourceOffers(driver, singletonList(offer));
 
-        verify(driver).declineOffer(offer.getId());
+        verify(driver).declineOffer(offer.getId(), Protos.Filters.newBuilder().setRefuseSeconds(5).build());
+        verify(driver, never()).suppressOffers();
+    }
+
+    @Test
+    public void shouldSuppressOffersOnceClusterIsFull() {
+        Protos.Offer offer = newOffer("host1").build();
+        when(clusterState.getTaskCount()).thenReturn(3);
+        when(frameworkState.isRegistered()).thenReturn(true);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        verify(driver, times(2)).declineOffer(offer.getId(), Protos.Filters.newBuilder().setRefuseSeconds(300).build());
+        verify(driver, times(1)).suppressOffers();
+        verify(offerStrategy, never()).evaluate(any(), any());
+    }
+
+    @Test
+    public void shouldReviveOffersWhenTaskIsLost() {
+        when(clusterState.getTaskCount()).thenReturn(3);
+        when(frameworkState.isRegistered()).thenReturn(true);
+        scheduler.resourceOffers(driver, singletonList(newOffer("host1").build()));
+
+        scheduler.statusUpdate(driver, ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_LOST));
+        verify(driver).reviveOffers();
+
+        scheduler.resourceOffers(driver, singletonList(newOffer("host2").build()));
+        verify(driver, times(2)).suppressOffers();
+    }
+
+    @Test
+    public void shouldNotReviveOffersOnRunningTask() {
+        scheduler.statusUpdate(driver, ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
+        verify(driver, never()).reviveOffers();
+    }
+
+    @Test
+    public void shouldReviveOffersWhenClusterGrows() {
+        when(frameworkState.getDriver()).thenReturn(driver);
+        when(clusterState.getTaskCount()).thenReturn(3);
+        scheduler.clusterSizeChanged();
+        verify(driver, never()).reviveOffers();
+
+        when(configuration.getElasticsearchNodes()).thenReturn(4);
+        scheduler.clusterSizeChanged();
+        verify(driver).reviveOffers();
     }
 
     @Test
     public void testResourceOffers_launchTasks() {
         final Protos.Offer offer = newOffer("host3").build();
-        when(offerStrategy.evaluate(offer)).thenReturn(OfferStrategy.OfferResult.accept());
+        when(offerStrategy.evaluate(eq(offer), any(ClusterSnapshot.class))).thenReturn(OfferStrategy.OfferResult.accept());
         when(frameworkState.isRegistered()).thenReturn(true);
 
         Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
@@ -125,7 +197,36 @@ public class ElasticsearchSchedulerTest {
 
         scheduler.resourceOffers(driver, singletonList(offer));
 
-        verify(driver).launchTasks(singleton(offer.getId()), singleton(taskInfo));
+        verify(driver).launchTasks(singletonList(offer.getId()), singletonList(taskInfo));
+        verify(clusterState).stageTask(taskInfo);
+        verify(clusterState).commitStagedTasks();
+    }
+
+    @Test
+    public void shouldReserveAndCreateVolumeWithLaunch() {
+        when(configuration.getFrameworkPersistentVolumes()).thenReturn(true);
+        when(configuration.getFrameworkRole()).thenReturn("es");
+        when(configuration.getFrameworkPrincipal()).thenReturn("");
+        when(configuration.getElasticsearchClusterName()).thenReturn("cluster");
+        when(configuration.getDisk()).thenReturn(100.0);
+        final Protos.Offer offer = newOffer("host3").addResources(Resources.disk(1000, "*")).build();
+        when(offerStrategy.evaluate(eq(offer), any(ClusterSnapshot.class))).thenReturn(OfferStrategy.OfferResult.accept());
+        when(frameworkState.isRegistered()).thenReturn(true);
+        final Protos.TaskInfo taskInfo = Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo()).addResources(Resources.disk(100, "*")).build();
+        when(taskInfoFactory.createTask(any(), any(), any(), any())).thenReturn(taskInfo);
+
+        scheduler.resourceOffers(driver, singletonList(offer));
+
+        final ArgumentCaptor<Collection<Protos.Offer.Operation>> operations = collectionCaptor();
+        verify(driver).acceptOffers(eq(singletonList(offer.getId())), operations.capture(), any(Protos.Filters.class));
+        verify(driver, never()).launchTasks(anyCollectionOf(Protos.OfferID.class), anyCollectionOf(Protos.TaskInfo.class));
+        assertEquals(Arrays.asList(Protos.Offer.Operation.Type.RESERVE, Protos.Offer.Operation.Type.CREATE, Protos.Offer.Operation.Type.LAUNCH),
+                operations.getValue().stream().map(Protos.Offer.Operation::getType).collect(Collectors.toList()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArgumentCaptor<Collection<T>> collectionCaptor() {
+        return ArgumentCaptor.forClass((Class<Collection<T>>) (Class<?>) Collection.class);
     }
 
     private Protos.Offer.Builder newOffer(String hostname) {
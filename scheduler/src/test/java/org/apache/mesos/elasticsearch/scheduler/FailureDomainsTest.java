@@ -0,0 +1,137 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests
+ */
+public class FailureDomainsTest {
+    private final Configuration configuration = mock(Configuration.class);
+    private final AtomicLong now = new AtomicLong();
+    private FailureDomains failureDomains;
+
+    @Before
+    public void before() {
+        when(configuration.getElasticsearchAwarenessAttributes()).thenReturn(Collections.singletonList("zone"));
+        when(configuration.getMesosOfferRefuseSeconds()).thenReturn(300L);
+        failureDomains = new FailureDomains(configuration, now::get);
+    }
+
+    @Test
+    public void shouldPreferZoneWithFewerNodes() {
+        failureDomains.observe(offer("slave1", "a"));
+        failureDomains.observe(offer("slave2", "b"));
+        ClusterSnapshot snapshot = ClusterSnapshot.of(Collections.singletonList(task("slave1", "a")));
+
+        assertFalse(failureDomains.isLeastLoaded(offer("slave3", "a"), snapshot));
+        assertTrue(failureDomains.isLeastLoaded(offer("slave2", "b"), snapshot));
+        assertTrue(failureDomains.isLeastLoaded(offer("slave3", "a"), snapshot.withTask(task("slave2", "b"))));
+    }
+
+    @Test
+    public void shouldForgetZoneWithoutOffers() {
+        failureDomains.observe(offer("slave1", "a"));
+        failureDomains.observe(offer("slave2", "b"));
+        ClusterSnapshot snapshot = ClusterSnapshot.of(Collections.singletonList(task("slave1", "a")));
+
+        now.set(600001L);
+        failureDomains.observe(offer("slave3", "a"));
+
+        assertTrue(failureDomains.isLeastLoaded(offer("slave3", "a"), snapshot));
+    }
+
+    @Test
+    public void shouldNotLetFullZoneHoldBackOthers() {
+        when(configuration.getElasticsearchNodes()).thenReturn(4);
+        final OfferStrategy offerStrategy = new OfferStrategyNormal(configuration, mock(ClusterState.class), mock(HealthMonitor.class));
+        offerStrategy.failureDomains = failureDomains;
+        ClusterSnapshot snapshot = ClusterSnapshot.of(Collections.emptyList());
+
+        // Zone a has a single agent, so it is full after one node, but the agent keeps being offered.
+        for (int round = 0; round < 5 && snapshot.getTaskCount() < 4; round++) {
+            now.set(TimeUnit.SECONDS.toMillis(300L * round));
+            for (Protos.Offer offer : Arrays.asList(validOffer("slave1", "a"), validOffer("slave2", "b"), validOffer("slave3", "b"), validOffer("slave4", "b"))) {
+                if (offerStrategy.evaluate(offer, snapshot).acceptable) {
+                    snapshot = snapshot.withTask(task(offer.getSlaveId().getValue(), FailureDomains.value(offer.getAttributesList(), "zone").get()));
+                }
+            }
+        }
+
+        assertEquals(4, snapshot.getTaskCount());
+    }
+
+    @Test
+    public void shouldRequireEveryAwarenessAttribute() {
+        when(configuration.getElasticsearchAwarenessAttributes()).thenReturn(Arrays.asList("zone", "rack"));
+
+        assertFalse(failureDomains.hasAttributes(offer("slave1", "a")));
+        assertTrue(failureDomains.hasAttributes(offer("slave1", "a").toBuilder().addAttributes(Protos.Attribute.newBuilder()
+                .setName("rack")
+                .setType(Protos.Value.Type.SCALAR)
+                .setScalar(Protos.Value.Scalar.newBuilder().setValue(2))).build()));
+    }
+
+    @Test
+    public void shouldAcceptAnyOfferWithoutAwareness() {
+        when(configuration.getElasticsearchAwarenessAttributes()).thenReturn(Collections.emptyList());
+        failureDomains.observe(offer("slave2", "b"));
+
+        assertTrue(failureDomains.hasAttributes(offer("slave1", "a")));
+        assertTrue(failureDomains.isLeastLoaded(offer("slave1", "a"), ClusterSnapshot.of(Collections.singletonList(task("slave1", "a")))));
+        assertEquals(0, FailureDomains.labels(configuration, offer("slave1", "a")).getLabelsCount());
+    }
+
+    @Test
+    public void shouldLabelTaskWithZone() {
+        Protos.Labels labels = FailureDomains.labels(configuration, offer("slave1", "a"));
+
+        assertEquals(1, labels.getLabelsCount());
+        assertEquals("attr.zone", labels.getLabels(0).getKey());
+        assertEquals("a", labels.getLabels(0).getValue());
+    }
+
+    private Protos.Offer offer(String slaveId, String zone) {
+        return Protos.Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("offer-" + slaveId))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("framework"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(slaveId))
+                .setHostname(slaveId)
+                .addAttributes(Protos.Attribute.newBuilder()
+                        .setName("zone")
+                        .setType(Protos.Value.Type.TEXT)
+                        .setText(Protos.Value.Text.newBuilder().setValue(zone)))
+                .build();
+    }
+
+    private Protos.Offer validOffer(String slaveId, String zone) {
+        return offer(slaveId, zone).toBuilder()
+                .setHostname("localhost")
+                .addResources(Resources.cpus(1, "*"))
+                .addResources(Resources.mem(1, "*"))
+                .addResources(Resources.disk(1, "*"))
+                .addResources(Resources.portRange(31000, 31001, "*"))
+                .build();
+    }
+
+    private Protos.TaskInfo task(String slaveId, String zone) {
+        return Protos.TaskInfo.newBuilder()
+                .setName("task")
+                .setTaskId(Protos.TaskID.newBuilder().setValue("task-" + slaveId))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(slaveId))
+                .setLabels(FailureDomains.labels(configuration, offer(slaveId, zone)))
+                .build();
+    }
+}
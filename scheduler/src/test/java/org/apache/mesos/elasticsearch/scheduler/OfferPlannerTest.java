@@ -0,0 +1,222 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.InMemorySerializableState;
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.apache.mesos.elasticsearch.common.Offers.newOfferBuilder;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class OfferPlannerTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID = Protos.FrameworkID.newBuilder().setValue("FrameworkID").build();
+    private final Configuration configuration = mock(Configuration.class);
+    private final InMemorySerializableState state = new InMemorySerializableState();
+    private final FrameworkState frameworkState = new FrameworkState(state);
+    private final ClusterState clusterState = new ClusterState(state, frameworkState);
+    private final TaskInfoFactory taskInfoFactory = mock(TaskInfoFactory.class);
+    private final OfferStrategy offerStrategy = mock(OfferStrategy.class);
+    private final OfferPlanner planner = new OfferPlanner(configuration, frameworkState, clusterState, taskInfoFactory, offerStrategy, new ForkJoinPool(2));
+
+    @Before
+    public void before() {
+        frameworkState.markRegistered(FRAMEWORK_ID, null);
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(offerStrategy.snapshot()).thenAnswer(invocation -> ClusterSnapshot.of(clusterState));
+        when(offerStrategy.evaluate(any(Protos.Offer.class), any(ClusterSnapshot.class))).thenAnswer(this::rules);
+        when(offerStrategy.recheck(any(Protos.Offer.class), any(ClusterSnapshot.class))).thenAnswer(this::rules);
+        when(taskInfoFactory.createTask(any(), any(), any(), any())).thenAnswer(invocation -> {
+            final Protos.Offer offer = (Protos.Offer) invocation.getArguments()[2];
+            final List<Integer> ports = Resources.selectTwoPortsFromRange(offer.getResourcesList());
+            return Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo())
+                    .setTaskId(Protos.TaskID.newBuilder().setValue("task" + clusterState.getTaskCount()))
+                    .setSlaveId(offer.getSlaveId())
+                    .clearResources()
+                    .addResources(Resources.cpus(1.0, "*"))
+                    .addResources(Resources.singlePortRange(ports.get(0), "*"))
+                    .addResources(Resources.singlePortRange(ports.get(1), "*"))
+                    .build();
+        });
+    }
+
+    @Test
+    public void shouldPlanOneTaskPerOfferAcrossTheBatch() {
+        Protos.Offer offer1 = offer("offer1", "slave1", 4);
+        Protos.Offer offer2 = offer("offer2", "slave2", 4);
+        Protos.Offer offer3 = offer("offer3", "slave3", 0.5);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(offer1, offer2, offer3), new Clock());
+
+        assertEquals(2, plan.getLaunches().size());
+        assertEquals(Collections.singletonList(offer1.getId()), plan.getLaunches().get(0).getOfferIds());
+        assertEquals(1, plan.getLaunches().get(0).getTasks().size());
+        assertEquals(Collections.singletonList(offer2.getId()), plan.getLaunches().get(1).getOfferIds());
+        assertEquals("Offer did not have enough CPU resources", plan.getDeclines().get(offer3).reason.get());
+        assertEquals(2, clusterState.getTaskCount());
+        verify(taskInfoFactory, times(2)).createTask(any(), any(), any(), any());
+    }
+
+    @Test
+    public void shouldPlanSeveralTasksPerOfferWhenAllowed() {
+        when(configuration.getMesosMultipleTasksPerHost()).thenReturn(true);
+        Protos.Offer offer1 = offer("offer1", "slave1", 2.5);
+        Protos.Offer offer2 = offer("offer2", "slave1", 4);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(offer1, offer2), new Clock());
+
+        assertEquals(1, plan.getLaunches().size());
+        OfferPlanner.Launch launch = plan.getLaunches().get(0);
+        assertEquals(Arrays.asList(offer1.getId(), offer2.getId()), launch.getOfferIds());
+        assertEquals(3, launch.getTasks().size());
+        assertTrue(plan.getDeclines().isEmpty());
+        assertEquals(launch.getTasks().get(0).getSlaveId(), launch.getTasks().get(1).getSlaveId());
+        assertNotEquals(port(launch.getTasks().get(0)), port(launch.getTasks().get(1)));
+    }
+
+    @Test
+    public void shouldNotReserveResourcesTwiceForTasksOnOneOffer() {
+        when(configuration.getMesosMultipleTasksPerHost()).thenReturn(true);
+        when(configuration.getFrameworkPersistentVolumes()).thenReturn(true);
+        when(configuration.getFrameworkRole()).thenReturn("es");
+        when(configuration.getFrameworkPrincipal()).thenReturn("principal");
+        when(configuration.getDisk()).thenReturn(100.0);
+        Protos.Offer offer = newOfferBuilder("offer1", "host", "slave1", FRAMEWORK_ID)
+                .addResources(Resources.cpus(4, "*"))
+                .addResources(Resources.portRange(31000, 31010, "*"))
+                .addResources(Resources.disk(50, "es")) // Reserved, but too small for a volume
+                .addResources(Resources.disk(250, "*"))
+                .build();
+
+        OfferPlanner.Plan plan = planner.plan(Collections.singletonList(offer), new Clock());
+
+        assertEquals(2, plan.getLaunches().get(0).getTasks().size());
+        final List<Protos.Resource> reserved = plan.getLaunches().get(0).getOperations().stream()
+                .filter(operation -> operation.getType() == Protos.Offer.Operation.Type.RESERVE)
+                .flatMap(operation -> operation.getReserve().getResourcesList().stream())
+                .collect(Collectors.toList());
+        assertEquals(200.0, new ResourceCheck(Resources.RESOURCE_DISK).total(reserved), 0.0001);
+        assertEquals(2.0, new ResourceCheck(Resources.RESOURCE_CPUS).total(reserved), 0.0001);
+    }
+
+    @Test
+    public void shouldDeclineEveryOfferOnceClusterIsFull() {
+        when(configuration.getElasticsearchNodes()).thenReturn(0);
+        Protos.Offer offer1 = offer("offer1", "slave1", 4);
+
+        OfferPlanner.Plan plan = planner.plan(Collections.singletonList(offer1), new Clock());
+
+        assertTrue(plan.getLaunches().isEmpty());
+        assertEquals(OfferStrategy.CLUSTER_SIZE_FULFILLED, plan.getDeclines().get(offer1).reason.get());
+        assertEquals(OfferStrategy.Refusal.UNTIL_CLUSTER_CHANGES, plan.getDeclines().get(offer1).refusal);
+        verify(offerStrategy, never()).evaluate(any(Protos.Offer.class), any(ClusterSnapshot.class));
+    }
+
+    @Test
+    public void shouldResolveConflictingAcceptsWhenPlanning() {
+        when(configuration.getElasticsearchNodes()).thenReturn(1);
+        Protos.Offer offer1 = offer("offer1", "slave1", 4);
+        Protos.Offer offer2 = offer("offer2", "slave2", 4);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(offer1, offer2), new Clock());
+
+        assertEquals(1, plan.getLaunches().size());
+        assertEquals(Collections.singletonList(offer1.getId()), plan.getLaunches().get(0).getOfferIds());
+        assertEquals(OfferStrategy.CLUSTER_SIZE_FULFILLED, plan.getDeclines().get(offer2).reason.get());
+        verify(offerStrategy).evaluate(eq(offer2), any(ClusterSnapshot.class)); // Accepted concurrently, then refused when planned.
+        assertEquals(1, clusterState.getTaskCount());
+    }
+
+    @Test
+    public void shouldReuseConcurrentEvaluationForAcceptedOffers() {
+        Protos.Offer offer1 = offer("offer1", "slave1", 4);
+        Protos.Offer offer2 = offer("offer2", "slave2", 4);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(offer1, offer2), new Clock());
+
+        assertEquals(2, plan.getLaunches().size());
+        verify(offerStrategy, times(1)).evaluate(eq(offer1), any(ClusterSnapshot.class));
+        verify(offerStrategy, times(1)).evaluate(eq(offer2), any(ClusterSnapshot.class));
+        verify(offerStrategy, never()).recheck(eq(offer1), any(ClusterSnapshot.class)); // Planned first, against the batch snapshot.
+        verify(offerStrategy).recheck(eq(offer2), any(ClusterSnapshot.class));
+    }
+
+    @Test
+    public void shouldDeclineOffersThatFailConcurrentEvaluation() {
+        Protos.Offer offer1 = offer("offer1", "slave1", 0.5);
+        Protos.Offer offer2 = offer("offer2", "slave2", 4);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(offer1, offer2), new Clock());
+
+        assertEquals("Offer did not have enough CPU resources", plan.getDeclines().get(offer1).reason.get());
+        verify(offerStrategy, times(1)).evaluate(eq(offer1), any(ClusterSnapshot.class));
+        assertEquals(1, plan.getLaunches().size());
+    }
+
+    @Test
+    public void shouldGiveLastSlotToBestOffer() {
+        when(configuration.getElasticsearchNodes()).thenReturn(1);
+        when(configuration.getCpus()).thenReturn(1.0);
+        when(configuration.getMesosOfferWeightCpus()).thenReturn(1.0);
+        Protos.Offer small = offer("offer1", "slave1", 2);
+        Protos.Offer large = offer("offer2", "slave2", 32);
+
+        OfferPlanner.Plan plan = planner.plan(Arrays.asList(small, large), new Clock());
+
+        assertEquals(Collections.singletonList(large.getId()), plan.getLaunches().get(0).getOfferIds());
+        assertTrue(plan.getDeclines().containsKey(small));
+    }
+
+    @Test
+    public void shouldDiscardStagedTasksWhenPlanningFails() {
+        doReturn(Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue("task0")).build())
+                .doThrow(new IllegalStateException("Test exception"))
+                .when(taskInfoFactory).createTask(any(), any(), any(), any());
+        try {
+            planner.plan(Arrays.asList(offer("offer1", "slave1", 4), offer("offer2", "slave2", 4)), new Clock());
+            fail("Expected planning to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(0, clusterState.getTaskCount());
+            assertTrue(clusterState.commitStagedTasks().isEmpty());
+        }
+    }
+
+    private OfferStrategy.OfferResult rules(InvocationOnMock invocation) {
+        final Protos.Offer offer = (Protos.Offer) invocation.getArguments()[0];
+        final ClusterSnapshot snapshot = (ClusterSnapshot) invocation.getArguments()[1];
+        if (snapshot.getTaskCount() >= configuration.getElasticsearchNodes()) {
+            return OfferStrategy.OfferResult.decline("Cluster size already fulfilled");
+        } else if (!new ResourceCheck(Resources.RESOURCE_CPUS).isEnough(offer.getResourcesList(), 1.0)) {
+            return OfferStrategy.OfferResult.decline("Offer did not have enough CPU resources");
+        } else if (configuration.getFrameworkPersistentVolumes() && !new PersistentVolumes(configuration).canHoldVolume(offer.getResourcesList())) {
+            return OfferStrategy.OfferResult.decline("Offer did not have a disk to hold a persistent volume");
+        }
+        return OfferStrategy.OfferResult.accept();
+    }
+
+    private long port(Protos.TaskInfo taskInfo) {
+        return taskInfo.getResourcesList().stream().filter(resource -> resource.getName().equals(Resources.RESOURCE_PORTS)).findFirst().get().getRanges().getRange(0).getBegin();
+    }
+
+    private Protos.Offer offer(String offerId, String slaveId, double cpus) {
+        return newOfferBuilder(offerId, "host", slaveId, FRAMEWORK_ID)
+                .addResources(Resources.cpus(cpus, "*"))
+                .addResources(Resources.portRange(31000, 31010, "*"))
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.apache.mesos.elasticsearch.common.Offers.newOfferBuilder;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests
+ */
+public class OfferScorerTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID = Protos.FrameworkID.newBuilder().setValue("FrameworkID").build();
+    private final Configuration configuration = mock(Configuration.class);
+    private final OfferScorer scorer = new OfferScorer(configuration);
+    private final ClusterSnapshot emptySnapshot = ClusterSnapshot.of(Collections.emptyList());
+
+    @Before
+    public void before() {
+        when(configuration.getCpus()).thenReturn(1.0);
+        when(configuration.getMem()).thenReturn(256.0);
+        when(configuration.getDisk()).thenReturn(1024.0);
+        when(configuration.getMesosOfferWeightMem()).thenReturn(1.0);
+        when(configuration.getMesosOfferWeightDisk()).thenReturn(0.5);
+        when(configuration.getMesosOfferWeightCpus()).thenReturn(0.5);
+        when(configuration.getMesosOfferWeightLoad()).thenReturn(1.0);
+    }
+
+    @Test
+    public void shouldPreferIdleHostOverLeftovers() {
+        Protos.Offer leftover = offer("offer1", "slave1", 2, 512, 2048);
+        Protos.Offer idle = offer("offer2", "slave2", 32, 65536, 512000);
+
+        assertEquals(Arrays.asList(idle, leftover), scorer.rank(Arrays.asList(leftover, idle), emptySnapshot));
+    }
+
+    @Test
+    public void shouldCountExistingTasksAgainstHost() {
+        Protos.Offer busy = offer("offer1", "slave1", 4, 1024, 4096);
+        Protos.Offer free = offer("offer2", "slave2", 4, 1024, 4096);
+        ClusterSnapshot snapshot = emptySnapshot.withTask(Protos.TaskInfo.newBuilder()
+                .setName("Test")
+                .setTaskId(Protos.TaskID.newBuilder().setValue("task1"))
+                .setSlaveId(busy.getSlaveId())
+                .build());
+
+        assertEquals(Arrays.asList(free, busy), scorer.rank(Arrays.asList(busy, free), snapshot));
+        assertEquals(0.5, scorer.score(free, snapshot) - scorer.score(busy, snapshot), 0.0001);
+    }
+
+    @Test
+    public void shouldPackHostsWithNegativeWeights() {
+        when(configuration.getMesosOfferWeightMem()).thenReturn(-1.0);
+        Protos.Offer leftover = offer("offer1", "slave1", 2, 512, 2048);
+        Protos.Offer idle = offer("offer2", "slave2", 2, 65536, 2048);
+
+        assertEquals(Arrays.asList(leftover, idle), scorer.rank(Arrays.asList(idle, leftover), emptySnapshot));
+    }
+
+    @Test
+    public void shouldKeepOrderOfEqualOffers() {
+        Protos.Offer offer1 = offer("offer1", "slave1", 4, 1024, 4096);
+        Protos.Offer offer2 = offer("offer2", "slave2", 4, 1024, 4096);
+
+        assertEquals(Arrays.asList(offer1, offer2), scorer.rank(Arrays.asList(offer1, offer2), emptySnapshot));
+    }
+
+    @Test
+    public void shouldHaveNoSpareResourceIfNoneIsOffered() {
+        assertEquals(0.0, OfferScorer.spare(Collections.emptyList(), Resources.RESOURCE_MEM, 256), 0.0);
+        assertEquals(0.0, OfferScorer.spare(Collections.singletonList(Resources.mem(128, "*")), Resources.RESOURCE_MEM, 256), 0.0);
+        assertEquals(0.75, OfferScorer.spare(Collections.singletonList(Resources.mem(1024, "*")), Resources.RESOURCE_MEM, 256), 0.0);
+    }
+
+    private Protos.Offer offer(String offerId, String slaveId, double cpus, double mem, double disk) {
+        return newOfferBuilder(offerId, "host", slaveId, FRAMEWORK_ID)
+                .addResources(Resources.cpus(cpus, "*"))
+                .addResources(Resources.mem(mem, "*"))
+                .addResources(Resources.disk(disk, "*"))
+                .build();
+    }
+}
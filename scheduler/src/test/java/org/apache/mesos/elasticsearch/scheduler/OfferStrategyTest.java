@@ -2,6 +2,7 @@ package org.apache.mesos.elasticsearch.scheduler;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
 import org.apache.mesos.elasticsearch.scheduler.state.ESTaskStatus;
 import org.junit.Before;
@@ -12,9 +13,9 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import static java.util.Arrays.asList;
-import static java.util.Collections.singletonList;
 import static org.apache.mesos.elasticsearch.scheduler.Resources.*;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -34,6 +35,9 @@ public class OfferStrategyTest {
     @Mock
     ClusterState clusterState;
 
+    @Mock
+    HealthMonitor healthMonitor;
+
     @InjectMocks
     OfferStrategyNormal offerStrategy;
 
@@ -47,16 +51,25 @@ public class OfferStrategyTest {
     
     @Test
     public void willDeclineIfHostIsAlreadyRunningTask() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(singletonList(createTask("host1")));
+        givenTasks(createTask("host1"));
 
         final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(validOffer("host1"));
         assertFalse(result.acceptable);
         assertEquals("Host already running task", result.reason.get());
     }
 
+    @Test
+    public void willDeclineIfAgentLacksAwarenessAttribute() throws Exception {
+        when(configuration.getElasticsearchAwarenessAttributes()).thenReturn(Collections.singletonList("zone"));
+
+        final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(validOffer("host1"));
+        assertFalse(result.acceptable);
+        assertEquals("Agent lacks an awareness attribute", result.reason.get());
+    }
+
     @Test
     public void willDeclineIfClusterSizeIsFulfilled() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2"), createTask("host3")));
+        givenTasks(createTask("host1"), createTask("host2"), createTask("host3"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
 
         final OfferStrategyNormal.OfferResult result = offerStrategy.evaluate(validOffer("host4"));
@@ -66,7 +79,7 @@ public class OfferStrategyTest {
 
     @Test
     public void willDeclineIfOfferDoesNotHaveTwoPorts() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
 
         final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(baseOfferBuilder("host3")
@@ -78,7 +91,7 @@ public class OfferStrategyTest {
 
     @Test
     public void shouldDeclineIfUserPortsNotAvailable() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getElasticsearchPorts()).thenReturn(Arrays.asList(9200, 9300));
 
@@ -91,7 +104,7 @@ public class OfferStrategyTest {
 
     @Test
     public void shouldDeclineIfOneOfUserPortsNotAvailable() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getElasticsearchPorts()).thenReturn(Arrays.asList(31000, 9300));
 
@@ -104,7 +117,7 @@ public class OfferStrategyTest {
 
     @Test
     public void shouldAcceptIfUserPortsAreAvailable() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getElasticsearchPorts()).thenReturn(Arrays.asList(9200, 9300));
 
@@ -120,7 +133,7 @@ public class OfferStrategyTest {
 
     @Test
     public void willDeclineIfOfferDoesNotEnoughCpu() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getCpus()).thenReturn(1.0);
 
@@ -134,7 +147,7 @@ public class OfferStrategyTest {
     }
     @Test
     public void willDeclineIfOfferDoesNotEnoughMem() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getMem()).thenReturn(100.0);
 
@@ -150,7 +163,7 @@ public class OfferStrategyTest {
 
     @Test
     public void willDeclineIfOfferDoesNotEnoughDisk() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         when(configuration.getDisk()).thenReturn(100.0);
 
@@ -167,7 +180,7 @@ public class OfferStrategyTest {
 
     @Test
     public void willAcceptValidOffer() throws Exception {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
 
         final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(baseOfferBuilder("host3")
@@ -183,7 +196,7 @@ public class OfferStrategyTest {
 
     @Test
     public void shouldDeclineWhenHostIsUnresolveable() throws InvalidProtocolBufferException {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(baseOfferBuilder("host3")
                 .addResources(portRange(9200, 9200, configuration.getFrameworkRole()))
@@ -198,7 +211,7 @@ public class OfferStrategyTest {
 
     @Test
     public void shouldAcceptWhenHostIsResolveable() throws InvalidProtocolBufferException {
-        when(clusterState.getTaskList()).thenReturn(asList(createTask("host1"), createTask("host2")));
+        givenTasks(createTask("host1"), createTask("host2"));
         when(configuration.getElasticsearchNodes()).thenReturn(3);
         final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(baseOfferBuilder("host3")
                 .addResources(portRange(9200, 9200, configuration.getFrameworkRole()))
@@ -210,6 +223,69 @@ public class OfferStrategyTest {
         assertTrue(offerResult.acceptable);
     }
 
+    @Test
+    public void shouldDeclineWhileFirstNodeIsUnhealthy() throws InvalidProtocolBufferException {
+        givenTasks(createTask("host1"));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+        when(configuration.getMesosOfferWaitForRunning()).thenReturn(true);
+
+        final Protos.Offer offer = baseOfferBuilder("host2")
+                .addResources(portRange(9200, 9200, configuration.getFrameworkRole()))
+                .addResources(portRange(9300, 9300, configuration.getFrameworkRole()))
+                .addResources(cpus(configuration.getCpus(), configuration.getFrameworkRole()))
+                .addResources(mem(configuration.getMem(), configuration.getFrameworkRole()))
+                .addResources(disk(configuration.getDisk(), configuration.getFrameworkRole()))
+                .build();
+
+        final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(offer);
+        assertFalse(offerResult.acceptable);
+        assertEquals("First ES node is not responding", offerResult.reason.get());
+
+        when(healthMonitor.isHealthyOrCheck("TestId")).thenReturn(true);
+        assertTrue(offerStrategy.evaluate(offer).acceptable);
+    }
+
+    @Test
+    public void shouldRunCheapRulesBeforeResolvingHostname() throws InvalidProtocolBufferException {
+        givenTasks(createTask("host1"));
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+
+        final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(baseOfferBuilder("host2")
+                .setHostname("NonResolvableHostname")
+                .build());
+        assertEquals("Offer did not have 2 ports", offerResult.reason.get());
+        assertFalse(offerStrategy.getRuleMetrics().containsKey("Hostname is unresolveable"));
+    }
+
+    @Test
+    public void shouldRecordRuleTimings() throws InvalidProtocolBufferException {
+        givenTasks(createTask("host1"));
+        when(configuration.getElasticsearchNodes()).thenReturn(1);
+
+        offerStrategy.evaluate(validOffer("host2"));
+
+        assertEquals(1, offerStrategy.getRuleMetrics().get("Host already running task").getEvaluations());
+        assertEquals(0, offerStrategy.getRuleMetrics().get("Host already running task").getDeclines());
+        assertEquals(1, offerStrategy.getRuleMetrics().get("Cluster size already fulfilled").getDeclines());
+    }
+
+    @Test
+    public void shouldEvaluateAgainstGivenSnapshot() throws InvalidProtocolBufferException {
+        givenTasks();
+        when(configuration.getElasticsearchNodes()).thenReturn(3);
+
+        final ClusterSnapshot snapshot = ClusterSnapshot.of(clusterState).withTask(createTask("host1"));
+        final OfferStrategyNormal.OfferResult offerResult = offerStrategy.evaluate(validOffer("host1"), snapshot);
+        assertEquals("Host already running task", offerResult.reason.get());
+    }
+
+    private void givenTasks(Protos.TaskInfo... tasks) {
+        when(clusterState.getTaskList()).thenReturn(asList(tasks));
+        when(clusterState.getTaskCount()).thenReturn(tasks.length);
+        when(clusterState.countTasksOnSlave(any(Protos.SlaveID.class))).thenAnswer(invocation ->
+                (int) Arrays.stream(tasks).filter(task -> task.getSlaveId().equals(invocation.getArguments()[0])).count());
+    }
+
     private Protos.TaskInfo createTask(String hostname) throws InvalidProtocolBufferException {
         return Protos.TaskInfo.newBuilder()
                 .setName("Test")
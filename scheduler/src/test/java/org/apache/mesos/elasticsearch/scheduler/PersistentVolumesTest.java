@@ -0,0 +1,115 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests
+ */
+public class PersistentVolumesTest {
+    private final Configuration configuration = mock(Configuration.class);
+    private PersistentVolumes persistentVolumes;
+
+    @Before
+    public void before() {
+        when(configuration.getFrameworkRole()).thenReturn("es");
+        when(configuration.getFrameworkPrincipal()).thenReturn("principal");
+        when(configuration.getFrameworkName()).thenReturn("elasticsearch");
+        when(configuration.getElasticsearchClusterName()).thenReturn("cluster");
+        when(configuration.getDisk()).thenReturn(100.0);
+        persistentVolumes = new PersistentVolumes(configuration);
+    }
+
+    @Test
+    public void shouldReserveAndCreateNewVolume() {
+        Protos.Offer offer = offer(Resources.cpus(1, "*"), Resources.disk(1000, "*"));
+        Protos.TaskInfo task = task(Resources.cpus(1, "*"), Resources.disk(100, "*"));
+
+        PersistentVolumes.Preparation preparation = persistentVolumes.prepare(offer, task);
+
+        List<Protos.Offer.Operation> operations = preparation.getOperations();
+        assertEquals(2, operations.size());
+        assertEquals(Protos.Offer.Operation.Type.RESERVE, operations.get(0).getType());
+        assertEquals(2, operations.get(0).getReserve().getResourcesCount());
+        assertEquals(Protos.Offer.Operation.Type.CREATE, operations.get(1).getType());
+        Protos.Resource volume = operations.get(1).getCreate().getVolumes(0);
+        assertEquals("es", volume.getRole());
+        assertEquals("principal", volume.getReservation().getPrincipal());
+        assertEquals(100, volume.getScalar().getValue(), 0.0001);
+        assertTrue(volume.getDisk().getPersistence().getId().startsWith("elasticsearch.cluster."));
+        assertEquals(Configuration.PERSISTENT_VOLUME_PATH, volume.getDisk().getVolume().getContainerPath());
+        assertTrue(preparation.getTask().getResourcesList().stream().allMatch(resource -> resource.getRole().equals("es")));
+        assertTrue(preparation.getTask().getResourcesList().contains(volume));
+    }
+
+    @Test
+    public void shouldReuseExistingVolume() {
+        Protos.Resource volume = volume("elasticsearch.cluster.1");
+        Protos.Offer offer = offer(Resources.cpus(1, "es"), volume, Resources.disk(1000, "*"));
+        Protos.TaskInfo task = task(Resources.cpus(1, "es"), Resources.disk(100, "*"));
+
+        PersistentVolumes.Preparation preparation = persistentVolumes.prepare(offer, task);
+
+        assertTrue(preparation.getOperations().isEmpty());
+        assertEquals(Arrays.asList(Resources.cpus(1, "es"), volume), preparation.getTask().getResourcesList());
+    }
+
+    @Test
+    public void shouldNotReuseVolumeOfOtherCluster() {
+        List<Protos.Resource> offered = Arrays.asList(volume("elasticsearch.other.1"), Resources.disk(50, "*"));
+
+        assertFalse(persistentVolumes.findVolume(offered).isPresent());
+        assertFalse(persistentVolumes.canHoldVolume(offered));
+        assertTrue(persistentVolumes.canHoldVolume(Arrays.asList(volume("elasticsearch.cluster.1"))));
+    }
+
+    @Test
+    public void shouldCreateVolumeOnReservedDiskFirst() {
+        Protos.Offer offer = offer(Resources.disk(1000, "*"), Resources.disk(200, "es"));
+
+        PersistentVolumes.Preparation preparation = persistentVolumes.prepare(offer, task(Resources.disk(100, "es")));
+
+        assertEquals(1, preparation.getOperations().size());
+        assertEquals(Protos.Offer.Operation.Type.CREATE, preparation.getOperations().get(0).getType());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWithoutDiskForVolume() {
+        persistentVolumes.prepare(offer(Resources.disk(50, "*")), task(Resources.cpus(1, "*")));
+    }
+
+    private Protos.Resource volume(String id) {
+        return Protos.Resource.newBuilder(Resources.disk(100, "es"))
+                .setDisk(Protos.Resource.DiskInfo.newBuilder()
+                        .setPersistence(Protos.Resource.DiskInfo.Persistence.newBuilder().setId(id))
+                        .setVolume(Protos.Volume.newBuilder().setContainerPath(Configuration.PERSISTENT_VOLUME_PATH).setMode(Protos.Volume.Mode.RW)))
+                .build();
+    }
+
+    private Protos.Offer offer(Protos.Resource... resources) {
+        return Protos.Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("offer"))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("framework"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue("slave"))
+                .setHostname("host")
+                .addAllResources(Arrays.asList(resources))
+                .build();
+    }
+
+    private Protos.TaskInfo task(Protos.Resource... resources) {
+        return Protos.TaskInfo.newBuilder()
+                .setName("task")
+                .setTaskId(Protos.TaskID.newBuilder().setValue("task"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue("slave"))
+                .addAllResources(Arrays.asList(resources))
+                .build();
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -53,4 +54,23 @@ public class ResourceCheckTest {
         List<Protos.Resource> resourceList = new ArrayList<>();
         assertFalse(resourceCheck.isEnough(resourceList, 1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldAddUpResourcesOfAllRoles() {
+        ResourceCheck resourceCheck = new ResourceCheck(Resources.RESOURCE_CPUS);
+        List<Protos.Resource> resourceList = new ArrayList<>();
+        resourceList.add(Resources.cpus(1, "*"));
+        resourceList.add(Resources.mem(10, "*"));
+        resourceList.add(Resources.cpus(2, "es"));
+        assertEquals(3.0, resourceCheck.total(resourceList), 0.0);
+    }
+
+    @Test
+    public void givenResourceSplitAcrossRolesShouldAccept() {
+        ResourceCheck resourceCheck = new ResourceCheck(Resources.RESOURCE_MEM);
+        List<Protos.Resource> resourceList = new ArrayList<>();
+        resourceList.add(Resources.mem(512, "es"));
+        resourceList.add(Resources.mem(512, "*"));
+        assertTrue(resourceCheck.isEnough(resourceList, 1024));
+    }
+}
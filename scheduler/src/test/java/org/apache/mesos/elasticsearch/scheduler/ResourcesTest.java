@@ -0,0 +1,90 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.apache.mesos.Protos;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests
+ */
+public class ResourcesTest {
+    private static final double EPSILON = 0.0001;
+
+    @Test
+    public void shouldTakeReservedResourcesFirst() {
+        List<Protos.Resource> allocated = Resources.allocate(Arrays.asList(Resources.mem(1024, "*"), Resources.mem(512, "es")), Resources.RESOURCE_MEM, 768, "es");
+
+        assertEquals(2, allocated.size());
+        assertEquals("es", allocated.get(0).getRole());
+        assertEquals(512, allocated.get(0).getScalar().getValue(), EPSILON);
+        assertEquals("*", allocated.get(1).getRole());
+        assertEquals(256, allocated.get(1).getScalar().getValue(), EPSILON);
+    }
+
+    @Test
+    public void shouldOnlyUseRolesThatAreNeeded() {
+        List<Protos.Resource> allocated = Resources.allocate(Arrays.asList(Resources.cpus(4, "*"), Resources.cpus(2, "es")), Resources.RESOURCE_CPUS, 1, "es");
+
+        assertEquals(Collections.singletonList(Resources.cpus(1, "es")), allocated);
+    }
+
+    @Test
+    public void shouldKeepReservationOfOfferedResource() {
+        Protos.Resource reserved = Protos.Resource.newBuilder(Resources.disk(2048, "es"))
+                .setReservation(Protos.Resource.ReservationInfo.newBuilder().setPrincipal("principal"))
+                .build();
+
+        List<Protos.Resource> allocated = Resources.allocate(Collections.singletonList(reserved), Resources.RESOURCE_DISK, 1024, "es");
+
+        assertEquals("principal", allocated.get(0).getReservation().getPrincipal());
+        assertEquals(1024, allocated.get(0).getScalar().getValue(), EPSILON);
+    }
+
+    @Test
+    public void shouldAskFrameworkRoleForWhatIsNotOffered() {
+        List<Protos.Resource> allocated = Resources.allocate(Collections.emptyList(), Resources.RESOURCE_CPUS, 1, "es");
+
+        assertEquals(Collections.singletonList(Resources.cpus(1, "es")), allocated);
+    }
+
+    @Test
+    public void shouldTakePortFromRoleItIsOfferedIn() {
+        List<Protos.Resource> offered = Arrays.asList(Resources.portRange(31000, 32000, "*"), Resources.portRange(9200, 9300, "es"));
+
+        assertEquals(Resources.singlePortRange(9200, "es"), Resources.allocatePort(offered, 9200, "es"));
+        assertEquals(Resources.singlePortRange(31005, "*"), Resources.allocatePort(offered, 31005, "es"));
+        assertEquals(Resources.singlePortRange(80, "es"), Resources.allocatePort(offered, 80, "es"));
+    }
+
+    @Test
+    public void shouldBuildTaskResourcesAcrossRoles() {
+        Configuration configuration = mock(Configuration.class);
+        when(configuration.getFrameworkRole()).thenReturn("es");
+        when(configuration.getCpus()).thenReturn(1.0);
+        when(configuration.getMem()).thenReturn(1024.0);
+        when(configuration.getDisk()).thenReturn(100.0);
+        List<Protos.Resource> offered = Arrays.asList(Resources.cpus(1, "*"), Resources.mem(512, "es"), Resources.mem(512, "*"), Resources.disk(1000, "*"));
+
+        List<Protos.Resource> resources = Resources.buildFrameworkResources(configuration, offered);
+
+        assertEquals(Arrays.asList(Resources.cpus(1, "*"), Resources.mem(512, "es"), Resources.mem(512, "*"), Resources.disk(100, "*")), resources);
+        assertTrue(Resources.subtract(offered, resources).stream().filter(resource -> resource.getName().equals(Resources.RESOURCE_MEM))
+                .allMatch(resource -> resource.getScalar().getValue() < EPSILON));
+    }
+
+    @Test
+    public void shouldSubtractPortsFromRanges() {
+        List<Protos.Resource> remaining = Resources.subtract(Collections.singletonList(Resources.portRange(9200, 9300, "*")), Collections.singletonList(Resources.singlePortRange(9250, "*")));
+
+        assertEquals(2, remaining.get(0).getRanges().getRangeCount());
+        assertEquals(9249, remaining.get(0).getRanges().getRange(0).getEnd());
+        assertEquals(9251, remaining.get(0).getRanges().getRange(1).getBegin());
+    }
+}
@@ -0,0 +1,27 @@
+package org.apache.mesos.elasticsearch.scheduler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class RuleMetricsTest {
+    @Test
+    public void shouldCountEvaluationsAndDeclines() {
+        RuleMetrics metrics = new RuleMetrics();
+        metrics.record("rule", metrics.start(), true);
+        metrics.record("rule", metrics.start(), false);
+
+        RuleMetrics.RuleSnapshot snapshot = metrics.getRules().get("rule");
+        assertEquals(2, snapshot.getEvaluations());
+        assertEquals(1, snapshot.getDeclines());
+        assertTrue(snapshot.getMaxMicros() >= snapshot.getMeanMicros());
+    }
+
+    @Test
+    public void shouldHaveNoRulesUntilRecorded() {
+        assertTrue(new RuleMetrics().getRules().isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+package org.apache.mesos.elasticsearch.scheduler.cluster;
+
+import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.state.ClusterState;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+@SuppressWarnings("PMD.AvoidUsingHardCodedIP")
+public class HealthMonitorTest {
+    private static final long INTERVAL = 1000L;
+    private final ClusterState clusterState = mock(ClusterState.class);
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final Map<String, Task> tasks = new HashMap<>();
+    private final Map<String, Integer> responses = new HashMap<>();
+    private final HealthMonitor monitor = new HealthMonitor(clusterState, true, executor, INTERVAL, 100, (url, timeoutMs) -> {
+        final Integer status = responses.get(url);
+        if (status == null) {
+            throw new IOException("Connection refused");
+        }
+        return status;
+    });
+
+    @Before
+    public void before() {
+        when(clusterState.getGuiTaskList()).thenReturn(tasks);
+        tasks.put("task1", task("task1", 9201));
+        tasks.put("task2", task("task2", 9202));
+    }
+
+    @Test
+    public void shouldReportRespondingNodesAsHealthy() {
+        responses.put("http://127.0.0.1:9201", 200);
+        responses.put("http://127.0.0.1:9202", 503); // Quorum not reached yet, but the node is up.
+
+        monitor.poll();
+
+        assertTrue(monitor.isHealthy("task1"));
+        assertTrue(monitor.isHealthy("task2"));
+        assertEquals(503, monitor.getHealth("task2").get().getHttpStatus());
+    }
+
+    @Test
+    public void shouldCountConsecutiveFailures() {
+        monitor.poll();
+        monitor.poll();
+
+        assertFalse(monitor.isHealthy("task1"));
+        assertEquals(2, monitor.getHealth("task1").get().getConsecutiveFailures());
+        assertEquals("Connection refused", monitor.getHealth("task1").get().getError());
+
+        responses.put("http://127.0.0.1:9201", 200);
+        monitor.poll();
+        assertEquals(0, monitor.getHealth("task1").get().getConsecutiveFailures());
+    }
+
+    @Test
+    public void shouldForgetRemovedTasks() {
+        monitor.poll();
+        tasks.remove("task2");
+        monitor.poll();
+
+        assertEquals(1, monitor.getHealth().size());
+        assertFalse(monitor.getHealth("task2").isPresent());
+    }
+
+    @Test
+    public void shouldReportUncheckedNodeAsUnhealthy() {
+        assertFalse(monitor.isHealthy("task1"));
+    }
+
+    @Test
+    public void shouldCheckUncheckedNodeOnceWhenAsked() {
+        responses.put("http://127.0.0.1:9201", 200);
+
+        assertTrue(monitor.isHealthyOrCheck("task1"));
+        responses.remove("http://127.0.0.1:9201");
+        assertTrue(monitor.isHealthyOrCheck("task1")); // Cached until the next poll.
+        assertFalse(monitor.isHealthyOrCheck("unknown"));
+    }
+
+    @Test
+    public void shouldRescheduleWithJitterEvenIfPollFails() {
+        when(clusterState.getGuiTaskList()).thenThrow(new IllegalStateException("Test exception"));
+
+        monitor.run();
+
+        final ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(executor).schedule(eq(monitor), delay.capture(), eq(TimeUnit.MILLISECONDS));
+        assertTrue(delay.getValue() >= INTERVAL && delay.getValue() <= INTERVAL + INTERVAL / 5);
+    }
+
+    private Task task(String taskId, int port) {
+        return new Task("localhost", taskId, null, null, new InetSocketAddress("127.0.0.1", port), null);
+    }
+}
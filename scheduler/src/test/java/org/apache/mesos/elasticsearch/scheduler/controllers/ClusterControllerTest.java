@@ -1,14 +1,18 @@
 package org.apache.mesos.elasticsearch.scheduler.controllers;
 
 
+import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.*;
 
 /**
  * Test Cluster controller.
@@ -20,6 +24,14 @@ public class ClusterControllerTest {
     @Autowired
     private ClusterController clusterController;
 
+    @Autowired
+    private ElasticsearchScheduler scheduler;
+
+    @Before
+    public void before() {
+        reset(scheduler);
+    }
+
     @Test
     public void shouldNotExceptionWhenGeneratingConfiguration() {
         clusterController.clusterInfo();
@@ -34,4 +46,20 @@ public class ClusterControllerTest {
     public void willNotExposePasswordFieldsFromConfigurationInClearText() throws Exception {
         assertEquals("************", clusterController.clusterInfo().configuration.get("FakePassword"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldResizeClusterWhileLeading() {
+        when(scheduler.isLeading()).thenReturn(true);
+        assertEquals(HttpStatus.OK, clusterController.putElasticsearchNodes(new ClusterController.ElasticsearchNodesWrapper(3)).getStatusCode());
+        verify(scheduler).reapTasks();
+        verify(scheduler).clusterSizeChanged();
+    }
+
+    @Test
+    public void shouldRefuseToResizeClusterWhileStandingBy() {
+        when(scheduler.isLeading()).thenReturn(false);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, clusterController.putElasticsearchNodes(new ClusterController.ElasticsearchNodesWrapper(3)).getStatusCode());
+        verify(scheduler, never()).reapTasks();
+        verify(scheduler, never()).clusterSizeChanged();
+    }
+}
@@ -0,0 +1,35 @@
+package org.apache.mesos.elasticsearch.scheduler.controllers;
+
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestConfiguration.class)
+public class DnsControllerTest {
+
+    @Autowired
+    private DnsController controller;
+
+    @Autowired
+    private DnsCache dnsCache;
+
+    @Test
+    public void shouldExposeHitsAndMisses() {
+        dnsCache.resolve("host1");
+        dnsCache.resolve("host1");
+        dnsCache.resolve("unknown");
+        DnsController.DnsMetricsResponse response = controller.metrics();
+        assertEquals(1, response.hits);
+        assertEquals(2, response.misses);
+        assertEquals(1, response.failures);
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
 import org.apache.mesos.elasticsearch.scheduler.Task;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -44,6 +45,9 @@ public class SearchProxyControllerTest {
     @Mock
     HttpResponse httpResponse;
 
+    @Mock
+    HealthMonitor healthMonitor;
+
     @InjectMocks
     SearchProxyController controller;
 
@@ -87,4 +91,16 @@ public class SearchProxyControllerTest {
         assertEquals(HOSTNAME, httpHostArgumentCaptor.getValue().getHostName());
         assertEquals("/_search?q=test", httpRequestArgumentCaptor.getValue().getRequestLine().getUri());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void willForwardSearchRequestToAHealthyNode() throws Exception {
+        when(elasticsearchScheduler.getTasks()).thenReturn(createTasksMap(3));
+        when(healthMonitor.isHealthy("task-3")).thenReturn(true);
+        when(httpClient.execute(any(HttpHost.class), any(HttpRequest.class))).thenReturn(httpResponse);
+        when(httpResponse.getEntity()).thenReturn(new InputStreamEntity(new ByteArrayInputStream("Search result".getBytes("UTF-8"))));
+
+        final ResponseEntity<InputStreamResource> search = controller.search("test", null);
+
+        assertEquals(HOSTNAME + ":1003", search.getHeaders().getFirst("X-ElasticSearch-host"));
+    }
+}
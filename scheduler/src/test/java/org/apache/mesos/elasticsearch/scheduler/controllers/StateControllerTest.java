@@ -0,0 +1,33 @@
+package org.apache.mesos.elasticsearch.scheduler.controllers;
+
+import org.apache.mesos.elasticsearch.scheduler.state.StateMetrics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestConfiguration.class)
+public class StateControllerTest {
+
+    @Autowired
+    private StateController controller;
+
+    @Autowired
+    private StateMetrics stateMetrics;
+
+    @Test
+    public void shouldExposeRecordedOperations() {
+        stateMetrics.record(StateMetrics.FETCH, stateMetrics.start(), true);
+        stateMetrics.written("FrameworkID/tasks/task1", 10);
+        StateController.StateMetricsResponse response = controller.metrics();
+        assertEquals(1, response.operations.get(StateMetrics.FETCH).getCount());
+        assertEquals(10, response.volumes.get("FrameworkID/tasks").getBytesWritten());
+    }
+}
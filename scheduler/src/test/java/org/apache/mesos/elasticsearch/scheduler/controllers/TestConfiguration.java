@@ -3,14 +3,20 @@ package org.apache.mesos.elasticsearch.scheduler.controllers;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.http.client.HttpClient;
 import org.apache.mesos.elasticsearch.common.cli.ZookeeperCLIParameter;
+import org.apache.mesos.elasticsearch.common.util.DnsCache;
 import org.apache.mesos.elasticsearch.scheduler.ElasticsearchScheduler;
+import org.apache.mesos.elasticsearch.scheduler.cluster.HealthMonitor;
 import org.apache.mesos.elasticsearch.scheduler.state.FrameworkState;
+import org.apache.mesos.elasticsearch.scheduler.state.StateMetrics;
 import org.mockito.Mockito;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
 /**
  * Test configuration for controllers
  */
@@ -48,4 +54,24 @@ public class TestConfiguration {
     public FrameworkState getMockFrameworkState() {
         return Mockito.mock(FrameworkState.class);
     }
+
+    @Bean
+    public HealthMonitor getMockHealthMonitor() {
+        return Mockito.mock(HealthMonitor.class);
+    }
+
+    @Bean
+    public StateMetrics getStateMetrics() {
+        return new StateMetrics();
+    }
+
+    @Bean
+    public DnsCache getDnsCache() {
+        return new DnsCache(DnsCache.DEFAULT_POSITIVE_TTL_MS, DnsCache.DEFAULT_NEGATIVE_TTL_MS, hostname -> {
+            if (hostname.equals("unknown")) {
+                throw new UnknownHostException(hostname);
+            }
+            return InetAddress.getByAddress(hostname, new byte[]{10, 0, 0, 1});
+        }, InetAddress::getHostName, Runnable::run, System::currentTimeMillis);
+    }
 }
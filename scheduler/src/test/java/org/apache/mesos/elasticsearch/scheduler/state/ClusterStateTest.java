@@ -1,16 +1,23 @@
 package org.apache.mesos.elasticsearch.scheduler.state;
 
+import com.google.protobuf.ByteString;
 import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
 import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mockito;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import java.io.IOException;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
@@ -21,6 +28,10 @@ import static org.mockito.Mockito.*;
  */
 @SuppressWarnings({"PMD.TooManyMethods"})
 public class ClusterStateTest {
+    private static final String TASKS = "FrameworkID/" + ClusterState.TASKS_KEY;
+    private static final String STATE_LIST = "FrameworkID/" + ClusterState.STATE_LIST;
+    private static final String STATUS_INDEX = "FrameworkID/" + ESTaskStatus.STATE_KEY;
+
     private SerializableState state = mock(SerializableState.class);
 
     private FrameworkState frameworkState = mock(FrameworkState.class);
@@ -36,7 +47,7 @@ public class ClusterStateTest {
     @Test
     public void shouldGetListFromZK() throws IOException {
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
-        verify(state, times(1)).get(anyString());
+        verify(state, times(1)).get(TASKS);
         assertEquals(0, taskList.size());
     }
 
@@ -52,10 +63,49 @@ public class ClusterStateTest {
     public void shouldHandleGetNull() throws IOException {
         when(state.get(anyString())).thenReturn(null);
         List<Protos.TaskInfo> taskList = clusterState.getTaskList();
-        verify(state, times(1)).get(anyString());
+        verify(state, times(1)).get(TASKS);
+        verify(state, times(1)).get(STATE_LIST);
         assertEquals(0, taskList.size());
     }
 
+    @Test
+    public void shouldReadEachTaskFromItsOwnZNode() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        givenTasks(task1, task2);
+        assertEquals(Arrays.asList(task1, task2), clusterState.getTaskList());
+        verify(state, times(1)).get(TASKS + "/Task1");
+        verify(state, times(1)).get(TASKS + "/Task2");
+    }
+
+    @Test
+    public void shouldIgnoreListedTaskWithoutTaskInfo() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        when(state.get(TASKS)).thenReturn(new ArrayList<>(Arrays.asList(task1.getTaskId(), task("Task2").getTaskId())));
+        assertEquals(Collections.singletonList(task1), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldMigrateLegacyStateList() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        when(state.get(STATE_LIST)).thenReturn(new ArrayList<>(Arrays.asList(task1, task2)));
+        assertEquals(Arrays.asList(task1, task2), clusterState.getTaskList());
+        verify(state).set(TASKS + "/Task1", task1);
+        verify(state).set(TASKS + "/Task2", task2);
+        verify(state).set(TASKS, Arrays.asList(task1.getTaskId(), task2.getTaskId()));
+        verify(state).delete(STATE_LIST);
+    }
+
+    @Test
+    public void shouldKeepLegacyStateListWhenMigrationFails() throws IOException {
+        when(state.get(STATE_LIST)).thenReturn(new ArrayList<>(Collections.singletonList(task("Task1"))));
+        doThrow(IOException.class).when(state).set(eq(TASKS), any());
+        assertEquals(0, clusterState.getTaskList().size());
+        verify(state, never()).delete(STATE_LIST);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void shouldThrowExceptionWhenGetStatusTaskIDDesntExist() throws IOException {
         clusterState.getStatus(Protos.TaskID.newBuilder().setValue("").build());
@@ -63,29 +113,93 @@ public class ClusterStateTest {
 
     @Test
     public void shouldReturnStatusWhenDoesExist() throws IOException {
-        ArrayList<Protos.TaskInfo> taskInfos = new ArrayList<>();
-        taskInfos.add(ProtoTestUtil.getDefaultTaskInfo());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        taskInfos.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(taskInfos).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
+        givenTasks(task("Task1"), defaultTaskInfo);
+        when(state.get(contains(ESTaskStatus.STATE_KEY + "/"))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
         ESTaskStatus status = clusterState.getStatus(defaultTaskInfo.getTaskId());
         assertNotNull(status);
     }
 
+    @Test
+    public void shouldReadListFromZKOnlyOnce() throws IOException {
+        givenTasks(ProtoTestUtil.getDefaultTaskInfo());
+        assertEquals(1, clusterState.getTaskList().size());
+        assertTrue(clusterState.exists(ProtoTestUtil.getDefaultTaskInfo().getTaskId()));
+        assertEquals(1, clusterState.getTaskList().size());
+        verify(state, times(1)).get(TASKS);
+    }
+
+    @Test
+    public void shouldNotCacheListWhenReadFails() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        when(state.<List<Protos.TaskID>>get(TASKS)).thenThrow(new IOException("Test exception")).thenReturn(Collections.singletonList(task1.getTaskId()));
+        assertEquals(0, clusterState.getTaskList().size());
+        assertEquals(1, clusterState.getTaskList().size());
+    }
+
     @Test
     public void shouldAddTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        when(state.get(anyString())).thenReturn(mock);
+        givenTasks();
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
         clusterState.addTask(defaultTaskInfo);
-        verify(state, times(1)).set(anyString(), any());
-        verify(mock, times(1)).add(eq(defaultTaskInfo));
+        verify(state, times(1)).set(TASKS + "/" + defaultTaskInfo.getTaskId().getValue(), defaultTaskInfo);
+        verify(state, times(1)).set(TASKS, Collections.singletonList(defaultTaskInfo.getTaskId()));
+        assertEquals(Collections.singletonList(defaultTaskInfo), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldOnlyWriteNewTaskAndIndexWhenAdding() throws IOException {
+        givenTasks(task("Task1"), task("Task2"));
+        Protos.TaskInfo task3 = task("Task3");
+        clusterState.addTask(task3);
+        verify(state, never()).set(eq(TASKS + "/Task1"), any());
+        verify(state, never()).set(eq(TASKS + "/Task2"), any());
+        verify(state, times(1)).set(TASKS + "/Task3", task3);
+    }
+
+    @Test
+    public void shouldWriteStagedTasksInOneBatch() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        Protos.TaskInfo task2 = task("Task2");
+        Protos.TaskInfo task3 = task("Task3");
+        clusterState.stageTask(task2);
+        clusterState.stageTask(task3);
+        assertEquals(3, clusterState.getTaskCount());
+        assertEquals(Protos.TaskState.TASK_STAGING, clusterState.getStatus(task3.getTaskId()).getStatus().getState());
+        verify(state, never()).set(anyString(), any());
+
+        List<ESTaskStatus> committed = clusterState.commitStagedTasks();
+        assertEquals(Arrays.asList(task2, task3), committed.stream().map(ESTaskStatus::getTaskInfo).collect(Collectors.toList()));
+        verify(state, times(1)).set(TASKS + "/Task2", task2);
+        verify(state, times(1)).set(TASKS + "/Task3", task3);
+        verify(state, times(1)).set(statusKey(task3), ESTaskStatus.defaultStatus(task3));
+        verify(state, times(1)).set(TASKS, Arrays.asList(task1.getTaskId(), task2.getTaskId(), task3.getTaskId()));
+        verify(state, times(1)).set("FrameworkID/" + ESTaskStatus.STATE_KEY, Arrays.asList(task2.getTaskId(), task3.getTaskId()));
+        assertTrue(clusterState.commitStagedTasks().isEmpty());
+    }
+
+    @Test
+    public void shouldDropDiscardedTasksWithoutWriting() throws IOException {
+        givenTasks(task("Task1"));
+        clusterState.stageTask(task("Task2"));
+        clusterState.discardStagedTasks();
+        assertEquals(1, clusterState.getTaskCount());
+        assertFalse(clusterState.exists(task("Task2").getTaskId()));
+        assertTrue(clusterState.commitStagedTasks().isEmpty());
+        verify(state, never()).set(anyString(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotStageExistingTask() throws IOException {
+        givenTasks(task("Task1"));
+        clusterState.stageTask(task("Task1"));
     }
 
     @Test
     public void shouldHandleExceptionWhenAddingTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        when(state.get(anyString())).thenReturn(mock);
+        givenTasks();
         doThrow(IOException.class).when(state).set(anyString(), any());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
         clusterState.addTask(defaultTaskInfo);
@@ -93,21 +207,118 @@ public class ClusterStateTest {
 
     @Test
     public void shouldDeleteTask() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        mock.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(mock).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
+        givenTasks(defaultTaskInfo);
+        when(state.get(contains(ESTaskStatus.STATE_KEY + "/"))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
         clusterState.removeTask(defaultTaskInfo);
-        verify(state, times(1)).set(anyString(), any());
-        verify(mock, times(1)).remove(eq(defaultTaskInfo));
+        verify(state, times(1)).set(TASKS, Collections.emptyList());
+        verify(state, times(1)).delete(TASKS + "/" + defaultTaskInfo.getTaskId().getValue());
+        assertTrue(clusterState.getTaskList().isEmpty());
+    }
+
+    @Test
+    public void shouldFetchOnlyAddedTasksOnRefresh() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        givenTasks(task1);
+        clusterState.getTaskList();
+        givenTasks(task1, task2);
+        when(state.get(statusKey(task2))).thenReturn(statusOf(task2, Protos.TaskState.TASK_RUNNING));
+        clusterState.refresh();
+        assertEquals(Arrays.asList(task1, task2), clusterState.getTaskList());
+        assertEquals(statusOf(task2, Protos.TaskState.TASK_RUNNING), clusterState.getStatus(task2.getTaskId()).getStatus());
+        verify(state, times(1)).get(TASKS + "/Task1");
+        verify(state, times(1)).get(TASKS + "/Task2");
+        verify(state, times(1)).get(statusKey(task2));
+    }
+
+    @Test
+    public void shouldDropRemovedTasksOnRefreshWithoutWriting() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        givenTasks(task1, task2);
+        clusterState.getTaskList();
+        givenTasks(task2);
+        clusterState.refresh();
+        assertEquals(Collections.singletonList(task2), clusterState.getTaskList());
+        assertFalse(clusterState.exists(task1.getTaskId()));
+        verify(state, never()).set(anyString(), any());
+        verify(state, never()).delete(anyString());
+    }
+
+    @Test
+    public void shouldRereadStatusOfKnownTaskAfterRefresh() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        when(state.get(statusKey(task1))).thenReturn(statusOf(task1, Protos.TaskState.TASK_STAGING), statusOf(task1, Protos.TaskState.TASK_RUNNING));
+        assertEquals(Protos.TaskState.TASK_STAGING, clusterState.getStatus(task1.getTaskId()).getStatus().getState());
+        clusterState.refresh();
+        assertEquals(Protos.TaskState.TASK_RUNNING, clusterState.getStatus(task1.getTaskId()).getStatus().getState());
+        verify(state, times(1)).get(TASKS + "/Task1");
+    }
+
+    @Test
+    public void shouldKeepTaskListWhenRefreshFails() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        clusterState.getTaskList();
+        when(state.<List<Protos.TaskID>>get(TASKS)).thenThrow(new IOException("Test exception"));
+        clusterState.refresh();
+        assertEquals(Collections.singletonList(task1), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldLoadOnFirstRefresh() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        clusterState.refresh();
+        assertTrue(clusterState.isLoaded());
+        assertEquals(Collections.singletonList(task1), clusterState.getTaskList());
+    }
+
+    @Test
+    public void shouldUnlistStatusOfRemovedTask() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        givenTasks(task1, task2);
+        when(state.get(STATUS_INDEX)).thenReturn(Arrays.asList(task1.getTaskId(), task2.getTaskId()));
+        clusterState.removeTask(task1);
+        verify(state).delete(statusKey(task1));
+        verify(state).set(STATUS_INDEX, Collections.singletonList(task2.getTaskId()));
+    }
+
+    @Test
+    public void shouldNotRewriteStatusIndexForLoadedTasks() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        givenTasks(task1);
+        when(state.get(statusKey(task1))).thenReturn(statusOf(task1, Protos.TaskState.TASK_STAGING));
+        when(state.get(STATUS_INDEX)).thenReturn(Collections.singletonList(task1.getTaskId()));
+        when(state.exists(anyString())).thenReturn(true);
+        clusterState.update(statusOf(task1, Protos.TaskState.TASK_RUNNING));
+        verify(state).set(statusKey(task1), statusOf(task1, Protos.TaskState.TASK_RUNNING));
+        verify(state, times(1)).get(STATUS_INDEX);
+        verify(state, never()).set(eq(STATUS_INDEX), any());
+    }
+
+    @Test
+    public void shouldDestroyEveryTaskAndStatus() throws IOException {
+        Protos.TaskInfo task1 = task("Task1");
+        Protos.TaskInfo task2 = task("Task2");
+        givenTasks(task1, task2);
+        doThrow(new InvalidParameterException("Test exception")).when(state).delete(statusKey(task1));
+        clusterState.destroy();
+        verify(state).delete(statusKey(task2));
+        verify(state).delete(TASKS + "/Task1");
+        verify(state).delete(TASKS + "/Task2");
+        verify(state).delete(TASKS);
+        verify(state).delete("FrameworkID");
+        assertTrue(clusterState.getTaskList().isEmpty());
     }
 
     @Test
     public void shouldReturnTrueIfExists() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
-        mock.add(defaultTaskInfo);
-        when(state.get(anyString())).thenReturn(mock);
+        givenTasks(defaultTaskInfo);
         assertTrue(clusterState.exists(defaultTaskInfo.getTaskId()));
         verify(state, atLeastOnce()).get(anyString());
     }
@@ -115,37 +326,177 @@ public class ClusterStateTest {
     @Test
     public void shouldReturnFalseIfNotExists() throws IOException {
         Protos.TaskInfo defaultTaskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks();
         assertFalse(clusterState.exists(defaultTaskInfo.getTaskId()));
         verify(state, times(1)).get(anyString());
     }
 
+    @Test
+    public void shouldLookUpTasksByIndex() throws IOException {
+        Protos.TaskInfo task1 = onSlave(task("Task1"), "slave1");
+        Protos.TaskInfo task2 = onSlave(task("Task2"), "slave1");
+        Protos.TaskInfo task3 = Protos.TaskInfo.newBuilder(onSlave(task("Task3"), "slave2"))
+                .setExecutor(Protos.ExecutorInfo.newBuilder(task1.getExecutor()).setExecutorId(Protos.ExecutorID.newBuilder().setValue("Executor3")))
+                .build();
+        givenTasks(task1, task2, task3);
+        assertEquals(task2, clusterState.getTask(task2.getTaskId()));
+        assertEquals(task3, clusterState.getTask(task3.getExecutor().getExecutorId()));
+        assertEquals(3, clusterState.getTaskCount());
+        assertEquals(2, clusterState.countTasksOnSlave(task1.getSlaveId()));
+        assertEquals(1, clusterState.countTasksOnSlave(task3.getSlaveId()));
+        assertEquals(0, clusterState.countTasksOnSlave(Protos.SlaveID.newBuilder().setValue("slave3").build()));
+        clusterState.removeTask(task1);
+        assertFalse(clusterState.exists(task1.getTaskId()));
+        assertEquals(1, clusterState.countTasksOnSlave(task1.getSlaveId()));
+    }
+
+    @Test
+    public void shouldHoldOneStatusPerTask() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks(taskInfo);
+        when(state.get(contains(ESTaskStatus.STATE_KEY + "/"))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
+        ESTaskStatus status = clusterState.getStatus(taskInfo.getTaskId());
+        assertSame(status, clusterState.getStatus(taskInfo.getTaskId()));
+        clusterState.getGuiTaskList();
+        clusterState.getGuiTaskList();
+        verify(state, times(1)).get(statusKey(taskInfo));
+    }
+
     @Test
     public void shouldReturnCorrectNumberOfExecutors() throws IOException {
-        ArrayList<Protos.TaskInfo> mock = Mockito.spy(new ArrayList<>());
-        mock.add(ProtoTestUtil.getDefaultTaskInfo());
-        Protos.TaskInfo defaultTaskInfo = Protos.TaskInfo.newBuilder().mergeFrom(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue("Task2")).build();
-        mock.add(defaultTaskInfo);
-        when(state.get(contains(ESTaskStatus.STATE_KEY))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
-        when(state.get(contains(ClusterState.STATE_LIST))).thenReturn(mock); // Be careful, the state list and state key both have the word state in them. Order is important.
+        Protos.TaskInfo defaultTaskInfo = task("Task2");
+        givenTasks(ProtoTestUtil.getDefaultTaskInfo(), defaultTaskInfo);
+        when(state.get(contains(ESTaskStatus.STATE_KEY + "/"))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
         assertEquals(2, clusterState.getGuiTaskList().size());
         clusterState.removeTask(defaultTaskInfo);
         assertEquals(1, clusterState.getGuiTaskList().size());
     }
 
+    @Test
+    public void shouldWriteStatusUpdateBehindAndAcknowledgeOnceWritten() throws IOException, InterruptedException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks(taskInfo);
+        SchedulerDriver driver = mock(SchedulerDriver.class);
+        when(frameworkState.getDriver()).thenReturn(driver);
+        Protos.TaskStatus status = statusOf(taskInfo, Protos.TaskState.TASK_RUNNING);
+        statusUpdateListener().accept(status);
+        clusterState.flushStatusUpdates();
+        InOrder inOrder = inOrder(state, driver);
+        inOrder.verify(state).set(statusKey(taskInfo), status);
+        inOrder.verify(driver).acknowledgeStatusUpdate(status);
+    }
+
+    @Test
+    public void shouldWriteQueuedStatusUpdatesWhenClosed() throws IOException, InterruptedException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks(taskInfo);
+        SchedulerDriver driver = mock(SchedulerDriver.class);
+        when(frameworkState.getDriver()).thenReturn(driver);
+        Protos.TaskStatus status = statusOf(taskInfo, Protos.TaskState.TASK_RUNNING);
+        statusUpdateListener().accept(status);
+        clusterState.closeStatusUpdates();
+        verify(state).set(statusKey(taskInfo), status);
+        verify(driver).acknowledgeStatusUpdate(status);
+    }
+
+    @Test
+    public void shouldRemoveTaskInErrorWithoutWritingItsStatus() throws IOException, InterruptedException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks(taskInfo);
+        when(state.get(contains(ESTaskStatus.STATE_KEY + "/"))).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING));
+        SchedulerDriver driver = mock(SchedulerDriver.class);
+        when(frameworkState.getDriver()).thenReturn(driver);
+        Protos.TaskStatus status = statusOf(taskInfo, Protos.TaskState.TASK_FAILED);
+        statusUpdateListener().accept(status);
+        clusterState.flushStatusUpdates();
+        assertTrue(clusterState.getTaskList().isEmpty());
+        verify(state, never()).set(statusKey(taskInfo), status);
+        verify(state).delete(statusKey(taskInfo));
+        verify(driver).acknowledgeStatusUpdate(status);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldNotHoldClusterStateWhileWritingStatus() throws IOException, InterruptedException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        givenTasks(taskInfo);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        }).when(state).set(eq(statusKey(taskInfo)), any());
+        statusUpdateListener().accept(statusOf(taskInfo, Protos.TaskState.TASK_RUNNING));
+        writing.await();
+        clusterState.stageTask(Protos.TaskInfo.newBuilder(taskInfo).setTaskId(Protos.TaskID.newBuilder().setValue("task2")).build());
+        assertEquals(2, clusterState.getTaskCount());
+        release.countDown();
+        clusterState.flushStatusUpdates();
+    }
+
+    @Test
+    public void shouldAcknowledgeStatusUpdateOfUnknownTask() throws IOException {
+        givenTasks();
+        SchedulerDriver driver = mock(SchedulerDriver.class);
+        when(frameworkState.getDriver()).thenReturn(driver);
+        Protos.TaskStatus status = statusOf(ProtoTestUtil.getDefaultTaskInfo(), Protos.TaskState.TASK_RUNNING);
+        statusUpdateListener().accept(status);
+        verify(driver).acknowledgeStatusUpdate(status);
+        verify(state, never()).set(anyString(), any());
+    }
+
     // TODO (pnw): Add test for get ES node Id. Hard to test because of protobuf. Need to add to default protobuf.
     @Test
     public void shouldIncrementEsNodeId() throws IOException {
         assertEquals(0, clusterState.getElasticNodeId().intValue());
-        when(state.get(any())).thenReturn(Collections.singletonList(ProtoTestUtil.getTaskInfoExternalVolume(0)));
+        givenTasks(externalVolumeTask(0));
+        clusterState.load();
         assertEquals(1, clusterState.getElasticNodeId().intValue());
     }
 
     @Test
     public void shouldReplaceNodeId() throws IOException {
-        when(state.get(any())).thenReturn(Collections.singletonList(ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        givenTasks(externalVolumeTask(1));
         assertEquals(0, clusterState.getElasticNodeId().intValue());
-        when(state.get(any())).thenReturn(Arrays.asList(ProtoTestUtil.getTaskInfoExternalVolume(0), ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        givenTasks(externalVolumeTask(0), externalVolumeTask(1));
+        clusterState.load();
         assertEquals(2, clusterState.getElasticNodeId().intValue());
 
     }
-}
\ No newline at end of file
+
+    private void givenTasks(Protos.TaskInfo... taskInfos) throws IOException {
+        List<Protos.TaskID> taskIds = new ArrayList<>();
+        for (Protos.TaskInfo taskInfo : taskInfos) {
+            taskIds.add(taskInfo.getTaskId());
+            when(state.get(TASKS + "/" + taskInfo.getTaskId().getValue())).thenReturn(taskInfo);
+        }
+        when(state.get(TASKS)).thenReturn(taskIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<Protos.TaskStatus> statusUpdateListener() {
+        ArgumentCaptor<Consumer<Protos.TaskStatus>> listener = ArgumentCaptor.forClass((Class<Consumer<Protos.TaskStatus>>) (Class<?>) Consumer.class);
+        verify(frameworkState).onStatusUpdate(listener.capture());
+        return listener.getValue();
+    }
+
+    private Protos.TaskStatus statusOf(Protos.TaskInfo taskInfo, Protos.TaskState taskState) {
+        return Protos.TaskStatus.newBuilder(ProtoTestUtil.getDefaultTaskStatus(taskState)).setTaskId(taskInfo.getTaskId()).setUuid(ByteString.copyFromUtf8("uuid")).build();
+    }
+
+    private String statusKey(Protos.TaskInfo taskInfo) {
+        return "FrameworkID/" + ESTaskStatus.STATE_KEY + "/" + taskInfo.getTaskId().getValue();
+    }
+
+    private Protos.TaskInfo onSlave(Protos.TaskInfo taskInfo, String slaveId) {
+        return Protos.TaskInfo.newBuilder(taskInfo).setSlaveId(Protos.SlaveID.newBuilder().setValue(slaveId)).build();
+    }
+
+    private Protos.TaskInfo task(String taskId) {
+        return Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue(taskId)).build();
+    }
+
+    private Protos.TaskInfo externalVolumeTask(Integer esNodeId) {
+        return Protos.TaskInfo.newBuilder(ProtoTestUtil.getTaskInfoExternalVolume(esNodeId)).setTaskId(Protos.TaskID.newBuilder().setValue("Task" + esNodeId)).build();
+    }
+}
@@ -36,7 +36,7 @@ public class ESTaskStatusTest {
     @Test
     public void shouldCheckIfStatusIsValid() throws IOException {
         Mockito.reset(state);
-        when(state.get(anyString())).thenThrow(new IllegalStateException("Test")).thenReturn(taskStatus);
+        when(state.get(ESTaskStatus.getKey(frameworkID, taskInfo.getTaskId()))).thenThrow(new IllegalStateException("Test")).thenReturn(taskStatus);
         status = new ESTaskStatus(state, frameworkID, taskInfo, new StatePath(state));
         verify(state, atLeastOnce()).set(anyString(), any());
     }
@@ -50,7 +50,7 @@ public class ESTaskStatusTest {
     @Test(expected = IllegalStateException.class)
     public void testHandleGetException() throws IllegalStateException, IOException {
         doThrow(IOException.class).when(state).get(anyString());
-        status.getStatus();
+        uncached().getStatus();
     }
 
     @Test(expected = InvalidParameterException.class)
@@ -89,12 +89,36 @@ public class ESTaskStatusTest {
     @Test
     public void shouldErrorWhenTaskFinishedToUpdateState() throws IOException {
         when(state.get(anyString())).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_FINISHED));
-        Assert.assertTrue(status.taskInError());
+        Assert.assertTrue(uncached().taskInError());
     }
 
     @Test
     public void shouldErrorWhenTaskKilled() throws IOException {
         when(state.get(anyString())).thenReturn(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_KILLED));
-        Assert.assertTrue(status.taskInError());
+        Assert.assertTrue(uncached().taskInError());
+    }
+
+    @Test
+    public void shouldServeReadsFromCache() throws IOException {
+        Mockito.reset(state);
+        when(state.get(anyString())).thenReturn(taskStatus);
+        status = new ESTaskStatus(state, frameworkID, taskInfo, new StatePath(state));
+        status.getStatus();
+        status.toString();
+        status.taskInError();
+        verify(state, times(1)).get(anyString());
+    }
+
+    @Test
+    public void shouldCacheWrittenStatus() throws IOException {
+        Protos.TaskStatus running = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING);
+        status.setStatus(running);
+        Mockito.reset(state);
+        Assert.assertEquals(running, status.getStatus());
+        verifyZeroInteractions(state);
+    }
+
+    private ESTaskStatus uncached() {
+        return new ESTaskStatus(state, frameworkID, taskInfo, new StatePath(state), null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class ExecutorAsyncSerializableStateTest {
+    private final SerializableState state = mock(SerializableState.class);
+    private final AsyncSerializableState asyncState = new ExecutorAsyncSerializableState(state);
+
+    @Test
+    public void shouldGetSetAndDelete() throws IOException {
+        when(state.get("key")).thenReturn("value");
+        assertEquals("value", AsyncSerializableState.await(asyncState.get("key")));
+        AsyncSerializableState.await(asyncState.set("key", "other"));
+        AsyncSerializableState.await(asyncState.delete("key"));
+        verify(state).set("key", "other");
+        verify(state).delete("key");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRethrowIOException() throws IOException {
+        when(state.get("key")).thenThrow(new IOException("Test exception"));
+        AsyncSerializableState.await(asyncState.get("key"));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldRethrowRuntimeException() throws IOException {
+        doThrow(new InvalidParameterException("Test exception")).when(state).delete("key");
+        AsyncSerializableState.await(asyncState.delete("key"));
+    }
+
+    @Test
+    public void shouldRunCallsConcurrently() throws IOException, InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        when(state.get(anyString())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            return bothStarted.await(5, TimeUnit.SECONDS);
+        });
+        CompletableFuture<Boolean> first = asyncState.get("key1");
+        CompletableFuture<Boolean> second = asyncState.get("key2");
+        assertTrue(AsyncSerializableState.await(first));
+        assertTrue(AsyncSerializableState.await(second));
+    }
+}
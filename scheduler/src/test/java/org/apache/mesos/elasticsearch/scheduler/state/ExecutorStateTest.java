@@ -9,8 +9,6 @@ import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
-import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
 /**
@@ -27,7 +25,6 @@ public class ExecutorStateTest {
     public void testExecutorStateMechanism() throws IOException, InterruptedException, ExecutionException, ClassNotFoundException {
         Protos.TaskStatus taskStatus = Protos.TaskStatus.getDefaultInstance();
         SerializableState state = Mockito.mock(SerializableState.class);
-        when(state.get(anyString())).thenReturn(taskStatus);
         Protos.FrameworkID frameworkID = Protos.FrameworkID.newBuilder().setValue(FRAMEWORK_ID).build();
         Protos.SlaveID slaveID = Protos.SlaveID.newBuilder().setValue(SLAVE_ID).build();
         Protos.ExecutorID executorID = Protos.ExecutorID.newBuilder().setValue(EXECUTOR_ID).build();
@@ -41,10 +38,11 @@ public class ExecutorStateTest {
                 .setSlaveId(slaveID)
                 .setName("Test")
                 .build();
+        when(state.get(ESTaskStatus.getKey(frameworkID, taskID))).thenReturn(taskStatus);
         ESTaskStatus executorState = new ESTaskStatus(state, frameworkID, taskInfo, mock(StatePath.class));
 
         executorState.setStatus(taskStatus);
-        verify(state, times(1)).set(anyString(), any(Protos.TaskStatus.class));
+        verify(state, times(1)).set(ESTaskStatus.getKey(frameworkID, taskID), taskStatus);
 
         Protos.TaskStatus newStatus = executorState.getStatus();
         assertNotNull(newStatus);
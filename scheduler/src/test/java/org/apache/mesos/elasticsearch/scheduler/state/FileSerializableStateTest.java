@@ -0,0 +1,83 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidParameterException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class FileSerializableStateTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID = Protos.FrameworkID.newBuilder().setValue("FrameworkID").build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private FileSerializableState state;
+
+    @Before
+    public void before() throws IOException {
+        root = folder.getRoot().toPath().resolve("state");
+        state = new FileSerializableState(root);
+    }
+
+    @Test
+    public void shouldGetSetAndDelete() throws IOException {
+        assertNull(state.get("frameworkId"));
+        state.set("frameworkId", FRAMEWORK_ID);
+        assertEquals(FRAMEWORK_ID, state.get("frameworkId"));
+        assertEquals(FRAMEWORK_ID, new FileSerializableState(root).get("frameworkId"));
+        state.delete("frameworkId");
+        assertNull(state.get("frameworkId"));
+    }
+
+    @Test
+    public void shouldReplaceOnlyExpectedValue() throws IOException {
+        assertTrue(state.replace("frameworkId", null, FRAMEWORK_ID));
+        assertFalse(state.replace("frameworkId", null, FRAMEWORK_ID));
+        assertTrue(state.exists("frameworkId"));
+        assertTrue(state.replace("frameworkId", FRAMEWORK_ID, null));
+        assertNull(state.get("frameworkId"));
+    }
+
+    @Test
+    public void shouldStoreValueAndChildrenOfTheSameKey() throws IOException {
+        new StatePath(state).mkdir("FrameworkID/tasks/task1");
+        state.set("FrameworkID/tasks", FRAMEWORK_ID);
+        state.set("FrameworkID/tasks/task1", FRAMEWORK_ID);
+        assertEquals(FRAMEWORK_ID, state.get("FrameworkID/tasks"));
+        state.delete("FrameworkID/tasks");
+        assertEquals(FRAMEWORK_ID, state.get("FrameworkID/tasks/task1"));
+    }
+
+    @Test
+    public void shouldKeepKeysInsideRoot() throws IOException {
+        state.set("../escape", FRAMEWORK_ID);
+        state.set("./.value", FRAMEWORK_ID);
+        assertFalse(Files.exists(root.resolveSibling("escape")));
+        assertEquals(FRAMEWORK_ID, state.get("../escape"));
+        assertNull(state.get("."));
+    }
+
+    @Test
+    public void shouldLeaveNoTemporaryFiles() throws IOException {
+        state.set("frameworkId", FRAMEWORK_ID);
+        state.set("frameworkId", FRAMEWORK_ID);
+        assertEquals(1, root.resolve("frameworkId").toFile().list().length);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldExceptWhenDeletingMissingKey() throws IOException {
+        state.delete("frameworkId");
+    }
+}
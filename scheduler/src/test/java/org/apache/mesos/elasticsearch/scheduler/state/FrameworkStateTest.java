@@ -2,11 +2,16 @@ package org.apache.mesos.elasticsearch.scheduler.state;
 
 import org.apache.mesos.Protos;
 import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -35,6 +40,14 @@ public class FrameworkStateTest {
         assertEquals(FRAMEWORK_ID, frameworkID);
     }
 
+    @Test
+    public void testGetFrameworkIDFromMemoryOnceRegistered() throws IOException {
+        frameworkState.markRegistered(FRAMEWORK_ID, driver);
+        reset(state);
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+        verify(state, never()).get(anyString());
+    }
+
     @Test
     public void testGetEmptyWhenNoFrameworkID() throws IOException {
         Protos.FrameworkID frameworkID = frameworkState.getFrameworkID();
@@ -42,6 +55,62 @@ public class FrameworkStateTest {
         assertEquals("", frameworkID.getValue());
     }
 
+    @Test
+    public void shouldRecoverFrameworkIDAndTasks() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        Protos.TaskStatus taskStatus = Protos.TaskStatus.newBuilder(ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING)).setTaskId(taskInfo.getTaskId()).build();
+        when(state.get("frameworkId")).thenReturn(FRAMEWORK_ID);
+        when(state.get("FrameworkID/" + ClusterState.TASKS_KEY)).thenReturn(new ArrayList<>(Collections.singletonList(taskInfo.getTaskId())));
+        when(state.get("FrameworkID/" + ClusterState.TASKS_KEY + "/" + taskInfo.getTaskId().getValue())).thenReturn(taskInfo);
+        when(state.get("FrameworkID/" + ESTaskStatus.STATE_KEY + "/" + taskInfo.getTaskId().getValue())).thenReturn(taskStatus);
+        ClusterState clusterState = new ClusterState(state, frameworkState);
+
+        frameworkState.recover();
+        assertEquals(Collections.singletonList(taskInfo), clusterState.getTaskList());
+        assertEquals(taskStatus, clusterState.getStatus(taskInfo.getTaskId()).getStatus());
+
+        frameworkState.markRegistered(FRAMEWORK_ID, driver);
+        reset(state);
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+        clusterState.getTaskList();
+        clusterState.getStatus(taskInfo.getTaskId()).getStatus();
+        verify(state, never()).get(anyString());
+    }
+
+    @Test
+    public void shouldRecoverOnRefreshOnceFrameworkIDAppears() throws IOException {
+        ClusterState clusterState = new ClusterState(state, frameworkState);
+        frameworkState.refresh();
+        assertFalse(clusterState.isLoaded());
+
+        when(state.get("frameworkId")).thenReturn(FRAMEWORK_ID);
+        frameworkState.refresh();
+        assertTrue(clusterState.isLoaded());
+        assertEquals(FRAMEWORK_ID, frameworkState.getFrameworkID());
+    }
+
+    @Test
+    public void shouldOnlyRefreshTaskListWhileFrameworkIDIsUnchanged() throws IOException {
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        when(state.get("frameworkId")).thenReturn(FRAMEWORK_ID);
+        when(state.get("FrameworkID/" + ClusterState.TASKS_KEY)).thenReturn(new ArrayList<>(Collections.singletonList(taskInfo.getTaskId())));
+        when(state.get("FrameworkID/" + ClusterState.TASKS_KEY + "/" + taskInfo.getTaskId().getValue())).thenReturn(taskInfo);
+        ClusterState clusterState = new ClusterState(state, frameworkState);
+        frameworkState.recover();
+
+        frameworkState.refresh();
+        frameworkState.refresh();
+        assertEquals(Collections.singletonList(taskInfo), clusterState.getTaskList());
+        verify(state, times(1)).get("FrameworkID/" + ClusterState.TASKS_KEY + "/" + taskInfo.getTaskId().getValue());
+        verify(state, times(3)).get("FrameworkID/" + ClusterState.TASKS_KEY);
+    }
+
+    @Test
+    public void shouldRecoverNothingWithoutFrameworkID() throws IOException {
+        frameworkState.recover();
+        verify(state, times(1)).get(anyString());
+    }
+
     @Test
     public void testHandleSetException() throws IOException {
         doThrow(IOException.class).when(state).set(anyString(), any());
@@ -0,0 +1,85 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class InMemorySerializableStateTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID = Protos.FrameworkID.newBuilder().setValue("FrameworkID").build();
+    private final InMemorySerializableState state = new InMemorySerializableState();
+
+    @Test
+    public void shouldGetSetAndDelete() throws IOException {
+        assertNull(state.get("frameworkId"));
+        state.set("frameworkId", FRAMEWORK_ID);
+        assertEquals(FRAMEWORK_ID, state.get("frameworkId"));
+        state.delete("frameworkId");
+        assertNull(state.get("frameworkId"));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldExceptWhenDeletingMissingKey() throws IOException {
+        state.delete("frameworkId");
+    }
+
+    @Test
+    public void shouldDeleteDirectoryNodes() throws IOException {
+        new StatePath(state).mkdir("a/b");
+        assertNull(state.get("a"));
+        state.delete("a");
+    }
+
+    @Test
+    public void shouldBumpVersionOnEveryWrite() throws IOException {
+        assertEquals(InMemorySerializableState.NO_VERSION, state.version("frameworkId"));
+        state.set("frameworkId", FRAMEWORK_ID);
+        assertEquals(0, state.version("frameworkId"));
+        state.set("frameworkId", FRAMEWORK_ID);
+        assertEquals(1, state.version("frameworkId"));
+    }
+
+    @Test
+    public void shouldOnlySetAtExpectedVersion() throws IOException {
+        assertTrue(state.compareAndSet("frameworkId", InMemorySerializableState.NO_VERSION, FRAMEWORK_ID));
+        assertFalse(state.compareAndSet("frameworkId", InMemorySerializableState.NO_VERSION, FRAMEWORK_ID));
+        assertFalse(state.compareAndSet("frameworkId", 5, FRAMEWORK_ID));
+        assertTrue(state.compareAndSet("frameworkId", 0, FRAMEWORK_ID));
+        assertEquals(1, state.version("frameworkId"));
+    }
+
+    @Test
+    public void shouldReplaceOnlyExpectedValue() throws IOException {
+        assertTrue(state.replace("frameworkId", null, FRAMEWORK_ID));
+        assertFalse(state.replace("frameworkId", null, FRAMEWORK_ID));
+        Protos.FrameworkID next = Protos.FrameworkID.newBuilder().setValue("next").build();
+        assertTrue(state.replace("frameworkId", FRAMEWORK_ID, next));
+        assertEquals(next, state.get("frameworkId"));
+    }
+
+    @Test
+    public void shouldBackClusterState() throws IOException {
+        FrameworkState frameworkState = new FrameworkState(state);
+        ClusterState clusterState = new ClusterState(state, frameworkState);
+        frameworkState.markRegistered(FRAMEWORK_ID, null);
+        Protos.TaskInfo taskInfo = ProtoTestUtil.getDefaultTaskInfo();
+        clusterState.addTask(taskInfo);
+
+        ClusterState reloaded = new ClusterState(state, frameworkState);
+        reloaded.load();
+        assertEquals(Collections.singletonList(taskInfo), reloaded.getTaskList());
+
+        clusterState.destroy();
+        reloaded.load();
+        assertTrue(reloaded.getTaskList().isEmpty());
+        assertNull(state.get("FrameworkID/" + ClusterState.TASKS_KEY));
+    }
+}
@@ -0,0 +1,123 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.elasticsearch.scheduler.util.Clock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class LeaderElectionTest {
+    private static final long LEASE_MS = 3000;
+    private final InMemorySerializableState state = new InMemorySerializableState();
+    private final Clock clock = mock(Clock.class);
+    private final LeaderElection first = new LeaderElection(state, "first", LEASE_MS, clock);
+    private final LeaderElection second = new LeaderElection(state, "second", LEASE_MS, clock);
+
+    @Before
+    public void before() {
+        at(0);
+    }
+
+    @Test
+    public void shouldElectOneLeader() {
+        assertTrue(first.tryAcquire());
+        assertFalse(second.tryAcquire());
+        assertTrue(first.isLeader());
+        assertFalse(second.isLeader());
+    }
+
+    @Test
+    public void shouldBeLeaderOnlyUntilLeaseExpires() {
+        assertFalse(first.isLeader());
+        first.tryAcquire();
+        assertTrue(first.isLeader());
+        at(LEASE_MS);
+        assertFalse(first.isLeader());
+    }
+
+    @Test
+    public void shouldTakeOverExpiredLease() {
+        first.tryAcquire();
+        at(LEASE_MS);
+        assertTrue(second.tryAcquire());
+        assertFalse(first.renew());
+        assertFalse(first.isLeader());
+    }
+
+    @Test
+    public void shouldKeepLeaseWhileRenewing() {
+        first.tryAcquire();
+        at(LEASE_MS - 1);
+        assertTrue(first.renew());
+        at(LEASE_MS + 1);
+        assertFalse(second.tryAcquire());
+    }
+
+    @Test
+    public void shouldTakeOverReleasedLeaseAtOnce() {
+        first.tryAcquire();
+        first.release();
+        assertFalse(first.isLeader());
+        assertTrue(second.tryAcquire());
+    }
+
+    @Test
+    public void shouldToleratePartitionUntilLeaseExpires() throws IOException {
+        SerializableState unreachable = mock(SerializableState.class);
+        when(unreachable.get(anyString())).thenReturn(null);
+        when(unreachable.replace(anyString(), any(), any())).thenReturn(true);
+        LeaderElection election = new LeaderElection(unreachable, "first", LEASE_MS, clock);
+        assertTrue(election.tryAcquire());
+        when(unreachable.get(anyString())).thenThrow(new IOException("Test exception"));
+        at(LEASE_MS - 1);
+        assertTrue(election.renew());
+        at(LEASE_MS);
+        assertFalse(election.renew());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRefuseStateWithoutCompareAndSet() throws IOException {
+        SerializableState plain = mock(SerializableState.class);
+        when(plain.replace(anyString(), any(), any())).thenThrow(new UnsupportedOperationException("Test exception"));
+        new LeaderElection(plain, "first", LEASE_MS, clock).tryAcquire();
+    }
+
+    @Test
+    public void shouldRunStandbyWorkUntilElected() throws InterruptedException {
+        first.tryAcquire();
+        AtomicInteger standbyRuns = new AtomicInteger();
+        second.awaitLeadership(() -> {
+            standbyRuns.incrementAndGet();
+            first.release();
+        });
+        assertEquals(1, standbyRuns.get());
+        assertTrue(second.isLeader());
+    }
+
+    @Test
+    public void shouldKeepStandingByWhenStandbyWorkFails() throws InterruptedException {
+        first.tryAcquire();
+        AtomicInteger standbyRuns = new AtomicInteger();
+        second.awaitLeadership(() -> {
+            if (standbyRuns.incrementAndGet() == 2) {
+                first.release();
+            }
+            throw new IllegalStateException("Test exception");
+        });
+        assertEquals(2, standbyRuns.get());
+        assertTrue(second.isLeader());
+    }
+
+    private void at(long millis) {
+        when(clock.now()).thenReturn(new Date(millis));
+    }
+}
@@ -0,0 +1,94 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests
+ */
+public class MirroredSerializableStateTest {
+    private static final Protos.FrameworkID OLD_ID = Protos.FrameworkID.newBuilder().setValue("old").build();
+    private static final Protos.FrameworkID NEW_ID = Protos.FrameworkID.newBuilder().setValue("new").build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SerializableState primary = mock(SerializableState.class);
+    private Path path;
+
+    @Before
+    public void before() {
+        path = folder.getRoot().toPath().resolve("state.journal");
+    }
+
+    @Test
+    public void shouldWriteThroughToPrimaryAndMirror() throws IOException {
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            new MirroredSerializableState(primary, journal).set("frameworkId", OLD_ID);
+            verify(primary).set("frameworkId", OLD_ID);
+            assertNotNull(journal.get("frameworkId"));
+        }
+    }
+
+    @Test
+    public void shouldServeMirrorUntilReconciled() throws IOException {
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            new MirroredSerializableState(primary, journal).set("frameworkId", OLD_ID);
+        }
+        when(primary.get("frameworkId")).thenReturn(NEW_ID);
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            MirroredSerializableState state = new MirroredSerializableState(primary, journal);
+            assertEquals(OLD_ID, state.get("frameworkId"));
+            state.reconcile();
+            assertFalse(state.isWarm());
+            assertEquals(NEW_ID, state.get("frameworkId"));
+            assertArrayEquals(new ProtobufStateCodec().encode(NEW_ID), journal.get("frameworkId"));
+        }
+    }
+
+    @Test
+    public void shouldDropKeysMissingFromPrimaryWhenReconciling() throws IOException {
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            MirroredSerializableState state = new MirroredSerializableState(primary, journal);
+            state.set("frameworkId", OLD_ID);
+            state.reconcile();
+            assertNull(journal.get("frameworkId"));
+        }
+    }
+
+    @Test
+    public void shouldStayWarmWhenPrimaryIsUnreachable() throws IOException {
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            MirroredSerializableState state = new MirroredSerializableState(primary, journal);
+            state.set("frameworkId", OLD_ID);
+            when(primary.get("frameworkId")).thenThrow(new IOException("Test exception"));
+            try {
+                state.reconcile();
+                fail();
+            } catch (IOException e) {
+                assertTrue(state.isWarm());
+                assertEquals(OLD_ID, state.get("frameworkId"));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRemoveFromMirrorOnDelete() throws IOException {
+        try (StateJournal journal = new StateJournal(path, "test")) {
+            MirroredSerializableState state = new MirroredSerializableState(primary, journal);
+            state.set("frameworkId", OLD_ID);
+            state.delete("frameworkId");
+            verify(primary).delete("frameworkId");
+            assertNull(journal.get("frameworkId"));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class ProtobufStateCodecTest {
+    private final ProtobufStateCodec codec = new ProtobufStateCodec();
+    private final JavaSerializationCodec legacy = new JavaSerializationCodec();
+
+    @Test
+    public void shouldRoundTripTaskInfoList() throws IOException {
+        List<Protos.TaskInfo> list = new ArrayList<>(Arrays.asList(ProtoTestUtil.getDefaultTaskInfo(), ProtoTestUtil.getTaskInfoExternalVolume(1)));
+        byte[] bytes = codec.encode(list);
+        assertTrue(ProtobufStateCodec.isProtobufEncoded(bytes));
+        assertEquals(list, codec.decode(bytes));
+    }
+
+    @Test
+    public void shouldRoundTripEmptyList() throws IOException {
+        List<Protos.TaskInfo> decoded = codec.decode(codec.encode(Collections.emptyList()));
+        assertTrue(decoded.isEmpty());
+        decoded.add(ProtoTestUtil.getDefaultTaskInfo()); // Must be mutable, like the deserialized ArrayList was.
+    }
+
+    @Test
+    public void shouldRoundTripMessages() throws IOException {
+        Protos.TaskStatus status = ProtoTestUtil.getDefaultTaskStatus(Protos.TaskState.TASK_RUNNING);
+        assertEquals(status, codec.decode(codec.encode(status)));
+        Protos.FrameworkID frameworkID = Protos.FrameworkID.newBuilder().setValue("frameworkId").build();
+        assertEquals(frameworkID, codec.decode(codec.encode(frameworkID)));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJavaSerialization() throws IOException {
+        List<Protos.TaskInfo> list = new ArrayList<>(Collections.singletonList(ProtoTestUtil.getDefaultTaskInfo()));
+        assertTrue(codec.encode(list).length < legacy.encode(list).length);
+    }
+
+    @Test
+    public void shouldFallBackForOtherValues() throws IOException {
+        assertTrue(JavaSerializationCodec.isJavaSerialized(codec.encode(null)));
+        assertNull(codec.decode(codec.encode(null)));
+        assertEquals("value", codec.decode(codec.encode("value")));
+    }
+
+    @Test
+    public void shouldReadLegacyFormat() throws IOException {
+        List<Protos.TaskInfo> list = new ArrayList<>(Collections.singletonList(ProtoTestUtil.getDefaultTaskInfo()));
+        assertEquals(list, codec.decode(legacy.encode(list)));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void shouldRejectUnknownFormat() throws IOException {
+        codec.decode("Invalid stream of bytes".getBytes(StandardCharsets.UTF_8));
+    }
+}
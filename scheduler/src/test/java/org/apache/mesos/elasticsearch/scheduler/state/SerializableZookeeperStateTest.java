@@ -1,21 +1,35 @@
 package org.apache.mesos.elasticsearch.scheduler.state;
 
+import org.apache.mesos.Protos;
+import org.apache.mesos.state.InMemoryState;
 import org.apache.mesos.state.State;
 import org.apache.mesos.state.Variable;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
 /**
@@ -34,10 +48,12 @@ public class SerializableZookeeperStateTest {
         state = mock(State.class);
         variable = mock(Variable.class);
         when(variable.value()).thenReturn(writeVariable(SERIALIZABLE_OBJECT));
+        when(variable.mutate(any(byte[].class))).thenReturn(variable);
         future = CompletableFuture.completedFuture(variable);
         serializableState = new SerializableZookeeperState(state);
         when(state.fetch(anyString())).thenReturn(future);
         when(state.store(any(Variable.class))).thenReturn(future);
+        when(state.expunge(any(Variable.class))).thenReturn(CompletableFuture.completedFuture(true));
     }
 
     @Test
@@ -90,7 +106,9 @@ public class SerializableZookeeperStateTest {
 
     @Test(expected = IOException.class)
     public void testClassNotFound() throws IOException {
-        when(state.fetch(anyString())).thenThrow(ClassNotFoundException.class);
+        byte[] bytes = writeVariable(new Known());
+        String serialized = new String(bytes, StandardCharsets.ISO_8859_1).replace("$Known", "$Other");
+        when(variable.value()).thenReturn(serialized.getBytes(StandardCharsets.ISO_8859_1));
         serializableState.get("test");
     }
 
@@ -115,6 +133,7 @@ public class SerializableZookeeperStateTest {
     @Test
     public void shouldDeleteKey() throws IOException {
         serializableState.delete("test");
+        verify(state, times(1)).expunge(variable);
     }
 
     @Test(expected = InvalidParameterException.class)
@@ -126,6 +145,195 @@ public class SerializableZookeeperStateTest {
     }
 
 
+    @Test
+    public void shouldReadLegacyAndWriteProtobuf() throws IOException {
+        Protos.FrameworkID frameworkID = Protos.FrameworkID.newBuilder().setValue("frameworkId").build();
+        when(variable.value()).thenReturn(writeVariable(frameworkID));
+        assertEquals(frameworkID, serializableState.get("test"));
+
+        serializableState.set("test", frameworkID);
+        verify(variable).mutate(argThat(new ArgumentMatcher<byte[]>() {
+            @Override
+            public boolean matches(Object argument) {
+                return ProtobufStateCodec.isProtobufEncoded((byte[]) argument);
+            }
+        }));
+    }
+
+    @Test
+    public void shouldRecordOperationsAndBytes() throws Exception {
+        StateMetrics metrics = new StateMetrics();
+        SerializableState instrumented = new SerializableZookeeperState(new InMemoryState(), new ProtobufStateCodec(), 64, 128, metrics);
+        Protos.FrameworkID frameworkID = Protos.FrameworkID.newBuilder().setValue("frameworkId").build();
+        instrumented.set("fw/tasks/test", frameworkID);
+        instrumented.get("fw/tasks/test");
+        instrumented.delete("fw/tasks/test");
+        assertEquals(3, metrics.getOperations().get(StateMetrics.FETCH).getCount());
+        assertEquals(1, metrics.getOperations().get(StateMetrics.STORE).getCount());
+        assertEquals(1, metrics.getOperations().get(StateMetrics.EXPUNGE).getCount());
+        int size = new ProtobufStateCodec().encode(frameworkID).length;
+        assertEquals(size, metrics.getVolumes().get("fw/tasks").getBytesWritten());
+        assertEquals(size, metrics.getVolumes().get("fw/tasks").getBytesRead());
+    }
+
+    @Test
+    public void shouldWriteKnownKeyInOneRoundTrip() throws Exception {
+        StateMetrics metrics = new StateMetrics();
+        SerializableState cached = new SerializableZookeeperState(new InMemoryState(), new ProtobufStateCodec(), 64, 128, metrics);
+        cached.set("test", Protos.FrameworkID.newBuilder().setValue("first").build());
+        Protos.FrameworkID second = Protos.FrameworkID.newBuilder().setValue("second").build();
+        cached.set("test", second);
+        assertEquals(1, metrics.getOperations().get(StateMetrics.FETCH).getCount());
+        assertEquals(2, metrics.getOperations().get(StateMetrics.STORE).getCount());
+        assertEquals(second, cached.get("test"));
+    }
+
+    @Test
+    public void shouldRetryWriteWhenChangedElsewhere() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState cached = new SerializableZookeeperState(memory, new ProtobufStateCodec(), 64, 128);
+        cached.set("test", Protos.FrameworkID.newBuilder().setValue("first").build());
+        new SerializableZookeeperState(memory).set("test", Protos.FrameworkID.newBuilder().setValue("elsewhere").build());
+        Protos.FrameworkID mine = Protos.FrameworkID.newBuilder().setValue("mine").build();
+        cached.set("test", mine);
+        assertEquals(mine, new SerializableZookeeperState(memory).get("test"));
+    }
+
+    @Test
+    public void shouldReplaceOnlyExpectedValue() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState cas = new SerializableZookeeperState(memory);
+        Protos.FrameworkID first = Protos.FrameworkID.newBuilder().setValue("first").build();
+        Protos.FrameworkID second = Protos.FrameworkID.newBuilder().setValue("second").build();
+        assertTrue(cas.replace("test", null, first));
+        assertFalse(cas.replace("test", null, second));
+        assertTrue(cas.replace("test", first, second));
+        assertEquals(second, new SerializableZookeeperState(memory).get("test"));
+    }
+
+    @Test
+    public void shouldProbeExistenceWithoutDecoding() throws Exception {
+        when(variable.value()).thenReturn("Not a serialized object".getBytes(StandardCharsets.UTF_8));
+        ((SerializableZookeeperState) serializableState).trustKnownKeysWhile(() -> true);
+        assertTrue(serializableState.exists("test"));
+        assertTrue(serializableState.exists("test"));
+        verify(state, times(1)).fetch("test");
+    }
+
+    @Test
+    public void shouldNoticeKeysDeletedElsewhereUnlessSoleWriter() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableZookeeperState cached = new SerializableZookeeperState(memory);
+        AtomicBoolean soleWriter = new AtomicBoolean();
+        cached.trustKnownKeysWhile(soleWriter::get);
+        cached.set("test", "value");
+        memory.expunge(memory.fetch("test").get()).get(); // Deleted by someone else.
+        assertFalse(cached.exists("test"));
+        cached.set("test", "value");
+        soleWriter.set(true);
+        memory.expunge(memory.fetch("test").get()).get();
+        assertTrue(cached.exists("test"));
+    }
+
+    @Test
+    public void shouldForgetDeletedKeys() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableZookeeperState cached = new SerializableZookeeperState(memory);
+        cached.trustKnownKeysWhile(() -> true);
+        cached.set("parent", null);
+        cached.set("parent/child", "child");
+        memory.expunge(memory.fetch("parent/child").get()).get(); // Deleted by someone else.
+        assertTrue(cached.exists("parent/child"));
+        cached.delete("parent");
+        assertFalse(cached.exists("parent"));
+        assertFalse(cached.exists("parent/child"));
+    }
+
+    @Test
+    public void shouldWriteSmallValuesAsBefore() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState chunked = new SerializableZookeeperState(memory, new ProtobufStateCodec(), 64, 128);
+        Protos.FrameworkID frameworkID = Protos.FrameworkID.newBuilder().setValue("frameworkId").build();
+        chunked.set("test", frameworkID);
+        assertArrayEquals(new ProtobufStateCodec().encode(frameworkID), memory.fetch("test").get().value());
+        assertEquals(Collections.singletonList("test"), names(memory));
+    }
+
+    @Test
+    public void shouldCompressLargeValues() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState compressed = new SerializableZookeeperState(memory, new ProtobufStateCodec(), 64, 1024 * 1024);
+        Protos.FrameworkID frameworkID = largeFrameworkId(10000);
+        compressed.set("test", frameworkID);
+        assertTrue(memory.fetch("test").get().value().length < 1000);
+        assertEquals(frameworkID, compressed.get("test"));
+    }
+
+    @Test
+    public void shouldChunkValuesLargerThanAZNode() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState chunked = new SerializableZookeeperState(memory, new ProtobufStateCodec(), Integer.MAX_VALUE, 100);
+        Protos.FrameworkID frameworkID = largeFrameworkId(1000);
+        chunked.set("test", frameworkID);
+        assertEquals(frameworkID, chunked.get("test"));
+        assertTrue(names(memory).size() > 10);
+        for (String name : names(memory)) {
+            assertTrue(memory.fetch(name).get().value().length <= 100);
+        }
+    }
+
+    @Test
+    public void shouldReplaceAndDeleteChunks() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState chunked = new SerializableZookeeperState(memory, new ProtobufStateCodec(), Integer.MAX_VALUE, 100);
+        chunked.set("test", largeFrameworkId(1000));
+        Protos.FrameworkID replacement = largeFrameworkId(500);
+        chunked.set("test", replacement);
+        assertEquals(replacement, chunked.get("test"));
+        assertEquals(7, names(memory).size()); // Manifest and six chunks of the new generation.
+        chunked.delete("test");
+        assertTrue(names(memory).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectCorruptChunk() throws Exception {
+        InMemoryState memory = new InMemoryState();
+        SerializableState chunked = new SerializableZookeeperState(memory, new ProtobufStateCodec(), Integer.MAX_VALUE, 100);
+        chunked.set("test", largeFrameworkId(1000));
+        Variable chunk = memory.fetch("test-chunk-1-0").get();
+        byte[] corrupt = chunk.value().clone();
+        corrupt[10]++;
+        memory.store(chunk.mutate(corrupt)).get();
+        chunked.get("test");
+    }
+
+    private Protos.FrameworkID largeFrameworkId(int length) {
+        char[] value = new char[length];
+        Arrays.fill(value, 'a');
+        return Protos.FrameworkID.newBuilder().setValue(new String(value)).build();
+    }
+
+    private List<String> names(State memory) throws Exception {
+        List<String> names = new ArrayList<>();
+        memory.names().get().forEachRemaining(name -> {
+            try {
+                if (memory.fetch(name).get().value().length > 0) {
+                    names.add(name);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Serializable class that can be renamed in the stream to simulate a class that no longer exists.
+     */
+    private static class Known implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
     // Data must be serialized/deserialized in exactly the same way to be readable.
     private byte[] writeVariable(Object object) throws IOException {
         ByteArrayOutputStream bos = null;
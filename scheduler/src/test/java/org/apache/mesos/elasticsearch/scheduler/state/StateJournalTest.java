@@ -0,0 +1,90 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class StateJournalTest {
+    private static final String IDENTITY = "zk://localhost/elasticsearch";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReplayEntriesAfterReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("state.journal");
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            journal.put("a", bytes("1"));
+            journal.put("b", bytes("2"));
+            journal.put("a", bytes("3"));
+            journal.remove("b");
+        }
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            assertArrayEquals(bytes("3"), journal.get("a"));
+            assertNull(journal.get("b"));
+            assertEquals(1, journal.snapshot().size());
+        }
+    }
+
+    @Test
+    public void shouldDiscardJournalOfOtherIdentity() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("state.journal");
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            journal.put("a", bytes("1"));
+        }
+        try (StateJournal journal = new StateJournal(path, "zk://otherhost/elasticsearch")) {
+            assertTrue(journal.snapshot().isEmpty());
+        }
+    }
+
+    @Test
+    public void shouldIgnoreCorruptTail() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("state.journal");
+        long secondRecord;
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            journal.put("a", bytes("1"));
+            secondRecord = 12 + IDENTITY.length() + 21 + 2;
+            journal.put("b", bytes("2"));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(secondRecord + 10);
+            file.write(0x7f);
+        }
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            assertArrayEquals(bytes("1"), journal.get("a"));
+            assertNull(journal.get("b"));
+            journal.put("c", bytes("3")); // Overwrites the corrupt record.
+        }
+        try (StateJournal journal = new StateJournal(path, IDENTITY)) {
+            assertArrayEquals(bytes("3"), journal.get("c"));
+        }
+    }
+
+    @Test
+    public void shouldCompactWhenFull() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("state.journal");
+        try (StateJournal journal = new StateJournal(path, IDENTITY, 256)) {
+            for (int i = 0; i < 100; i++) {
+                journal.put("key" + (i % 5), bytes("value" + i));
+            }
+        }
+        try (StateJournal journal = new StateJournal(path, IDENTITY, 256)) {
+            assertEquals(5, journal.snapshot().size());
+            assertArrayEquals(bytes("value99"), journal.get("key4"));
+        }
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
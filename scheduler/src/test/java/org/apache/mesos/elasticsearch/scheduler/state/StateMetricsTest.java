@@ -0,0 +1,55 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests
+ */
+public class StateMetricsTest {
+    private final StateMetrics metrics = new StateMetrics();
+
+    @Test
+    public void shouldCountOperationsAndErrors() {
+        metrics.record(StateMetrics.STORE, metrics.start(), true);
+        metrics.record(StateMetrics.STORE, metrics.start(), false);
+        StateMetrics.OperationSnapshot store = metrics.getOperations().get(StateMetrics.STORE);
+        assertEquals(2, store.getCount());
+        assertEquals(1, store.getErrors());
+        assertEquals(Long.valueOf(2), store.getLatency().get("<1ms"));
+    }
+
+    @Test
+    public void shouldBucketSlowOperations() {
+        metrics.record(StateMetrics.FETCH, System.nanoTime() - TimeUnit.SECONDS.toNanos(10), true);
+        StateMetrics.OperationSnapshot fetch = metrics.getOperations().get(StateMetrics.FETCH);
+        assertEquals(Long.valueOf(1), fetch.getLatency().get(">=5000ms"));
+        assertTrue(fetch.getMaxMicros() >= TimeUnit.SECONDS.toMicros(10));
+    }
+
+    @Test
+    public void shouldGroupBytesByParentKey() {
+        metrics.read("fw/tasks/task1", 10);
+        metrics.read("fw/tasks/task2", 5);
+        metrics.written("frameworkId", 3);
+        assertEquals(15, metrics.getVolumes().get("fw/tasks").getBytesRead());
+        assertEquals(3, metrics.getVolumes().get("/").getBytesWritten());
+    }
+
+    @Test
+    public void shouldTimeMkdir() throws IOException {
+        SerializableState state = new InMemorySerializableState() {
+            @Override
+            public StateMetrics getMetrics() {
+                return metrics;
+            }
+        };
+        new StatePath(state).mkdir("fw/state/task1");
+        assertEquals(1, metrics.getOperations().get(StateMetrics.MKDIR).getCount());
+    }
+}
@@ -4,8 +4,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ExecutionException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -39,4 +41,26 @@ public class StatePathTest {
         statePath.mkdir("/mesos");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldNotRewriteDirectoriesThatHoldNull() throws IOException {
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger writes = new AtomicInteger();
+        StatePath path = new StatePath(new InMemorySerializableState() {
+            @Override
+            public <T> T get(String key) throws IOException {
+                reads.incrementAndGet();
+                return super.get(key);
+            }
+
+            @Override
+            public <T> void set(String key, T object) throws IOException {
+                writes.incrementAndGet();
+                super.set(key, object);
+            }
+        });
+        path.mkdir("fw/state/task1");
+        path.mkdir("fw/state/task1");
+        assertEquals(3, writes.get());
+        assertEquals(0, reads.get());
+    }
+}
@@ -0,0 +1,102 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class StatusCompactorTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID = Protos.FrameworkID.newBuilder().setValue("FrameworkID").build();
+    private final InMemorySerializableState state = new InMemorySerializableState();
+    private final FrameworkState frameworkState = new FrameworkState(state);
+    private final ClusterState clusterState = new ClusterState(state, frameworkState);
+    private final StatusCompactor compactor = new StatusCompactor(state, frameworkState, clusterState);
+
+    @Before
+    public void before() {
+        frameworkState.markRegistered(FRAMEWORK_ID, null);
+    }
+
+    @Test
+    public void shouldDeleteOrphanedStatusOnSecondRun() throws IOException {
+        Protos.TaskInfo live = launch("live");
+        Protos.TaskInfo orphan = taskInfo("orphan");
+        new ESTaskStatus(state, FRAMEWORK_ID, orphan, new StatePath(state)); // Status written, but the task never added.
+
+        StatusCompactor.Result first = compactor.compact();
+        assertTrue(first.getDeleted().isEmpty());
+        assertEquals(1, first.getPending());
+        assertNotNull(state.get(ESTaskStatus.getKey(FRAMEWORK_ID, orphan.getTaskId())));
+
+        StatusCompactor.Result second = compactor.compact();
+        assertEquals(Collections.singletonList(orphan.getTaskId()), second.getDeleted());
+        assertEquals(0, second.getPending());
+        assertNull(state.get(ESTaskStatus.getKey(FRAMEWORK_ID, orphan.getTaskId())));
+        assertNotNull(state.get(ESTaskStatus.getKey(FRAMEWORK_ID, live.getTaskId())));
+        assertEquals(Collections.singletonList(live.getTaskId()), new StatusIndex(state, FRAMEWORK_ID).read());
+    }
+
+    @Test
+    public void shouldSpareStatusOfTaskAddedBetweenRuns() throws IOException {
+        Protos.TaskInfo taskInfo = taskInfo("late");
+        ESTaskStatus status = new ESTaskStatus(state, FRAMEWORK_ID, taskInfo, new StatePath(state));
+        compactor.compact();
+        clusterState.addTask(status);
+
+        StatusCompactor.Result result = compactor.compact();
+        assertTrue(result.getDeleted().isEmpty());
+        assertEquals(0, result.getPending());
+        assertNotNull(state.get(ESTaskStatus.getKey(FRAMEWORK_ID, taskInfo.getTaskId())));
+    }
+
+    @Test
+    public void shouldUnlistStatusesOfRemovedTasks() throws IOException {
+        Protos.TaskInfo taskInfo = launch("removed");
+        clusterState.removeTask(taskInfo);
+        assertTrue(new StatusIndex(state, FRAMEWORK_ID).read().isEmpty());
+        new StatusIndex(state, FRAMEWORK_ID).add(taskInfo.getTaskId()); // As if removeTask had failed to unlist it.
+
+        compactor.compact();
+        StatusCompactor.Result result = compactor.compact();
+        assertTrue(result.getDeleted().isEmpty());
+        assertEquals(Collections.singletonList(taskInfo.getTaskId()), result.getUnlisted());
+        assertTrue(new StatusIndex(state, FRAMEWORK_ID).read().isEmpty());
+    }
+
+    @Test
+    public void shouldDoNothingBeforeRegistration() throws IOException {
+        FrameworkState unregistered = new FrameworkState(new InMemorySerializableState());
+        StatusCompactor.Result result = new StatusCompactor(state, unregistered, clusterState).compact();
+        assertTrue(result.getDeleted().isEmpty());
+        assertEquals(0, result.getPending());
+    }
+
+    @Test
+    public void shouldDestroyOrphanedStatuses() throws IOException {
+        launch("live");
+        Protos.TaskInfo orphan = taskInfo("orphan");
+        new ESTaskStatus(state, FRAMEWORK_ID, orphan, new StatePath(state));
+
+        clusterState.destroy();
+        assertNull(state.get(ESTaskStatus.getKey(FRAMEWORK_ID, orphan.getTaskId())));
+        assertNull(state.get(new StatusIndex(state, FRAMEWORK_ID).getKey()));
+    }
+
+    private Protos.TaskInfo launch(String taskId) {
+        Protos.TaskInfo taskInfo = taskInfo(taskId);
+        clusterState.addTask(new ESTaskStatus(state, FRAMEWORK_ID, taskInfo, new StatePath(state)));
+        return taskInfo;
+    }
+
+    private Protos.TaskInfo taskInfo(String taskId) {
+        return Protos.TaskInfo.newBuilder(ProtoTestUtil.getDefaultTaskInfo()).setTaskId(Protos.TaskID.newBuilder().setValue(taskId)).build();
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.mesos.elasticsearch.scheduler.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.elasticsearch.scheduler.util.ProtoTestUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests
+ */
+public class StatusUpdateQueueTest {
+    private final List<Protos.TaskStatus> written = Collections.synchronizedList(new ArrayList<>());
+    private final List<Protos.TaskStatus> acknowledged = Collections.synchronizedList(new ArrayList<>());
+    private StatusUpdateQueue queue;
+
+    @After
+    public void after() {
+        queue.shutdown();
+    }
+
+    @Test
+    public void shouldWriteThenAcknowledge() throws InterruptedException {
+        queue = new StatusUpdateQueue(10, written::add, acknowledged::add);
+        Protos.TaskStatus status = status("Task1", Protos.TaskState.TASK_RUNNING);
+        queue.offer(status);
+        queue.flush();
+        assertEquals(Collections.singletonList(status), written);
+        assertEquals(Collections.singletonList(status), acknowledged);
+        assertFalse(queue.peek(status.getTaskId()).isPresent());
+    }
+
+    @Test
+    public void shouldCoalesceUpdatesOfTheSameTask() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new StatusUpdateQueue(10, blockOn("Blocker", blocked, release), acknowledged::add);
+        Protos.TaskStatus blocker = status("Blocker", Protos.TaskState.TASK_RUNNING);
+        Protos.TaskStatus staging = status("Task1", Protos.TaskState.TASK_STAGING);
+        Protos.TaskStatus running = status("Task1", Protos.TaskState.TASK_RUNNING);
+        queue.offer(blocker);
+        blocked.await();
+        queue.offer(staging);
+        queue.offer(running);
+        assertEquals(running, queue.peek(running.getTaskId()).get());
+        release.countDown();
+        queue.flush();
+        assertEquals(Arrays.asList(blocker, running), written);
+        assertEquals(Arrays.asList(blocker, staging, running), acknowledged);
+    }
+
+    @Test
+    public void shouldNotAcknowledgeWhenWriteFails() throws InterruptedException {
+        queue = new StatusUpdateQueue(10, status -> {
+            throw new IllegalStateException("Test exception");
+        }, acknowledged::add);
+        queue.offer(status("Task1", Protos.TaskState.TASK_RUNNING));
+        queue.flush();
+        assertTrue(acknowledged.isEmpty());
+    }
+
+    @Test
+    public void shouldReturnDiscardedStatusesWithoutWritingThem() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new StatusUpdateQueue(10, blockOn("Blocker", blocked, release), acknowledged::add);
+        queue.offer(status("Blocker", Protos.TaskState.TASK_RUNNING));
+        blocked.await();
+        Protos.TaskStatus status = status("Task1", Protos.TaskState.TASK_RUNNING);
+        queue.offer(status);
+        assertEquals(Collections.singletonList(status), queue.discard(status.getTaskId()));
+        release.countDown();
+        queue.flush();
+        assertFalse(written.contains(status));
+        assertFalse(acknowledged.contains(status));
+    }
+
+    @Test
+    public void shouldDropStatusesOfNewTasksWithoutAcknowledgingWhenFull() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue = new StatusUpdateQueue(1, blockOn("Blocker", blocked, release), acknowledged::add);
+        queue.offer(status("Blocker", Protos.TaskState.TASK_RUNNING));
+        blocked.await();
+        Protos.TaskStatus staging = status("Task1", Protos.TaskState.TASK_STAGING);
+        Protos.TaskStatus running = status("Task1", Protos.TaskState.TASK_RUNNING);
+        Protos.TaskStatus dropped = status("Task2", Protos.TaskState.TASK_RUNNING);
+        assertTrue(queue.offer(staging));
+        assertFalse(queue.offer(dropped));
+        assertTrue(queue.offer(running));
+        release.countDown();
+        queue.flush();
+        assertFalse(written.contains(dropped));
+        assertFalse(acknowledged.contains(dropped));
+        assertTrue(acknowledged.containsAll(Arrays.asList(staging, running)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyCapacity() {
+        queue = new StatusUpdateQueue(1, written::add, acknowledged::add);
+        new StatusUpdateQueue(0, written::add, acknowledged::add);
+    }
+
+    private Consumer<Protos.TaskStatus> blockOn(String taskId, CountDownLatch blocked, CountDownLatch release) {
+        return status -> {
+            if (status.getTaskId().getValue().equals(taskId)) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            written.add(status);
+        };
+    }
+
+    private Protos.TaskStatus status(String taskId, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder(ProtoTestUtil.getDefaultTaskStatus(state)).setTaskId(Protos.TaskID.newBuilder().setValue(taskId)).build();
+    }
+}